@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("org.jetbrains.intellij") version "1.16.0"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.mvel"
@@ -16,7 +17,53 @@ intellij {
     plugins.set(listOf("com.intellij.java"))
 }
 
+// Benchmarks run outside the IDE, so they need the platform classes that are compileOnly for the plugin itself.
+configurations {
+    named("jmhImplementation") {
+        extendsFrom(configurations.compileOnly.get(), configurations.testImplementation.get())
+    }
+}
+
+jmh {
+    // The parser benchmark drives the parser through the test sources' LightPsiBuilder.
+    includeTests.set(true)
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    // Reports the bytes each benchmark allocates per operation as gc.alloc.rate.norm.
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("reports/jmh/mvel-linter-${project.version}.json"))
+}
+
 tasks {
+    named<ProcessResources>("processJmhResources") {
+        from(rootDir) {
+            include("*.mvel")
+            into("corpus")
+        }
+    }
+
+    // The wall-clock scaling checks and the fuzz campaigns are slow and timing-sensitive: they run only in
+    // performanceTest, never as part of test or check.
+    test {
+        exclude("**/*ScalingTest.class", "**/*FuzzTest.class")
+    }
+
+    register<Test>("performanceTest") {
+        description = "Runs the scaling and fuzz tests."
+        group = "verification"
+        testClassesDirs = sourceSets.test.get().output.classesDirs
+        classpath = sourceSets.test.get().runtimeClasspath
+        include("**/*ScalingTest.class", "**/*FuzzTest.class")
+        // Forwards -Dmvel.fuzz.* from the Gradle command line to the fuzz tests.
+        systemProperties(System.getProperties()
+            .filterKeys { it.toString().startsWith("mvel.fuzz.") }
+            .mapKeys { it.key.toString() })
+        // Timings are only meaningful when nothing else is running.
+        mustRunAfter(test)
+    }
+
     withType<JavaCompile> {
         sourceCompatibility = "17"
         targetCompatibility = "17"
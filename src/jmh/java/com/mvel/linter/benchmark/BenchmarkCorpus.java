@@ -0,0 +1,84 @@
+package com.mvel.linter.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark inputs: the bundled sample files (copied into the jmh resources under {@code corpus/}) and
+ * synthetically scaled versions of them, built by repeating the file so that line structure stays realistic.
+ */
+public final class BenchmarkCorpus {
+    public static final String CONT = "cont.mvel";
+    public static final String GHOR = "ghor.mvel";
+    public static final String TEST = "test.mvel";
+
+    private BenchmarkCorpus() {
+    }
+
+    public static String load(String fileName, int scale) {
+        String text = read(fileName);
+        if (scale <= 1) {
+            return text;
+        }
+
+        StringBuilder builder = new StringBuilder(text.length() * scale + scale);
+        for (int copy = 0; copy < scale; copy++) {
+            builder.append(text);
+            if (!text.endsWith("\n")) {
+                builder.append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the contents of every top-level {@code @code{...}} block, found with a plain brace count.
+     */
+    public static List<CodeBlock> codeBlocks(String text) {
+        List<CodeBlock> blocks = new ArrayList<>();
+        int searchFrom = 0;
+        while (true) {
+            int tagOffset = text.indexOf("@code{", searchFrom);
+            if (tagOffset < 0) {
+                return blocks;
+            }
+
+            int contentStart = tagOffset + "@code{".length();
+            int depth = 1;
+            int index = contentStart;
+            while (index < text.length() && depth > 0) {
+                char current = text.charAt(index);
+                if (current == '{') {
+                    depth++;
+                } else if (current == '}') {
+                    depth--;
+                }
+                index++;
+            }
+            if (depth > 0) {
+                return blocks;
+            }
+
+            blocks.add(new CodeBlock(text.substring(contentStart, index - 1), contentStart));
+            searchFrom = index;
+        }
+    }
+
+    private static String read(String fileName) {
+        try (InputStream stream = BenchmarkCorpus.class.getResourceAsStream("/corpus/" + fileName)) {
+            if (stream == null) {
+                throw new IllegalStateException("Missing benchmark corpus file " + fileName);
+            }
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public record CodeBlock(String content, int absoluteStartOffset) {
+    }
+}
@@ -0,0 +1,51 @@
+package com.mvel.linter.codeblock;
+
+import com.mvel.linter.benchmark.BenchmarkCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transpiles every {@code @code{}} block of the corpus file, or the whole file when it is a plain script.
+ * Lives in the codeblock package because {@link MvelJavaBlockTranspiler} is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MvelJavaBlockTranspilerBenchmark {
+    @Param({BenchmarkCorpus.CONT, BenchmarkCorpus.GHOR, BenchmarkCorpus.TEST})
+    public String file;
+
+    @Param({"1", "8"})
+    public int scale;
+
+    private int fileLength;
+    private List<BenchmarkCorpus.CodeBlock> codeBlocks;
+    private final MvelJavaBlockTranspiler transpiler = new MvelJavaBlockTranspiler();
+
+    @Setup
+    public void setUp() {
+        String text = BenchmarkCorpus.load(file, scale);
+        fileLength = text.length();
+        codeBlocks = BenchmarkCorpus.codeBlocks(text);
+        if (codeBlocks.isEmpty()) {
+            codeBlocks = List.of(new BenchmarkCorpus.CodeBlock(text, 0));
+        }
+    }
+
+    @Benchmark
+    public void transpileContent(Blackhole blackhole) {
+        for (BenchmarkCorpus.CodeBlock block : codeBlocks) {
+            blackhole.consume(transpiler.transpileContent(block.content(), block.absoluteStartOffset(), fileLength));
+        }
+    }
+}
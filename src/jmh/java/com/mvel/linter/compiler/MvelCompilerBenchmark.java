@@ -0,0 +1,107 @@
+package com.mvel.linter.compiler;
+
+import com.mvel.linter.benchmark.BenchmarkCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Covers the text-level entry points of the compiler package. Lives in that package because
+ * {@link TemplateCodeBlockScanner} is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MvelCompilerBenchmark {
+    @Param({BenchmarkCorpus.CONT, BenchmarkCorpus.GHOR, BenchmarkCorpus.TEST})
+    public String file;
+
+    @Param({"1", "8"})
+    public int scale;
+
+    private String text;
+    private String head;
+    private String tail;
+    private int keystrokes;
+    private MvelCompileService compileService;
+    private final MvelStatementSeparatorAnalyzer separatorAnalyzer = new MvelStatementSeparatorAnalyzer();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        text = BenchmarkCorpus.load(file, scale);
+        compileService = new MvelCompileService();
+        // Each keystroke edits the first orb; a script without orbs is edited at its end and compiles as a whole.
+        int orb = text.indexOf("@{");
+        head = orb < 0 ? text + "\n// " : text.substring(0, orb + 2);
+        tail = orb < 0 ? "" : " + " + text.substring(orb + 2);
+        compileService.compileText(text);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        compileService.dispose();
+    }
+
+    /** Compiles with empty caches, as on the first highlighting pass over the file. */
+    @Benchmark
+    public MvelCompileResult compileText(ColdService cold) {
+        return cold.compileService.compileText(text);
+    }
+
+    /** Compiles every fragment again, with the classes resolved through their imports kept from earlier passes. */
+    @Benchmark
+    public MvelCompileResult compileTextWithResolvedImports() {
+        compileService.clearFragmentCache();
+        return compileService.compileText(text);
+    }
+
+    /** Compiles after one fragment changed, with every other fragment in the cache. */
+    @Benchmark
+    public MvelCompileResult compileTextAfterKeystroke() {
+        return compileService.compileText(head + keystrokes++ + tail);
+    }
+
+    @Benchmark
+    public TemplateCodeBlockScanner.TemplateScan scanTemplateBlocks() {
+        return TemplateCodeBlockScanner.scan(text);
+    }
+
+    @Benchmark
+    public List<MvelDiagnostic> analyzeStatementSeparators() {
+        return separatorAnalyzer.analyze(text);
+    }
+
+    /**
+     * A service whose caches are emptied before every call, kept apart so the other benchmarks keep theirs. Its pool
+     * is started once per trial, so its start-up is not measured.
+     */
+    @State(Scope.Benchmark)
+    public static class ColdService {
+        private MvelCompileService compileService;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            compileService = new MvelCompileService();
+        }
+
+        @Setup(Level.Invocation)
+        public void clearCaches() {
+            compileService.classpathChanged();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            compileService.dispose();
+        }
+    }
+}
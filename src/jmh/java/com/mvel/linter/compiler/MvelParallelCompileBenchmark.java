@@ -0,0 +1,54 @@
+package com.mvel.linter.compiler;
+
+import com.mvel.linter.testing.MvelCorpusGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * First compile of a generated template with an empty fragment cache, on compile pools of 1 to 8 threads. The
+ * template scan decides the structure of the generated templates, so only fragments are compiled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MvelParallelCompileBenchmark {
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    @Param({"2000", "20000"})
+    public int lines;
+
+    private String template;
+    private MvelCompileService compileService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        template = MvelCorpusGenerator.template(42, lines);
+        compileService = new MvelCompileService(parallelism);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        compileService.clearFragmentCache();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        compileService.dispose();
+    }
+
+    @Benchmark
+    public MvelCompileResult compileTemplate() {
+        return compileService.compileText(template);
+    }
+}
@@ -0,0 +1,57 @@
+package com.mvel.linter.compiler;
+
+import com.mvel.linter.testing.MvelCorpusGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One validation pass over a generated 1 MB template after a keystroke in its first orb: the template scan, the
+ * compile with every other fragment cached and the statement separator check. Read {@code gc.alloc.rate.norm} for
+ * the bytes allocated per pass, which include the 1 MB copy of the edited text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MvelValidationPassBenchmark {
+    // Generated templates run to about 34 characters a line.
+    private static final int LINES = 30_000;
+
+    private String head;
+    private String tail;
+    private int keystrokes;
+    private MvelCompileService compileService;
+    private final MvelStatementSeparatorAnalyzer separatorAnalyzer = new MvelStatementSeparatorAnalyzer();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String template = MvelCorpusGenerator.template(42, LINES);
+        int orb = template.indexOf("@{");
+        head = template.substring(0, orb + 2);
+        tail = " + " + template.substring(orb + 2);
+        compileService = new MvelCompileService();
+        compileService.compileText(template);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        compileService.dispose();
+    }
+
+    @Benchmark
+    public List<MvelDiagnostic> validateAfterKeystroke() {
+        String text = head + keystrokes++ + tail;
+        TemplateCodeBlockScanner.TemplateScan scan = TemplateCodeBlockScanner.scan(text);
+        compileService.compileText(text, scan);
+        return separatorAnalyzer.analyze(text, scan);
+    }
+}
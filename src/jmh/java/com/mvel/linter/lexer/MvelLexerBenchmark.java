@@ -0,0 +1,48 @@
+package com.mvel.linter.lexer;
+
+import com.mvel.linter.benchmark.BenchmarkCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MvelLexerBenchmark {
+    @Param({BenchmarkCorpus.CONT, BenchmarkCorpus.GHOR, BenchmarkCorpus.TEST})
+    public String file;
+
+    @Param({"1", "8", "64"})
+    public int scale;
+
+    private String text;
+    private final MvelLexer lexer = new MvelLexer();
+
+    @Setup
+    public void setUp() {
+        text = BenchmarkCorpus.load(file, scale);
+    }
+
+    @Benchmark
+    public int lex() {
+        lexer.start(text, 0, text.length(), 0);
+        int tokens = 0;
+        while (lexer.getTokenType() != null) {
+            tokens++;
+            lexer.advance();
+        }
+        return tokens;
+    }
+
+    @Benchmark
+    public MvelTokenStream buildTokenStream() {
+        return MvelTokenStream.build(text);
+    }
+}
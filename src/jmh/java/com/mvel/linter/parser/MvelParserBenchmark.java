@@ -0,0 +1,42 @@
+package com.mvel.linter.parser;
+
+import com.mvel.linter.benchmark.BenchmarkCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MvelParserBenchmark {
+    @Param({BenchmarkCorpus.CONT, BenchmarkCorpus.GHOR, BenchmarkCorpus.TEST})
+    public String file;
+
+    @Param({"1", "8"})
+    public int scale;
+
+    private String text;
+    private final MvelParser parser = new MvelParser();
+
+    @Setup
+    public void setUp() {
+        text = BenchmarkCorpus.load(file, scale);
+    }
+
+    /**
+     * Includes lexing, since the platform builder lexes the file as part of every reparse as well.
+     */
+    @Benchmark
+    public int parse() {
+        LightPsiBuilder builder = LightPsiBuilder.create(text);
+        parser.parse(MvelParserDefinition.FILE, builder.asPsiBuilder());
+        return builder.completedMarkers();
+    }
+}
@@ -0,0 +1,72 @@
+package com.mvel.linter.parser;
+
+import com.intellij.psi.tree.TokenSet;
+import com.mvel.linter.testing.MvelCorpusGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one keystroke inside a {@code @code{}} block of a generated template: relexing and reparsing the whole
+ * file, which every edit used to trigger, against checking and reparsing only the edited {@code TEMPLATE_BODY}.
+ * The whole-file figure is a lower bound of the old cost, since the other bodies now stay collapsed in it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MvelReparseBenchmark {
+    @Param({"2000", "20000"})
+    public int lines;
+
+    private String editedFile;
+    private String editedBody;
+    private final MvelParser parser = new MvelParser();
+
+    @Setup
+    public void setUp() {
+        String template = MvelCorpusGenerator.template(42, lines);
+        LightPsiBuilder builder = LightPsiBuilder.recording(template, TokenSet.create(MvelTypes.TEMPLATE_BODY));
+        parser.parse(MvelParserDefinition.FILE, builder.asPsiBuilder());
+        List<LightPsiBuilder.Element> bodies = builder.elements();
+
+        // The last @code{} body before the middle of the file, edited by typing one letter into a function name.
+        LightPsiBuilder.Element edited = null;
+        for (LightPsiBuilder.Element body : bodies) {
+            boolean codeBody = template.startsWith("@code", body.startOffset() - "@code".length());
+            if (codeBody && (edited == null || body.startOffset() <= template.length() / 2)) {
+                edited = body;
+            }
+        }
+        if (edited == null) {
+            throw new IllegalStateException("No @code{} block in the generated template");
+        }
+        int keystroke = template.indexOf("def ", edited.startOffset()) + "def ".length();
+        editedFile = template.substring(0, keystroke) + "x" + template.substring(keystroke);
+        editedBody = editedFile.substring(edited.startOffset(), edited.endOffset() + "x".length());
+    }
+
+    @Benchmark
+    public int reparseFile() {
+        LightPsiBuilder builder = LightPsiBuilder.create(editedFile);
+        parser.parse(MvelParserDefinition.FILE, builder.asPsiBuilder());
+        return builder.completedMarkers();
+    }
+
+    @Benchmark
+    public int reparseTemplateBody() {
+        if (!MvelParser.isSelfContainedBody(editedBody)) {
+            throw new IllegalStateException("Edited body is no longer self-contained");
+        }
+        LightPsiBuilder builder = LightPsiBuilder.create(editedBody);
+        parser.parse(MvelTypes.TEMPLATE_BODY, builder.asPsiBuilder());
+        return builder.completedMarkers();
+    }
+}
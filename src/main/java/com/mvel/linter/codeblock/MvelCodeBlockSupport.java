@@ -3,8 +3,8 @@ package com.mvel.linter.codeblock;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
+import com.mvel.linter.psi.MvelCodeBlock;
 import com.mvel.linter.psi.impl.MvelCodeBlockTextPsi;
-import com.mvel.linter.psi.impl.MvelTemplateBlockImpl;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -32,11 +32,11 @@ public final class MvelCodeBlockSupport {
         return null;
     }
 
-    public static @Nullable MvelTemplateBlockImpl findEnclosingJavaCodeBlock(@Nullable PsiElement element) {
+    public static @Nullable MvelCodeBlock findEnclosingJavaCodeBlock(@Nullable PsiElement element) {
         PsiElement current = element;
         while (current != null) {
-            if (current instanceof MvelTemplateBlockImpl templateBlock && templateBlock.isCodeBlock()) {
-                return templateBlock;
+            if (current instanceof MvelCodeBlock codeBlock) {
+                return codeBlock;
             }
             current = current.getParent();
         }
@@ -50,7 +50,7 @@ public final class MvelCodeBlockSupport {
         if (findEnclosingCodeBlockText(element) != null) {
             return true;
         }
-        MvelTemplateBlockImpl block = findEnclosingJavaCodeBlock(element);
+        MvelCodeBlock block = findEnclosingJavaCodeBlock(element);
         if (block == null || element == null) {
             return false;
         }
@@ -70,7 +70,7 @@ public final class MvelCodeBlockSupport {
         return isInsideJavaCodeBlockContent(element);
     }
 
-    private static @NotNull TextRange toAbsoluteRange(@NotNull MvelTemplateBlockImpl block) {
+    private static @NotNull TextRange toAbsoluteRange(@NotNull MvelCodeBlock block) {
         TextRange relative = block.getContentRangeInElement();
         int start = block.getTextRange().getStartOffset() + relative.getStartOffset();
         int end = block.getTextRange().getStartOffset() + relative.getEndOffset();
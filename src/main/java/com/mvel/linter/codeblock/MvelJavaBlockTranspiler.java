@@ -3,11 +3,13 @@ package com.mvel.linter.codeblock;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.tree.IElementType;
 import com.mvel.linter.compiler.MvelDiagnostic;
-import com.mvel.linter.lexer.MvelLexer;
+import com.mvel.linter.lexer.MvelTokenStream;
 import com.mvel.linter.lexer.MvelTokenTypes;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -36,15 +38,28 @@ final class MvelJavaBlockTranspiler {
     );
 
     public @NotNull MvelJavaCodeBlockModel transpile(@NotNull String hostText, @NotNull TextRange contentRange) {
+        return transpile(hostText, contentRange, null);
+    }
+
+    /**
+     * @param contentTokens tokens of the content range with offsets relative to its start, typically a slice of the
+     *                      document token stream; {@code null} lexes the content here
+     */
+    public @NotNull MvelJavaCodeBlockModel transpile(
+            @NotNull String hostText,
+            @NotNull TextRange contentRange,
+            @Nullable MvelTokenStream contentTokens
+    ) {
         if (contentRange.isEmpty() || contentRange.getEndOffset() > hostText.length()) {
             return emptyModel(hostText.length());
         }
 
         String content = hostText.substring(contentRange.getStartOffset(), contentRange.getEndOffset());
+        MvelTokenStream tokens = contentTokens != null ? contentTokens : MvelTokenStream.build(content);
         List<MvelDiagnostic> diagnostics = new ArrayList<>();
         List<TopLevelSegment> segments = splitTopLevel(content, contentRange.getStartOffset(), diagnostics);
         Set<String> localMethodNames = collectLocalMethodNames(segments);
-        FieldCollection fieldCollection = collectFieldCandidates(content, contentRange.getStartOffset(), segments, localMethodNames);
+        FieldCollection fieldCollection = collectFieldCandidates(tokens, contentRange.getStartOffset(), segments, localMethodNames);
 
         MappedTextBuilder builder = new MappedTextBuilder(hostText.length(), contentRange.getStartOffset(), contentRange.getEndOffset());
         appendBodyInSourceOrder(builder, content, contentRange.getStartOffset(), segments, fieldCollection.names());
@@ -71,7 +86,12 @@ final class MvelJavaBlockTranspiler {
         List<MvelDiagnostic> diagnostics = new ArrayList<>();
         List<TopLevelSegment> segments = splitTopLevel(content, absoluteStartOffset, diagnostics);
         Set<String> localMethodNames = collectLocalMethodNames(segments);
-        FieldCollection fieldCollection = collectFieldCandidates(content, absoluteStartOffset, segments, localMethodNames);
+        FieldCollection fieldCollection = collectFieldCandidates(
+                MvelTokenStream.build(content),
+                absoluteStartOffset,
+                segments,
+                localMethodNames
+        );
 
         MappedTextBuilder builder = new MappedTextBuilder(fileTextLength, absoluteStartOffset, absoluteStartOffset + content.length());
         appendBodyInSourceOrder(builder, content, absoluteStartOffset, segments, fieldCollection.names());
@@ -216,6 +236,7 @@ final class MvelJavaBlockTranspiler {
 
     private List<TopLevelSegment> splitTopLevel(String text, int baseOffset, List<MvelDiagnostic> diagnostics) {
         List<TopLevelSegment> segments = new ArrayList<>();
+        DelimiterMatches delimiters = matchDelimiters(text);
         int index = 0;
 
         while (index < text.length()) {
@@ -224,6 +245,11 @@ final class MvelJavaBlockTranspiler {
                 break;
             }
 
+            if (text.charAt(index) == '"' || text.charAt(index) == '\'') {
+                index = skipQuotedString(text, index);
+                continue;
+            }
+
             if (looksLikeWord(text, index, "import")) {
                 int statementEnd = findTopLevelStatementEnd(text, index);
                 segments.add(new TopLevelSegment(
@@ -239,7 +265,7 @@ final class MvelJavaBlockTranspiler {
             }
 
             if (looksLikeWord(text, index, "def") || looksLikeWord(text, index, "function")) {
-                TopLevelSegment method = parseMethodSegment(text, index, baseOffset, diagnostics);
+                TopLevelSegment method = parseMethodSegment(text, index, baseOffset, delimiters, diagnostics);
                 if (method != null) {
                     segments.add(method);
                     index = method.endOffset;
@@ -254,7 +280,13 @@ final class MvelJavaBlockTranspiler {
         return segments;
     }
 
-    private TopLevelSegment parseMethodSegment(String text, int keywordOffset, int baseOffset, List<MvelDiagnostic> diagnostics) {
+    private TopLevelSegment parseMethodSegment(
+            String text,
+            int keywordOffset,
+            int baseOffset,
+            DelimiterMatches delimiters,
+            List<MvelDiagnostic> diagnostics
+    ) {
         int index = keywordOffset;
         String keyword = looksLikeWord(text, keywordOffset, "def") ? "def" : "function";
         index += keyword.length();
@@ -289,7 +321,7 @@ final class MvelJavaBlockTranspiler {
         }
 
         int paramsStart = index + 1;
-        int paramsEnd = findMatchingDelimiter(text, index, '(', ')');
+        int paramsEnd = findMatchingDelimiter(delimiters, text, index, '(', ')');
         if (paramsEnd < 0) {
             diagnostics.add(new MvelDiagnostic(
                     "Unclosed function parameter list in Java-first @code mode",
@@ -305,7 +337,7 @@ final class MvelJavaBlockTranspiler {
         index = skipWhitespaceAndComments(text, paramsEnd + 1);
         if (index < text.length() && text.charAt(index) == '{') {
             int bodyStart = index + 1;
-            int bodyEnd = findMatchingDelimiter(text, index, '{', '}');
+            int bodyEnd = findMatchingDelimiter(delimiters, text, index, '{', '}');
             if (bodyEnd < 0) {
                 diagnostics.add(new MvelDiagnostic(
                         "Unclosed function body in Java-first @code mode",
@@ -378,12 +410,11 @@ final class MvelJavaBlockTranspiler {
     }
 
     private FieldCollection collectFieldCandidates(
-            String content,
+            MvelTokenStream tokens,
             int baseOffset,
             List<TopLevelSegment> segments,
             Set<String> localMethodNames
     ) {
-        List<TokenInfo> tokens = tokenize(content);
         Set<TextRange> excludedRanges = new LinkedHashSet<>();
         for (TopLevelSegment segment : segments) {
             if (segment.kind == SegmentKind.IMPORT) {
@@ -393,33 +424,33 @@ final class MvelJavaBlockTranspiler {
 
         LinkedHashMap<String, Integer> fields = new LinkedHashMap<>();
         for (int index = 0; index < tokens.size(); index++) {
-            TokenInfo token = tokens.get(index);
-            if (token.type != MvelTokenTypes.IDENTIFIER) {
+            if (tokens.getType(index) != MvelTokenTypes.IDENTIFIER) {
                 continue;
             }
-            if (KEYWORD_LIKE_IDENTIFIERS.contains(token.text) || localMethodNames.contains(token.text)) {
+            String tokenText = tokens.getTokenText(index);
+            if (KEYWORD_LIKE_IDENTIFIERS.contains(tokenText) || localMethodNames.contains(tokenText)) {
                 continue;
             }
-            if (token.text.isEmpty() || RESERVED_WORDS.contains(token.text)) {
+            if (tokenText.isEmpty() || RESERVED_WORDS.contains(tokenText)) {
                 continue;
             }
-            if (isExcluded(token.startOffset, excludedRanges)) {
+            if (isExcluded(tokens.getStart(index), excludedRanges)) {
                 continue;
             }
 
-            IElementType previousType = previousSignificantType(tokens, index);
-            IElementType nextType = nextSignificantType(tokens, index);
+            IElementType previousType = tokens.getTypeOrNull(tokens.previousSignificant(index));
+            IElementType nextType = tokens.getTypeOrNull(tokens.nextSignificant(index, tokens.size()));
             if (previousType == MvelTokenTypes.DOT ||
                     previousType == MvelTokenTypes.DEF ||
                     previousType == MvelTokenTypes.FUNCTION ||
                     previousType == MvelTokenTypes.NEW) {
                 continue;
             }
-            if (Character.isUpperCase(token.text.charAt(0)) && nextType == MvelTokenTypes.DOT) {
+            if (Character.isUpperCase(tokenText.charAt(0)) && nextType == MvelTokenTypes.DOT) {
                 continue;
             }
 
-            fields.putIfAbsent(token.text, baseOffset + token.startOffset);
+            fields.putIfAbsent(tokenText, baseOffset + tokens.getStart(index));
         }
 
         return new FieldCollection(Set.copyOf(fields.keySet()), fields);
@@ -434,46 +465,8 @@ final class MvelJavaBlockTranspiler {
         return false;
     }
 
-    private List<TokenInfo> tokenize(String text) {
-        MvelLexer lexer = new MvelLexer();
-        lexer.start(text, 0, text.length(), 0);
-
-        List<TokenInfo> tokens = new ArrayList<>();
-        while (lexer.getTokenType() != null) {
-            int start = lexer.getTokenStart();
-            int end = lexer.getTokenEnd();
-            tokens.add(new TokenInfo(
-                    lexer.getTokenType(),
-                    text.substring(start, end),
-                    start,
-                    end
-            ));
-            lexer.advance();
-        }
-        return tokens;
-    }
-
-    private IElementType previousSignificantType(List<TokenInfo> tokens, int index) {
-        for (int i = index - 1; i >= 0; i--) {
-            IElementType type = tokens.get(i).type;
-            if (type != MvelTokenTypes.WHITESPACE && type != MvelTokenTypes.COMMENT && type != MvelTokenTypes.LINE_COMMENT) {
-                return type;
-            }
-        }
-        return null;
-    }
-
-    private IElementType nextSignificantType(List<TokenInfo> tokens, int index) {
-        for (int i = index + 1; i < tokens.size(); i++) {
-            IElementType type = tokens.get(i).type;
-            if (type != MvelTokenTypes.WHITESPACE && type != MvelTokenTypes.COMMENT && type != MvelTokenTypes.LINE_COMMENT) {
-                return type;
-            }
-        }
-        return null;
-    }
-
     private void rewriteInto(MappedTextBuilder builder, String text, int absoluteStartOffset, ScopeState scopeState) {
+        DelimiterMatches delimiters = matchDelimiters(text);
         int index = 0;
         while (index < text.length()) {
             char current = text.charAt(index);
@@ -504,7 +497,7 @@ final class MvelJavaBlockTranspiler {
                 int keywordLength = looksLikeWord(text, index, "foreach") ? "foreach".length() : "for".length();
                 int afterKeyword = skipWhitespaceAndComments(text, index + keywordLength);
                 if (afterKeyword < text.length() && text.charAt(afterKeyword) == '(') {
-                    int headerEnd = findMatchingDelimiter(text, afterKeyword, '(', ')');
+                    int headerEnd = findMatchingDelimiter(delimiters, text, afterKeyword, '(', ')');
                     if (headerEnd > afterKeyword) {
                         String header = text.substring(afterKeyword + 1, headerEnd);
                         ForHeaderRewrite rewritten = rewriteForHeader(header, absoluteStartOffset + afterKeyword + 1, scopeState);
@@ -519,7 +512,7 @@ final class MvelJavaBlockTranspiler {
             }
 
             if (current == '[' && isLiteralStart(text, index)) {
-                int end = findMatchingDelimiter(text, index, '[', ']');
+                int end = findMatchingDelimiter(delimiters, text, index, '[', ']');
                 if (end > index) {
                     rewriteBracketLiteral(builder, text.substring(index + 1, end), absoluteOffset, scopeState);
                     index = end + 1;
@@ -528,7 +521,7 @@ final class MvelJavaBlockTranspiler {
             }
 
             if (current == '{' && isCurlyLiteralStart(text, index)) {
-                int end = findMatchingDelimiter(text, index, '{', '}');
+                int end = findMatchingDelimiter(delimiters, text, index, '{', '}');
                 if (end > index) {
                     rewriteCurlyLiteral(builder, text.substring(index + 1, end), absoluteOffset, scopeState);
                     index = end + 1;
@@ -841,6 +834,52 @@ final class MvelJavaBlockTranspiler {
         return index < text.length() ? index : -1;
     }
 
+    private int findMatchingDelimiter(DelimiterMatches delimiters, String text, int openOffset, char openChar, char closeChar) {
+        int closeOffset = delimiters.closeOf(openOffset);
+        return closeOffset != DelimiterMatches.UNKNOWN ? closeOffset : findMatchingDelimiter(text, openOffset, openChar, closeChar);
+    }
+
+    /**
+     * Matches every bracket of {@code text} in one pass, per bracket kind and with the same string and comment
+     * skipping as {@link #findMatchingDelimiter(String, int, char, char)}. Scanning forward from each opening
+     * bracket instead is quadratic when brackets are left unclosed.
+     */
+    private DelimiterMatches matchDelimiters(String text) {
+        DelimiterMatches matches = new DelimiterMatches();
+        int[][] openStacks = new int[3][8];
+        int[] depths = new int[3];
+        int index = 0;
+        while (index < text.length()) {
+            char current = text.charAt(index);
+            if (current == '"' || current == '\'') {
+                index = skipQuotedString(text, index);
+                continue;
+            }
+            if (startsWith(text, index, "//")) {
+                index = skipLineComment(text, index);
+                continue;
+            }
+            if (startsWith(text, index, "/*")) {
+                index = skipBlockComment(text, index);
+                continue;
+            }
+            int kind = "([{".indexOf(current);
+            if (kind >= 0) {
+                if (depths[kind] == openStacks[kind].length) {
+                    openStacks[kind] = Arrays.copyOf(openStacks[kind], depths[kind] * 2);
+                }
+                openStacks[kind][depths[kind]++] = matches.addOpen(index);
+            } else {
+                kind = ")]}".indexOf(current);
+                if (kind >= 0 && depths[kind] > 0) {
+                    matches.setClose(openStacks[kind][--depths[kind]], index);
+                }
+            }
+            index++;
+        }
+        return matches;
+    }
+
     private int findMatchingDelimiter(String text, int openOffset, char openChar, char closeChar) {
         int depth = 1;
         int index = openOffset + 1;
@@ -1068,15 +1107,43 @@ final class MvelJavaBlockTranspiler {
     private record ParameterInfo(String name, int offset) {
     }
 
-    private record TokenInfo(IElementType type, String text, int startOffset, int endOffset) {
-    }
-
     private record ForHeaderRewrite(String text) {
     }
 
     private record FieldCollection(Set<String> names, LinkedHashMap<String, Integer> firstOffsets) {
     }
 
+    private static final class DelimiterMatches {
+        private static final int UNKNOWN = -2;
+
+        private int[] openOffsets = new int[16];
+        private int[] closeOffsets = new int[16];
+        private int size;
+
+        private int addOpen(int openOffset) {
+            if (size == openOffsets.length) {
+                openOffsets = Arrays.copyOf(openOffsets, size * 2);
+                closeOffsets = Arrays.copyOf(closeOffsets, size * 2);
+            }
+            openOffsets[size] = openOffset;
+            closeOffsets[size] = -1;
+            return size++;
+        }
+
+        private void setClose(int entry, int closeOffset) {
+            closeOffsets[entry] = closeOffset;
+        }
+
+        /**
+         * Returns the offset of the matching bracket, -1 for an unclosed one, or {@link #UNKNOWN} if no bracket
+         * opens at {@code openOffset} outside strings and comments.
+         */
+        private int closeOf(int openOffset) {
+            int entry = Arrays.binarySearch(openOffsets, 0, size, openOffset);
+            return entry >= 0 ? closeOffsets[entry] : UNKNOWN;
+        }
+    }
+
     private static final class ScopeState {
         private final Set<String> globalFieldNames;
         private final Set<String> declaredNames = new LinkedHashSet<>();
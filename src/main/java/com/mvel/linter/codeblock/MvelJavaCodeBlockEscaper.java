@@ -2,11 +2,11 @@ package com.mvel.linter.codeblock;
 
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.LiteralTextEscaper;
-import com.mvel.linter.psi.impl.MvelTemplateBlockImpl;
+import com.mvel.linter.psi.MvelCodeBlock;
 import org.jetbrains.annotations.NotNull;
 
-public final class MvelJavaCodeBlockEscaper extends LiteralTextEscaper<MvelTemplateBlockImpl> {
-    public MvelJavaCodeBlockEscaper(@NotNull MvelTemplateBlockImpl host) {
+public final class MvelJavaCodeBlockEscaper extends LiteralTextEscaper<MvelCodeBlock> {
+    public MvelJavaCodeBlockEscaper(@NotNull MvelCodeBlock host) {
         super(host);
     }
 
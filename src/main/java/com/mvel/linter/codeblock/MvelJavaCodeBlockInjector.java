@@ -4,7 +4,7 @@ import com.intellij.lang.java.JavaLanguage;
 import com.intellij.lang.injection.MultiHostInjector;
 import com.intellij.lang.injection.MultiHostRegistrar;
 import com.intellij.psi.PsiElement;
-import com.mvel.linter.psi.impl.MvelTemplateBlockImpl;
+import com.mvel.linter.psi.MvelCodeBlock;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
@@ -12,7 +12,7 @@ import java.util.List;
 public final class MvelJavaCodeBlockInjector implements MultiHostInjector {
     @Override
     public void getLanguagesToInject(@NotNull MultiHostRegistrar registrar, @NotNull PsiElement context) {
-        if (!(context instanceof MvelTemplateBlockImpl host) || !host.isValidHost() || !host.isCodeBlock()) {
+        if (!(context instanceof MvelCodeBlock host) || !host.isValidHost()) {
             return;
         }
 
@@ -24,6 +24,6 @@ public final class MvelJavaCodeBlockInjector implements MultiHostInjector {
 
     @Override
     public @NotNull List<? extends Class<? extends PsiElement>> elementsToInjectIn() {
-        return List.of(MvelTemplateBlockImpl.class);
+        return List.of(MvelCodeBlock.class);
     }
 }
@@ -3,16 +3,22 @@ package com.mvel.linter.codeblock;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiFile;
 import com.intellij.psi.util.CachedValue;
 import com.intellij.psi.util.CachedValueProvider;
 import com.intellij.psi.util.CachedValuesManager;
-import com.mvel.linter.psi.impl.MvelTemplateBlockImpl;
+import com.mvel.linter.lexer.MvelTokenStream;
+import com.mvel.linter.lexer.MvelTokenStreamService;
+import com.mvel.linter.psi.MvelCodeBlock;
 import org.jetbrains.annotations.NotNull;
 
 @Service(Service.Level.PROJECT)
 public final class MvelJavaCodeBlockModelService {
     private static final Key<CachedValue<MvelJavaCodeBlockModel>> MODEL_KEY =
             Key.create("com.mvel.linter.codeblock.MvelJavaCodeBlockModel");
+    private static final Key<HostModel> LAST_MODEL_KEY =
+            Key.create("com.mvel.linter.codeblock.MvelJavaCodeBlockModelService.HostModel");
 
     private final MvelJavaBlockTranspiler transpiler = new MvelJavaBlockTranspiler();
 
@@ -20,11 +26,39 @@ public final class MvelJavaCodeBlockModelService {
         return project.getService(MvelJavaCodeBlockModelService.class);
     }
 
-    public @NotNull MvelJavaCodeBlockModel getModel(@NotNull MvelTemplateBlockImpl host) {
+    /**
+     * Model of the block, recomputed after every change to the file. A block whose text is unchanged, such as one
+     * next to the edited block, gets its previous model back without being transpiled again.
+     */
+    public @NotNull MvelJavaCodeBlockModel getModel(@NotNull MvelCodeBlock host) {
         return CachedValuesManager.getManager(host.getProject()).getCachedValue(host, MODEL_KEY, () ->
-                CachedValueProvider.Result.create(
-                        transpiler.transpile(host.getText(), host.getContentRangeInElement()),
-                        host.getContainingFile()
-                ), false);
+                CachedValueProvider.Result.create(computeModel(host), host.getContainingFile()), false);
+    }
+
+    private MvelJavaCodeBlockModel computeModel(MvelCodeBlock host) {
+        String text = host.getText();
+        HostModel last = host.getUserData(LAST_MODEL_KEY);
+        if (last != null && last.text().equals(text)) {
+            return last.model();
+        }
+
+        MvelJavaCodeBlockModel model = transpiler.transpile(text, host.getContentRangeInElement(), contentTokens(host));
+        host.putUserData(LAST_MODEL_KEY, new HostModel(text, model));
+        return model;
+    }
+
+    private static MvelTokenStream contentTokens(MvelCodeBlock host) {
+        PsiFile file = host.getContainingFile();
+        if (file == null) {
+            return null;
+        }
+
+        TextRange contentRange = host.getContentRangeInElement().shiftRight(host.getTextRange().getStartOffset());
+        MvelTokenStream fileTokens = MvelTokenStreamService.getInstance(host.getProject()).getTokenStream(file);
+        return fileTokens.slice(contentRange.getStartOffset(), contentRange.getEndOffset());
+    }
+
+    // The model only depends on the block text: its offsets are relative to the block.
+    private record HostModel(String text, MvelJavaCodeBlockModel model) {
     }
 }
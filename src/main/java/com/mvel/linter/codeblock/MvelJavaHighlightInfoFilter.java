@@ -7,7 +7,7 @@ import com.intellij.lang.java.JavaLanguage;
 import com.intellij.lang.annotation.HighlightSeverity;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
-import com.mvel.linter.psi.impl.MvelTemplateBlockImpl;
+import com.mvel.linter.psi.MvelCodeBlock;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -21,7 +21,7 @@ public final class MvelJavaHighlightInfoFilter implements HighlightInfoFilter {
         }
 
         PsiElement host = InjectedLanguageManager.getInstance(file.getProject()).getInjectionHost(file);
-        if (!(host instanceof MvelTemplateBlockImpl templateBlock) || !templateBlock.isCodeBlock()) {
+        if (!(host instanceof MvelCodeBlock)) {
             return true;
         }
 
@@ -0,0 +1,24 @@
+package com.mvel.linter.compiler;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.ModuleRootListener;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Drops the imports {@link MvelCompileService} resolved once the project's classpath changes.
+ */
+public class MvelClasspathListener implements ModuleRootListener {
+    private final Project project;
+
+    public MvelClasspathListener(@NotNull Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public void rootsChanged(@NotNull ModuleRootEvent event) {
+        if (!event.isCausedByFileTypesChange()) {
+            MvelCompileService.getInstance(project).classpathChanged();
+        }
+    }
+}
@@ -1,60 +1,165 @@
 package com.mvel.linter.compiler;
 
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.Key;
 import com.intellij.psi.PsiFile;
-import com.intellij.psi.util.CachedValue;
-import com.intellij.psi.util.CachedValueProvider;
-import com.intellij.psi.util.CachedValuesManager;
 import org.jetbrains.annotations.NotNull;
 import org.mvel2.CompileException;
 import org.mvel2.MVEL;
+import org.mvel2.ParserConfiguration;
+import org.mvel2.ParserContext;
 import org.mvel2.templates.TemplateCompiler;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Service(Service.Level.PROJECT)
-public final class MvelCompileService {
-    private static final Key<CachedValue<MvelCompileResult>> COMPILE_RESULT_KEY =
-            Key.create("com.mvel.linter.compiler.MvelCompileResult");
-
-    private static final Pattern IMPORT_PATTERN = Pattern.compile("^import\\s+[\\w.*$]+\\s*$");
-    private static final Pattern TYPE_DECLARATION_PATTERN = Pattern.compile(
-            "^(?:final\\s+)?(?:(?:byte|short|int|long|float|double|boolean|char|String|BigDecimal|BigInteger|"
-                    + "[A-Z_$][\\w$]*|[a-z_$][\\w$]*)(?:\\.[A-Z_$][\\w$]*)*(?:<[^>]+>)?(?:\\[\\])?)\\s+"
-                    + "[A-Za-z_$][\\w$]*\\b.*$"
-    );
-
-    private static final Set<String> CONTROL_FLOW_PREFIXES = Set.of(
-            "if", "for", "foreach", "while", "do", "else", "def", "function", "switch", "try", "catch", "finally"
-    );
+public final class MvelCompileService implements Disposable {
+    static final String SKIPPED_MESSAGE = "MVEL validation skipped: too slow";
+
+    private static final Logger LOG = Logger.getInstance(MvelCompileService.class);
+    private static final int FRAGMENT_CACHE_CAPACITY = 8_192;
+    private static final int IMPORT_CACHE_CAPACITY = 256;
+    private static final int MAX_PARALLELISM = 8;
+    private static final long COMPILE_BUDGET_MILLIS = Long.getLong("mvel.compile.budgetMillis", 2_000);
+    private static final boolean FIRST_ERROR_ONLY = Boolean.getBoolean("mvel.compile.firstErrorOnly");
+    // Statements of one fragment compiled on their own after its first error; later ones are not looked at.
+    private static final int MAX_STATEMENT_COMPILES = 500;
+    // Compiles one fragment may spend looking for missing semicolons.
+    private static final int SEMICOLON_REPAIR_BUDGET = Integer.getInteger("mvel.compile.semicolonRepairBudget", 256);
+    // How often a caller waiting for the compile pool looks for canceled highlighting.
+    private static final long CANCEL_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private static final Pattern IMPORT_STATEMENT_PATTERN =
+            Pattern.compile("(?m)^\\s*import\\s+([\\w.*$]+)\\s*;?\\s*$");
 
     private static final Set<String> STRUCTURAL_TEMPLATE_TOKENS = Set.of(
-            "expected @end{}", "unexpected @end{}", "unexpected @else{}", "unclosed @if{}", "unclosed @foreach{}"
+            "expected @end{}", "unexpected @end{}", "unexpected @else{}", "unclosed @if{}", "unclosed @foreach{}",
+            "unclosed @declare{}"
     );
 
+    private static final MvelStatementSeparatorAnalyzer STATEMENT_SPLITTER = new MvelStatementSeparatorAnalyzer();
+
+    private final FragmentCache fragmentCache = new FragmentCache(FRAGMENT_CACHE_CAPACITY);
+    private final ImportCache importCache = new ImportCache(IMPORT_CACHE_CAPACITY);
+    // Sources whose compile a pass gave up on while it was running, until that compile finishes.
+    private final Set<FragmentKey> abandonedCompiles = ConcurrentHashMap.newKeySet();
+    // Hashes of the sources logged as too slow, so a source stays slow without flooding the log.
+    private final Set<Integer> loggedSlowSources = ConcurrentHashMap.newKeySet();
+    private final ForkJoinPool compilePool;
+    private final long budgetNanos;
+    // Loads the classes of imported packages; null leaves the choice to MVEL.
+    private final ClassLoader classLoader;
+    // Nanosecond time the budget is measured in.
+    private final LongSupplier clock;
+
+    public MvelCompileService() {
+        // One core stays free for the UI and the other highlighting passes.
+        this(Math.min(MAX_PARALLELISM, Math.max(1, Runtime.getRuntime().availableProcessors() - 1)));
+    }
+
+    MvelCompileService(int parallelism) {
+        this(parallelism, COMPILE_BUDGET_MILLIS);
+    }
+
+    MvelCompileService(int parallelism, long budgetMillis) {
+        this(parallelism, budgetMillis, null);
+    }
+
+    MvelCompileService(int parallelism, long budgetMillis, ClassLoader classLoader) {
+        this(parallelism, budgetMillis, classLoader, System::nanoTime);
+    }
+
+    MvelCompileService(int parallelism, long budgetMillis, ClassLoader classLoader, LongSupplier clock) {
+        compilePool = new ForkJoinPool(parallelism);
+        budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        this.classLoader = classLoader;
+        this.clock = clock;
+    }
+
     public static MvelCompileService getInstance(Project project) {
         return project.getService(MvelCompileService.class);
     }
 
+    /**
+     * Compile result of the file, recomputed after every change to it. Fragments whose kind and text were compiled
+     * before, in this file or any other, keep their diagnostics without being compiled again, so an edit inside one
+     * template block only recompiles that block.
+     */
     public @NotNull MvelCompileResult getCompileResult(@NotNull PsiFile file) {
-        return CachedValuesManager.getManager(file.getProject()).getCachedValue(file, COMPILE_RESULT_KEY, () ->
-                CachedValueProvider.Result.create(compileText(file.getText()), file), false);
+        return MvelFileAnalysis.of(file).compileResult();
     }
 
     public @NotNull MvelCompileResult compileText(String text) {
+        return compileText(text, TemplateCodeBlockScanner.scan(text));
+    }
+
+    /** Hits and misses of the fragment cache since the service was created. */
+    public @NotNull FragmentCacheStats getFragmentCacheStats() {
+        return fragmentCache.stats();
+    }
+
+    @Override
+    public void dispose() {
+        compilePool.shutdownNow();
+    }
+
+    /** Waits for compiles abandoned at the deadline to finish. */
+    boolean awaitQuiescence(long timeout, TimeUnit unit) {
+        return compilePool.awaitQuiescence(timeout, unit);
+    }
+
+    /** Forgets every compiled fragment, so the next compile starts cold. */
+    void clearFragmentCache() {
+        fragmentCache.clear();
+    }
+
+    /**
+     * Forgets resolved imports and the diagnostics that depended on them, since a class that did not resolve before
+     * may resolve now.
+     */
+    void classpathChanged() {
+        importCache.clear();
+        fragmentCache.clear();
+    }
+
+    /**
+     * Compiles text whose template scan is already known, so a {@link MvelFileAnalysis} scans the file once. All
+     * compiles of one call share a time budget; a fragment or template whose compile is still running when the
+     * budget is spent gets a {@link #SKIPPED_MESSAGE} warning instead of its diagnostics.
+     */
+    MvelCompileResult compileText(String text, TemplateCodeBlockScanner.TemplateScan scan) {
         if (text == null || text.isBlank()) {
             return MvelCompileResult.empty(false);
         }
 
-        TemplateCodeBlockScanner.TemplateScan scan = TemplateCodeBlockScanner.scan(text);
+        long deadline = clock.getAsLong() + budgetNanos;
         List<MvelDiagnostic> diagnostics = new ArrayList<>(scan.diagnostics());
 
         if (scan.fragments().isEmpty()) {
@@ -62,81 +167,368 @@ public final class MvelCompileService {
                 return new MvelCompileResult(true, deduplicate(diagnostics));
             }
 
-            MvelDiagnostic scriptDiagnostic = compileFragment(
-                    text,
-                    0,
-                    text.length(),
-                    text,
-                    MvelDiagnostic.SourceKind.SCRIPT
-            );
-            if (scriptDiagnostic != null) {
-                diagnostics.add(scriptDiagnostic);
+            FragmentKey scriptKey = new FragmentKey(text, 0, text.length(), MvelDiagnostic.SourceKind.SCRIPT);
+            TrackedCompile<List<MvelDiagnostic>> script = submit(scriptKey, deadline, () ->
+                    compileAllErrors(text, MvelDiagnostic.SourceKind.SCRIPT, deadline, new AtomicBoolean()));
+            List<MvelDiagnostic> scriptDiagnostics = await(script, deadline);
+            if (scriptDiagnostics == null) {
+                scriptDiagnostics = List.of(skip(script, scriptKey, 1));
             }
+            diagnostics.addAll(scriptDiagnostics);
             return new MvelCompileResult(false, deduplicate(diagnostics));
         }
 
+        // The scan checks block balance and tag arguments; the whole template is compiled a second time, alongside
+        // the fragments, only when the scan cannot tell what TemplateCompiler would take for a tag.
+        FragmentKey templateKey = scan.structureDecided()
+                ? null
+                : new FragmentKey(text, 0, text.length(), MvelDiagnostic.SourceKind.TEMPLATE);
+        TrackedCompile<Optional<MvelDiagnostic>> structure = templateKey == null
+                ? null
+                : submit(templateKey, deadline, () -> Optional.ofNullable(compileTemplateStructure(text)));
+
+        List<TemplateCodeBlockScanner.TemplateFragment> compiledFragments = new ArrayList<>();
+        List<FragmentKey> keys = new ArrayList<>();
+        Map<FragmentKey, List<MvelDiagnostic>> relativeDiagnostics = new HashMap<>();
+        Set<FragmentKey> uncompiled = new LinkedHashSet<>();
         for (TemplateCodeBlockScanner.TemplateFragment fragment : scan.fragments()) {
             if (fragment.kind() == MvelDiagnostic.SourceKind.COMMENT) {
                 continue;
             }
 
-            String content = fragment.content(text);
-            if (content.isBlank()) {
+            // Only fragments that miss the cache are copied out of the file text.
+            if (isBlank(text, fragment.contentStartOffset(), fragment.contentEndOffset())) {
                 continue;
             }
 
-            MvelDiagnostic fragmentDiagnostic = compileFragment(
-                    text,
-                    fragment.contentStartOffset(),
-                    fragment.contentEndOffset(),
-                    content,
-                    fragment.kind()
-            );
-            if (fragmentDiagnostic != null) {
-                diagnostics.add(fragmentDiagnostic);
+            FragmentKey key = new FragmentKey(
+                    text, fragment.contentStartOffset(), fragment.contentEndOffset(), fragment.kind());
+            compiledFragments.add(fragment);
+            keys.add(key);
+            if (!relativeDiagnostics.containsKey(key) && !uncompiled.contains(key)) {
+                List<MvelDiagnostic> cached = fragmentCache.get(key);
+                if (cached != null) {
+                    relativeDiagnostics.put(key, cached);
+                } else {
+                    uncompiled.add(key);
+                }
+            }
+        }
+        compileFragments(List.copyOf(uncompiled), relativeDiagnostics, deadline);
+
+        // A fragment diagnostic never reaches outside its fragment, so it is computed relative to the fragment and
+        // shifted into place. Fragments are visited in file order, whichever thread compiled them.
+        for (int index = 0; index < compiledFragments.size(); index++) {
+            int contentStartOffset = compiledFragments.get(index).contentStartOffset();
+            for (MvelDiagnostic relativeDiagnostic : relativeDiagnostics.get(keys.get(index))) {
+                diagnostics.add(shift(relativeDiagnostic, contentStartOffset));
             }
         }
 
-        MvelDiagnostic templateDiagnostic = compileTemplateStructure(text);
-        if (templateDiagnostic != null && !shouldSuppressTemplateDiagnostic(templateDiagnostic, scan.fragments(), diagnostics)) {
-            diagnostics.add(templateDiagnostic);
+        if (templateKey != null) {
+            Optional<MvelDiagnostic> structureDiagnostic = await(structure, deadline);
+            if (structureDiagnostic == null) {
+                structureDiagnostic = Optional.of(skip(structure, templateKey, 1));
+            }
+            MvelDiagnostic templateDiagnostic = structureDiagnostic.orElse(null);
+            if (templateDiagnostic != null &&
+                    !shouldSuppressTemplateDiagnostic(templateDiagnostic, scan.fragments(), diagnostics)) {
+                diagnostics.add(templateDiagnostic);
+            }
         }
 
         return new MvelCompileResult(true, deduplicate(diagnostics));
     }
 
-    private MvelDiagnostic compileFragment(
+    /**
+     * Compiles fragments missing from the cache into {@code relativeDiagnostics}, spread over the compile pool. A
+     * task that has not started once the caller's progress is canceled or the deadline has passed does nothing, and
+     * the caller then rethrows the cancellation or reports the fragment as skipped. So is a fragment whose compile was
+     * abandoned by an earlier pass and is still running.
+     */
+    private void compileFragments(
+            List<FragmentKey> uncompiled,
+            Map<FragmentKey, List<MvelDiagnostic>> relativeDiagnostics,
+            long deadline
+    ) {
+        ProgressIndicator indicator = ProgressManager.getGlobalProgressIndicator();
+        List<TrackedCompile<List<MvelDiagnostic>>> tasks = new ArrayList<>(uncompiled.size());
+        for (FragmentKey key : uncompiled) {
+            tasks.add(submit(key, deadline, () ->
+                    indicator != null && indicator.isCanceled() ? null : compileAndCache(key, deadline)));
+        }
+        for (int index = 0; index < tasks.size(); index++) {
+            FragmentKey key = uncompiled.get(index);
+            List<MvelDiagnostic> fragmentDiagnostics = await(tasks.get(index), deadline);
+            if (fragmentDiagnostics == null) {
+                ProgressManager.checkCanceled();
+                fragmentDiagnostics = List.of(skip(tasks.get(index), key, key.length()));
+            }
+            relativeDiagnostics.put(key, fragmentDiagnostics);
+        }
+    }
+
+    /** Caches the diagnostics of a fragment unless the deadline cut the search for its errors short. */
+    private List<MvelDiagnostic> compileAndCache(FragmentKey key, long deadline) {
+        FragmentKey ownKey = key.withOwnText();
+        AtomicBoolean truncated = new AtomicBoolean();
+        List<MvelDiagnostic> relativeDiagnostics =
+                compileAllErrors(ownKey.content(), ownKey.kind(), deadline, truncated);
+        if (!truncated.get()) {
+            fragmentCache.put(ownKey, relativeDiagnostics);
+        }
+        return relativeDiagnostics;
+    }
+
+    /**
+     * Diagnostics of a fragment relative to its start. MVEL stops at the first error, so once a code block or script
+     * fails, every top-level statement after that error is compiled again on its own, in parallel on the compile pool,
+     * to report the errors behind the first in the same pass. Imports before a statement are compiled in front of it,
+     * since {@code new} and casts resolve their classes at compile time; other declarations are resolved when the
+     * script runs and need no seeding. Each statement is compiled at most once, and the search for missing semicolons
+     * spends at most {@link #SEMICOLON_REPAIR_BUDGET} compiles over the whole fragment: what the first compile's search
+     * leaves is split between the statements up front, in order. So the extra cost stays within one more compile of
+     * the fragment plus that budget. Statements with a missing semicolon found before are not compiled again. Sets
+     * {@code truncated} when a statement or semicolon test was left out because the deadline had passed.
+     */
+    private List<MvelDiagnostic> compileAllErrors(
+            String content,
+            MvelDiagnostic.SourceKind kind,
+            long deadline,
+            AtomicBoolean truncated
+    ) {
+        RepairBudget repairBudget = new RepairBudget(SEMICOLON_REPAIR_BUDGET);
+        SourceLines lines = new SourceLines(content, 0, content.length());
+        List<MvelDiagnostic> firstErrors =
+                compileFragment(content, 0, content.length(), content, kind, deadline, lines, repairBudget, truncated);
+        if (firstErrors.isEmpty()) {
+            return List.of();
+        }
+        if (FIRST_ERROR_ONLY ||
+                (kind != MvelDiagnostic.SourceKind.CODE_BLOCK && kind != MvelDiagnostic.SourceKind.SCRIPT)) {
+            return firstErrors;
+        }
+        MvelDiagnostic first = firstErrors.get(0);
+
+        StringBuilder imports = new StringBuilder();
+        List<MvelStatementSeparatorAnalyzer.Statement> statements = new ArrayList<>();
+        List<String> sources = new ArrayList<>();
+        List<Integer> prefixLengths = new ArrayList<>();
+        for (MvelStatementSeparatorAnalyzer.Statement statement : lines.get().statements()) {
+            String statementText = content.substring(statement.startOffset(), statement.endOffset());
+            if (statement.importDeclaration()) {
+                imports.append(statementText).append(statementText.endsWith(";") ? "\n" : ";\n");
+                continue;
+            }
+            if (statement.startOffset() < first.endOffset() || containsSemicolonFix(statement, firstErrors)) {
+                continue;
+            }
+            if (statements.size() == MAX_STATEMENT_COMPILES) {
+                break;
+            }
+            statements.add(statement);
+            sources.add(imports + statementText);
+            prefixLengths.add(imports.length());
+        }
+
+        List<ForkJoinTask<List<MvelDiagnostic>>> tasks = new ArrayList<>(statements.size());
+        int repairCompiles = repairBudget.remaining();
+        for (int index = 0; index < statements.size(); index++) {
+            MvelStatementSeparatorAnalyzer.Statement statement = statements.get(index);
+            String source = sources.get(index);
+            int prefixLength = prefixLengths.get(index);
+            RepairBudget statementBudget = repairBudget.split(
+                    repairCompiles / statements.size() + (index < repairCompiles % statements.size() ? 1 : 0));
+            tasks.add(ForkJoinTask.adapt(() -> {
+                if (clock.getAsLong() - deadline > 0) {
+                    truncated.set(true);
+                    return List.of();
+                }
+                List<MvelDiagnostic> statementDiagnostics = new ArrayList<>();
+                for (MvelDiagnostic diagnostic : compileFragment(source, 0, source.length(), source, kind, deadline,
+                        new SourceLines(source, 0, source.length()), statementBudget, truncated)) {
+                    // An error in the seeded imports belongs to the import statement and is reported by its own
+                    // compile.
+                    if (diagnostic.startOffset() >= prefixLength) {
+                        statementDiagnostics.add(shift(diagnostic, statement.startOffset() - prefixLength));
+                    }
+                }
+                return statementDiagnostics;
+            }));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        List<MvelDiagnostic> diagnostics = new ArrayList<>(firstErrors);
+        for (ForkJoinTask<List<MvelDiagnostic>> task : tasks) {
+            diagnostics.addAll(task.join());
+        }
+        return List.copyOf(diagnostics);
+    }
+
+    private boolean containsSemicolonFix(
+            MvelStatementSeparatorAnalyzer.Statement statement,
+            List<MvelDiagnostic> diagnostics
+    ) {
+        for (MvelDiagnostic diagnostic : diagnostics) {
+            if (diagnostic.hasSemicolonFix() &&
+                    diagnostic.semicolonFixOffset() >= statement.startOffset() &&
+                    diagnostic.semicolonFixOffset() <= statement.endOffset()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Submits a compile of {@code key} to the pool, or returns null while a compile of the same source abandoned by an
+     * earlier pass is still running: compiling it again would only hold one more pool thread on the same slow source.
+     */
+    private <T> TrackedCompile<T> submit(FragmentKey key, long deadline, Callable<T> compile) {
+        if (abandonedCompiles.contains(key)) {
+            return null;
+        }
+        TrackedCompile<T> tracked = new TrackedCompile<>(key, deadline, compile);
+        tracked.task = compilePool.submit(tracked);
+        return tracked;
+    }
+
+    /**
+     * Waits for a compile on the pool until the deadline, checking for canceled highlighting meanwhile. Returns null
+     * once the deadline has passed, or at once for a compile that was not submitted: MVEL compiles cannot be
+     * interrupted, so the compile is abandoned to finish on its pool thread, where a fragment still lands in the cache
+     * for the next pass unless the deadline cut its error search short.
+     */
+    private <T> T await(TrackedCompile<T> tracked, long deadline) {
+        if (tracked == null) {
+            return null;
+        }
+        ForkJoinTask<T> task = tracked.task;
+        while (true) {
+            long remaining = deadline - clock.getAsLong();
+            if (remaining <= 0 && !task.isDone()) {
+                return null;
+            }
+            try {
+                return task.get(Math.max(0, Math.min(remaining, CANCEL_CHECK_NANOS)), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                ProgressManager.checkCanceled();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException("MVEL compile failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Diagnostic for a source whose compile did not finish in time, from its start to {@code endOffset}. A compile
+     * still running is abandoned and logged with its source for offline analysis, once per source; one that never
+     * started only ran out of budget behind it, and is not run any more.
+     */
+    private MvelDiagnostic skip(TrackedCompile<?> tracked, FragmentKey key, int endOffset) {
+        if (tracked != null && tracked.abandon() && loggedSlowSources.add(key.hashCode())) {
+            LOG.warn("MVEL compile of " + key.kind() + " source exceeded the budget of "
+                    + TimeUnit.NANOSECONDS.toMillis(budgetNanos) + " ms and was abandoned:\n" + key.content());
+        }
+        return new MvelDiagnostic(
+                SKIPPED_MESSAGE,
+                MvelDiagnostic.Severity.WARNING,
+                key.kind(),
+                0,
+                Math.max(1, endOffset)
+        );
+    }
+
+    /**
+     * The compile error of a fragment, or the semicolons missing from it when inserting them gets the compile past
+     * where it failed. Empty when the fragment compiles. {@code lines} is the line model of the same fragment.
+     */
+    private List<MvelDiagnostic> compileFragment(
             String fullText,
             int absoluteStartOffset,
             int absoluteEndOffset,
             String fragmentText,
-            MvelDiagnostic.SourceKind sourceKind
+            MvelDiagnostic.SourceKind sourceKind,
+            long deadline,
+            SourceLines lines,
+            RepairBudget repairBudget,
+            AtomicBoolean truncated
     ) {
         try {
-            MVEL.compileExpression(fragmentText);
-            return null;
+            compile(fragmentText);
+            return List.of();
         } catch (CompileException e) {
-            MvelDiagnostic semicolonHint = buildSemicolonHint(
+            List<MvelDiagnostic> missingSemicolons = findMissingSemicolons(
                     fullText,
                     absoluteStartOffset,
                     absoluteEndOffset,
                     fragmentText,
                     sourceKind,
                     sanitizeMessage(e.getMessage(), "MVEL compile error"),
-                    e
+                    e,
+                    deadline,
+                    lines,
+                    repairBudget,
+                    truncated
             );
-            if (semicolonHint != null) {
-                return semicolonHint;
+            if (!missingSemicolons.isEmpty()) {
+                return missingSemicolons;
             }
-            return buildFragmentDiagnostic(fullText, absoluteStartOffset, absoluteEndOffset, fragmentText, sourceKind, e);
+            return List.of(buildFragmentDiagnostic(
+                    fullText, absoluteStartOffset, absoluteEndOffset, fragmentText, sourceKind, e));
         } catch (RuntimeException e) {
-            return buildFallbackDiagnostic(
+            return List.of(buildFallbackDiagnostic(
                     absoluteStartOffset,
                     absoluteEndOffset,
                     sourceKind,
                     "MVEL compile error: " + sanitizeMessage(e.getMessage(), "Unknown compile failure")
-            );
+            ));
+        }
+    }
+
+    /**
+     * Compiles MVEL source. Source with imports starts from what earlier compiles with the same imports learned: the
+     * classes resolved through them and the names that are no class of an imported package. A wildcard import such as
+     * {@code java.util.*} would otherwise send MVEL back to the class loader for every name, once per imported
+     * package, on every compile. The configuration itself is not shared, since MVEL adds to it while compiling.
+     */
+    private void compile(String source) {
+        List<String> imports = importsOf(source);
+        if (imports.isEmpty()) {
+            MVEL.compileExpression(source);
+            return;
+        }
+
+        ResolvedImports resolved = importCache.get(imports);
+        ParserConfiguration configuration = new SharedImportsConfiguration(resolved);
+        if (classLoader != null) {
+            configuration.setClassLoader(classLoader);
+        }
+        try {
+            MVEL.compileExpression(source, new ParserContext(configuration));
+        } finally {
+            configuration.getImports().forEach((name, value) -> {
+                if (value != null) {
+                    resolved.classes().putIfAbsent(name, value);
+                }
+            });
+        }
+    }
+
+    private List<String> importsOf(String source) {
+        if (!source.contains("import")) {
+            return List.of();
         }
+        Set<String> imports = new TreeSet<>();
+        Matcher matcher = IMPORT_STATEMENT_PATTERN.matcher(source);
+        while (matcher.find()) {
+            imports.add(matcher.group(1));
+        }
+        return List.copyOf(imports);
     }
 
     private MvelDiagnostic compileTemplateStructure(String text) {
@@ -191,6 +583,17 @@ public final class MvelCompileService {
         );
     }
 
+    private MvelDiagnostic shift(MvelDiagnostic diagnostic, int offset) {
+        return new MvelDiagnostic(
+                diagnostic.message(),
+                diagnostic.severity(),
+                diagnostic.sourceKind(),
+                diagnostic.startOffset() + offset,
+                diagnostic.endOffset() + offset,
+                diagnostic.hasSemicolonFix() ? diagnostic.semicolonFixOffset() + offset : -1
+        );
+    }
+
     private MvelDiagnostic buildFallbackDiagnostic(
             int startOffset,
             int endOffset,
@@ -200,40 +603,80 @@ public final class MvelCompileService {
         return new MvelDiagnostic(message, MvelDiagnostic.Severity.ERROR, sourceKind, startOffset, Math.max(startOffset + 1, endOffset));
     }
 
-    private MvelDiagnostic buildSemicolonHint(
+    /**
+     * Looks for the semicolons missing from a fragment. Each pair of lines where one statement seems to run into the
+     * next is a candidate. Candidates are tested on the smallest text that holds both statements: the top-level
+     * statement around them or the two top-level statements they join, so a test costs a compile of a few lines
+     * instead of the whole fragment. Windows are tested in parallel on the compile pool. Within a window, the candidate
+     * nearest to the current compile error is tried first, and a semicolon that lets the compile get further is kept
+     * while the next ones are looked for, so every missing semicolon is found rather than only the first. Before any
+     * window runs, {@code repairBudget} is split between them nearest to the error first, each getting what its search
+     * could spend at most, so which candidates get tested never depends on which thread runs first; what the windows
+     * leave goes back to {@code repairBudget}. The search also stops at the deadline, which sets {@code truncated}.
+     */
+    private List<MvelDiagnostic> findMissingSemicolons(
             String fullText,
             int absoluteStartOffset,
             int absoluteEndOffset,
             String fragmentText,
             MvelDiagnostic.SourceKind sourceKind,
             String sanitizedMessage,
-            CompileException exception
+            CompileException exception,
+            long deadline,
+            SourceLines lines,
+            RepairBudget repairBudget,
+            AtomicBoolean truncated
     ) {
         if (!looksLikeSemicolonRelatedFailure(sanitizedMessage, exception)) {
-            return null;
+            return List.of();
         }
 
-        List<LineInfo> lines = collectSignificantLines(fragmentText, absoluteStartOffset);
+        // Comment lines are passed over, so a candidate can join the statements on either side of one.
         List<SemicolonCandidate> candidates = new ArrayList<>();
-        for (int index = 0; index < lines.size() - 1; index++) {
-            LineInfo previous = lines.get(index);
-            LineInfo next = lines.get(index + 1);
-
-            if (!isSemicolonCandidate(previous.text()) || !startsNewStatement(next.text())) {
+        MvelStatementSeparatorAnalyzer.StatementLine previous = null;
+        for (MvelStatementSeparatorAnalyzer.StatementLine next : lines.get().lines()) {
+            if (STATEMENT_SPLITTER.isCommentLine(next)) {
                 continue;
             }
-
-            candidates.add(new SemicolonCandidate(previous, next));
+            if (previous != null && STATEMENT_SPLITTER.mayLackSemicolon(previous) &&
+                    STATEMENT_SPLITTER.beginsStatement(next)) {
+                candidates.add(new SemicolonCandidate(previous, next));
+            }
+            previous = next;
+        }
+        if (candidates.isEmpty()) {
+            return List.of();
         }
 
+        // Windows are visited nearest to the error first, so they are given their share of the budget in that order.
         int relativeErrorOffset = resolveRelativeOffset(fragmentText, exception);
         candidates.sort((left, right) -> compareCandidates(left, right, relativeErrorOffset, absoluteStartOffset));
-
+        List<MvelStatementSeparatorAnalyzer.Statement> statements = lines.get().statements();
+        Map<RepairWindow, List<SemicolonCandidate>> windows = new LinkedHashMap<>();
         for (SemicolonCandidate candidate : candidates) {
-            if (!semicolonInsertionRepairsCompile(fragmentText, candidate.insertRelativeOffset(absoluteStartOffset))) {
-                continue;
-            }
+            windows.computeIfAbsent(windowFor(statements, candidate, absoluteStartOffset, fragmentText.length()),
+                    window -> new ArrayList<>()).add(candidate);
+        }
+
+        List<RepairBudget> windowBudgets = new ArrayList<>(windows.size());
+        List<ForkJoinTask<List<SemicolonCandidate>>> tasks = new ArrayList<>(windows.size());
+        windows.forEach((window, windowCandidates) -> {
+            RepairBudget windowBudget = repairBudget.split(maxRepairCompiles(windowCandidates.size()));
+            windowBudgets.add(windowBudget);
+            tasks.add(ForkJoinTask.adapt(() -> repairWindow(
+                    fragmentText, window, windowCandidates, absoluteStartOffset, windowBudget, deadline, truncated)));
+        });
+        ForkJoinTask.invokeAll(tasks);
+
+        List<SemicolonCandidate> repaired = new ArrayList<>();
+        for (int index = 0; index < tasks.size(); index++) {
+            repaired.addAll(tasks.get(index).join());
+            repairBudget.giveBack(windowBudgets.get(index));
+        }
+        repaired.sort(Comparator.comparingInt(candidate -> candidate.previous().absoluteStartOffset()));
 
+        List<MvelDiagnostic> diagnostics = new ArrayList<>(repaired.size());
+        for (SemicolonCandidate candidate : repaired) {
             int highlightOffset = clamp(
                     candidate.previous().lastNonWhitespaceOffset(),
                     absoluteStartOffset,
@@ -242,89 +685,134 @@ public final class MvelCompileService {
             int rangeStart = expandStart(fullText, highlightOffset, candidate.previous().absoluteStartOffset());
             int rangeEnd = expandEnd(fullText, highlightOffset, absoluteEndOffset);
 
-            return new MvelDiagnostic(
+            diagnostics.add(new MvelDiagnostic(
                     "Possible missing ';'",
                     MvelDiagnostic.Severity.ERROR,
                     sourceKind,
                     rangeStart,
-                    rangeEnd
-            );
+                    rangeEnd,
+                    candidate.previous().lastNonWhitespaceOffset() + 1
+            ));
         }
-
-        return null;
+        return diagnostics;
     }
 
-    private List<LineInfo> collectSignificantLines(String text, int absoluteStartOffset) {
-        List<LineInfo> lines = new ArrayList<>();
-        int lineStart = 0;
-
-        for (int index = 0; index <= text.length(); index++) {
-            if (index < text.length() && text.charAt(index) != '\n') {
-                continue;
-            }
-
-            String rawLine = text.substring(lineStart, index);
-            String trimmed = rawLine.trim();
-            if (!trimmed.isEmpty() && !trimmed.startsWith("//") && !trimmed.startsWith("/*") && !trimmed.startsWith("*")) {
-                int lastNonWhitespace = index - 1;
-                while (lastNonWhitespace >= lineStart && Character.isWhitespace(text.charAt(lastNonWhitespace))) {
-                    lastNonWhitespace--;
-                }
+    /**
+     * The top-level statements from the one holding the candidate's first line to the one holding its second, relative
+     * to the fragment, or the whole fragment when either line is inside a statement that never closes.
+     */
+    private RepairWindow windowFor(
+            List<MvelStatementSeparatorAnalyzer.Statement> statements,
+            SemicolonCandidate candidate,
+            int absoluteStartOffset,
+            int fragmentLength
+    ) {
+        MvelStatementSeparatorAnalyzer.Statement first =
+                statementAt(statements, candidate.previous().lastNonWhitespaceOffset());
+        MvelStatementSeparatorAnalyzer.Statement last =
+                statementAt(statements, candidate.next().lastNonWhitespaceOffset());
+        if (first == null || last == null) {
+            return new RepairWindow(0, fragmentLength);
+        }
+        return new RepairWindow(first.startOffset() - absoluteStartOffset, last.endOffset() - absoluteStartOffset);
+    }
 
-                if (lastNonWhitespace >= lineStart) {
-                    lines.add(new LineInfo(
-                            trimmed,
-                            absoluteStartOffset + lineStart,
-                            absoluteStartOffset + lastNonWhitespace
-                    ));
-                }
+    private MvelStatementSeparatorAnalyzer.Statement statementAt(
+            List<MvelStatementSeparatorAnalyzer.Statement> statements,
+            int offset
+    ) {
+        for (MvelStatementSeparatorAnalyzer.Statement statement : statements) {
+            if (statement.startOffset() <= offset && offset < statement.endOffset()) {
+                return statement;
             }
-
-            lineStart = index + 1;
         }
-
-        return lines;
+        return null;
     }
 
-    private boolean isSemicolonCandidate(String line) {
-        if (line.endsWith(";") || line.endsWith("{") || line.endsWith("}") || line.startsWith("@")) {
-            return false;
+    /**
+     * Semicolons that get the compile of one window further, inserted one after the other: after each, the candidates
+     * left are tried nearest to where the compile now fails. A candidate is kept when the window then compiles, or
+     * fails further on than before; without a known error position only a clean compile counts.
+     */
+    private List<SemicolonCandidate> repairWindow(
+            String fragmentText,
+            RepairWindow window,
+            List<SemicolonCandidate> candidates,
+            int absoluteStartOffset,
+            RepairBudget budget,
+            long deadline,
+            AtomicBoolean truncated
+    ) {
+        String windowText = fragmentText.substring(window.startOffset(), window.endOffset());
+        List<SemicolonCandidate> pending = new ArrayList<>(candidates);
+        List<SemicolonCandidate> repaired = new ArrayList<>();
+        if (!spendRepairCompile(budget, deadline, truncated)) {
+            return repaired;
         }
+        int errorOffset = compileErrorOffset(windowText);
 
-        String firstToken = firstToken(line);
-        if (CONTROL_FLOW_PREFIXES.contains(firstToken)) {
-            return false;
-        }
+        while (errorOffset >= 0 && !pending.isEmpty()) {
+            // The semicolons inserted so far shift the error by a few characters at most, which the order ignores.
+            int relativeErrorOffset = errorOffset > 0 ? errorOffset + window.startOffset() : 0;
+            pending.sort((left, right) -> compareCandidates(left, right, relativeErrorOffset, absoluteStartOffset));
 
-        if (IMPORT_PATTERN.matcher(line).matches() || TYPE_DECLARATION_PATTERN.matcher(line).matches()) {
-            return true;
+            SemicolonCandidate accepted = null;
+            for (SemicolonCandidate candidate : pending) {
+                if (!spendRepairCompile(budget, deadline, truncated)) {
+                    return repaired;
+                }
+                int insertOffset = candidate.insertRelativeOffset(absoluteStartOffset) - window.startOffset()
+                        + countInsertedBefore(repaired, candidate, absoluteStartOffset);
+                String patchedText = windowText.substring(0, insertOffset) + ';' + windowText.substring(insertOffset);
+                int patchedErrorOffset = compileErrorOffset(patchedText);
+                if (patchedErrorOffset < 0 || (errorOffset > 0 && patchedErrorOffset > errorOffset + 1)) {
+                    windowText = patchedText;
+                    errorOffset = patchedErrorOffset;
+                    accepted = candidate;
+                    break;
+                }
+            }
+            if (accepted == null) {
+                break;
+            }
+            pending.remove(accepted);
+            repaired.add(accepted);
         }
-
-        return looksLikeAssignment(line);
+        return repaired;
     }
 
-    private boolean startsNewStatement(String line) {
-        if (line.isEmpty() || line.startsWith("@")) {
-            return false;
-        }
-
-        String firstToken = firstToken(line);
-        if (CONTROL_FLOW_PREFIXES.contains(firstToken) || "import".equals(firstToken)) {
-            return true;
+    private int countInsertedBefore(
+            List<SemicolonCandidate> repaired,
+            SemicolonCandidate next,
+            int absoluteStartOffset
+    ) {
+        int count = 0;
+        for (SemicolonCandidate candidate : repaired) {
+            if (candidate.insertRelativeOffset(absoluteStartOffset) <= next.insertRelativeOffset(absoluteStartOffset)) {
+                count++;
+            }
         }
+        return count;
+    }
 
-        return TYPE_DECLARATION_PATTERN.matcher(line).matches() || looksLikeAssignment(line);
+    /**
+     * The most compiles a window search spends: one for the window, then at most one per candidate left after each
+     * semicolon it keeps.
+     */
+    private int maxRepairCompiles(int candidates) {
+        return (int) Math.min(Integer.MAX_VALUE, 1 + (long) candidates * (candidates + 1) / 2);
     }
 
-    private boolean looksLikeAssignment(String line) {
-        if (!line.contains("=")) {
+    /**
+     * Running out of compiles gives the same result every time, since a window's share is fixed before it runs;
+     * running out of time does not.
+     */
+    private boolean spendRepairCompile(RepairBudget budget, long deadline, AtomicBoolean truncated) {
+        if (clock.getAsLong() - deadline > 0) {
+            truncated.set(true);
             return false;
         }
-        return !line.contains("==")
-                && !line.contains("!=")
-                && !line.contains(">=")
-                && !line.contains("<=")
-                && !line.contains("=>");
+        return budget.spend();
     }
 
     private int compareCandidates(
@@ -347,17 +835,15 @@ public final class MvelCompileService {
         );
     }
 
-    private boolean semicolonInsertionRepairsCompile(String fragmentText, int insertRelativeOffset) {
-        if (insertRelativeOffset <= 0 || insertRelativeOffset > fragmentText.length()) {
-            return false;
-        }
-
-        String patchedFragment = fragmentText.substring(0, insertRelativeOffset) + ';' + fragmentText.substring(insertRelativeOffset);
+    /** Where the text fails to compile, 0 when MVEL does not say, or -1 when it compiles. */
+    private int compileErrorOffset(String text) {
         try {
-            MVEL.compileExpression(patchedFragment);
-            return true;
-        } catch (RuntimeException ignored) {
-            return false;
+            compile(text);
+            return -1;
+        } catch (CompileException e) {
+            return resolveRelativeOffset(text, e);
+        } catch (RuntimeException e) {
+            return 0;
         }
     }
 
@@ -428,6 +914,15 @@ public final class MvelCompileService {
                 && Objects.equals(left.message(), right.message());
     }
 
+    private boolean isBlank(String text, int startOffset, int endOffset) {
+        for (int index = startOffset; index < endOffset; index++) {
+            if (!Character.isWhitespace(text.charAt(index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private List<MvelDiagnostic> deduplicate(List<MvelDiagnostic> diagnostics) {
         return List.copyOf(new LinkedHashSet<>(diagnostics));
     }
@@ -538,15 +1033,286 @@ public final class MvelCompileService {
         return message.isBlank() ? defaultMessage : message;
     }
 
-    private String firstToken(String line) {
-        int separator = line.indexOf(' ');
-        return separator < 0 ? line : line.substring(0, separator);
+    public record FragmentCacheStats(long hits, long misses, int size) {
+    }
+
+    /**
+     * Fragment diagnostics relative to their fragment, least recently used first; an empty list means the fragment
+     * compiled cleanly. The key holds the fragment text rather than a hash of it, so two fragments can never share a
+     * result.
+     */
+    private static final class FragmentCache {
+        private final Map<FragmentKey, List<MvelDiagnostic>> byFragment;
+        private long hits;
+        private long misses;
+
+        FragmentCache(int capacity) {
+            byFragment = new LinkedHashMap<>(capacity, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<FragmentKey, List<MvelDiagnostic>> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized List<MvelDiagnostic> get(FragmentKey key) {
+            List<MvelDiagnostic> diagnostic = byFragment.get(key);
+            if (diagnostic == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return diagnostic;
+        }
+
+        synchronized void put(FragmentKey key, List<MvelDiagnostic> diagnostic) {
+            byFragment.put(key, diagnostic);
+        }
+
+        synchronized void clear() {
+            byFragment.clear();
+        }
+
+        synchronized FragmentCacheStats stats() {
+            return new FragmentCacheStats(hits, misses, byFragment.size());
+        }
+    }
+
+    /**
+     * A compile on the pool that knows whether it started. One that has not started when its pass gives up never runs;
+     * one that is running is marked abandoned until it finishes, so no later pass submits the same source meanwhile.
+     */
+    private final class TrackedCompile<T> implements Callable<T> {
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int FINISHED = 2;
+        private static final int ABANDONED = 3;
+
+        private final FragmentKey key;
+        private final long deadline;
+        private final Callable<T> compile;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private ForkJoinTask<T> task;
+
+        TrackedCompile(FragmentKey key, long deadline, Callable<T> compile) {
+            this.key = key;
+            this.deadline = deadline;
+            this.compile = compile;
+        }
+
+        @Override
+        public T call() throws Exception {
+            if (clock.getAsLong() - deadline > 0 || !state.compareAndSet(QUEUED, RUNNING)) {
+                return null;
+            }
+            try {
+                return compile.call();
+            } finally {
+                if (!state.compareAndSet(RUNNING, FINISHED)) {
+                    abandonedCompiles.remove(key);
+                }
+            }
+        }
+
+        /** Gives up on the compile; true when it is still running. */
+        boolean abandon() {
+            if (state.compareAndSet(QUEUED, FINISHED)) {
+                return false;
+            }
+            // Marked before the state changes, so a compile finishing meanwhile always finds its mark to remove.
+            abandonedCompiles.add(key);
+            if (state.compareAndSet(RUNNING, ABANDONED)) {
+                return true;
+            }
+            abandonedCompiles.remove(key);
+            return false;
+        }
+    }
+
+    /**
+     * Kind and text of a fragment. A key built during a compile points into the file text, so looking a fragment up
+     * copies nothing; a key stored in the cache holds a copy of just its fragment instead of the whole file.
+     */
+    private static final class FragmentKey {
+        private final String text;
+        private final int startOffset;
+        private final int endOffset;
+        private final MvelDiagnostic.SourceKind kind;
+        private final int hash;
+
+        FragmentKey(String text, int startOffset, int endOffset, MvelDiagnostic.SourceKind kind) {
+            this.text = text;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.kind = kind;
+            int hash = kind.hashCode();
+            for (int index = startOffset; index < endOffset; index++) {
+                hash = 31 * hash + text.charAt(index);
+            }
+            this.hash = hash;
+        }
+
+        FragmentKey withOwnText() {
+            if (startOffset == 0 && endOffset == text.length()) {
+                return this;
+            }
+            return new FragmentKey(content(), 0, length(), kind);
+        }
+
+        String content() {
+            return text.substring(startOffset, endOffset);
+        }
+
+        int length() {
+            return endOffset - startOffset;
+        }
+
+        MvelDiagnostic.SourceKind kind() {
+            return kind;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof FragmentKey key &&
+                    hash == key.hash &&
+                    kind == key.kind &&
+                    length() == key.length() &&
+                    text.regionMatches(startOffset, key.text, key.startOffset, length());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * What each set of imports resolves, least recently used first. The entries are shared by every compile with the
+     * same imports, in any file, and only ever grow.
+     */
+    private static final class ImportCache {
+        private final Map<List<String>, ResolvedImports> byImports;
+
+        ImportCache(int capacity) {
+            byImports = new LinkedHashMap<>(capacity, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<String>, ResolvedImports> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized ResolvedImports get(List<String> imports) {
+            return byImports.computeIfAbsent(imports, key ->
+                    new ResolvedImports(new ConcurrentHashMap<>(), ConcurrentHashMap.newKeySet()));
+        }
+
+        synchronized void clear() {
+            byImports.clear();
+        }
+    }
+
+    /** The classes a set of imports resolved, by simple name, and the names it did not resolve. */
+    private record ResolvedImports(Map<String, Object> classes, Set<String> unresolved) {
+    }
+
+    /**
+     * A configuration seeded with the classes of a set of imports, which looks names up in, and adds the names MVEL
+     * fails to resolve to, the set shared by every compile with those imports. MVEL keeps failed lookups in the
+     * configuration only, so a fresh one would look them up again.
+     */
+    private static final class SharedImportsConfiguration extends ParserConfiguration {
+        private final Set<String> unresolved;
+
+        SharedImportsConfiguration(ResolvedImports resolved) {
+            unresolved = resolved.unresolved();
+            addAllImports(resolved.classes());
+        }
+
+        @Override
+        public boolean hasImport(String name) {
+            if (unresolved.contains(name) && !getImports().containsKey(name)) {
+                return false;
+            }
+            return super.hasImport(name);
+        }
+
+        @Override
+        public void cacheNegativeHitForDynamicImport(String negativeHit) {
+            super.cacheNegativeHitForDynamicImport(negativeHit);
+            unresolved.add(negativeHit);
+        }
     }
 
-    private record LineInfo(String text, int absoluteStartOffset, int lastNonWhitespaceOffset) {
+    private record RepairWindow(int startOffset, int endOffset) {
     }
 
-    private record SemicolonCandidate(LineInfo previous, LineInfo next) {
+    /**
+     * Compiles left to a search for missing semicolons. Parts are split off on the thread that starts the searches,
+     * before they run, and each part is spent by one search alone.
+     */
+    private static final class RepairBudget {
+        private int remaining;
+
+        RepairBudget(int remaining) {
+            this.remaining = remaining;
+        }
+
+        int remaining() {
+            return remaining;
+        }
+
+        /** Takes up to {@code compiles} of what is left for a search of its own. */
+        RepairBudget split(int compiles) {
+            int taken = Math.min(compiles, remaining);
+            remaining -= taken;
+            return new RepairBudget(taken);
+        }
+
+        /** Takes back what a finished search did not spend. */
+        void giveBack(RepairBudget part) {
+            remaining += part.remaining;
+            part.remaining = 0;
+        }
+
+        boolean spend() {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            return true;
+        }
+    }
+
+    /**
+     * The line model of a fragment, with offsets into the text around it, scanned the first time a search for its
+     * errors needs it: a fragment that compiles is never scanned, and one that fails is scanned once for both its
+     * semicolon search and its statements.
+     */
+    private static final class SourceLines {
+        private final String text;
+        private final int startOffset;
+        private final int endOffset;
+        private MvelStatementSeparatorAnalyzer.FragmentLines lines;
+
+        SourceLines(String text, int startOffset, int endOffset) {
+            this.text = text;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+
+        MvelStatementSeparatorAnalyzer.FragmentLines get() {
+            if (lines == null) {
+                lines = STATEMENT_SPLITTER.scanLines(text, startOffset, endOffset);
+            }
+            return lines;
+        }
+    }
+
+    private record SemicolonCandidate(
+            MvelStatementSeparatorAnalyzer.StatementLine previous,
+            MvelStatementSeparatorAnalyzer.StatementLine next
+    ) {
         int insertRelativeOffset(int absoluteStartOffset) {
             return previous.lastNonWhitespaceOffset() - absoluteStartOffset + 1;
         }
@@ -2,12 +2,17 @@ package com.mvel.linter.compiler;
 
 import com.intellij.openapi.util.TextRange;
 
+/**
+ * A problem in an MVEL file. {@code semicolonFixOffset} is where inserting a {@code ;} fixes it, or -1 when no such
+ * fix is known.
+ */
 public record MvelDiagnostic(
         String message,
         Severity severity,
         SourceKind sourceKind,
         int startOffset,
-        int endOffset
+        int endOffset,
+        int semicolonFixOffset
 ) {
     public MvelDiagnostic {
         int safeStart = Math.max(0, startOffset);
@@ -18,6 +23,15 @@ public record MvelDiagnostic(
         sourceKind = sourceKind == null ? SourceKind.SCRIPT : sourceKind;
         startOffset = safeStart;
         endOffset = safeEnd;
+        semicolonFixOffset = Math.max(-1, semicolonFixOffset);
+    }
+
+    public MvelDiagnostic(String message, Severity severity, SourceKind sourceKind, int startOffset, int endOffset) {
+        this(message, severity, sourceKind, startOffset, endOffset, -1);
+    }
+
+    public boolean hasSemicolonFix() {
+        return semicolonFixOffset >= 0;
     }
 
     public TextRange toTextRange(int textLength) {
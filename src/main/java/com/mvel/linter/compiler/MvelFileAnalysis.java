@@ -0,0 +1,103 @@
+package com.mvel.linter.compiler;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.mvel.linter.lexer.MvelTokenStream;
+import com.mvel.linter.lexer.MvelTokenStreamService;
+import com.mvel.linter.lexer.MvelTokenTypes;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Everything the inspections and the compile annotator read from one version of an MVEL file: its text, tokens,
+ * template fragments, compile diagnostics and statement separator diagnostics. It is built once per change to the
+ * file, so a daemon pass costs one template scan and at most one compile however many inspections run.
+ */
+public final class MvelFileAnalysis {
+    private static final Key<CachedValue<MvelFileAnalysis>> ANALYSIS_KEY =
+            Key.create("com.mvel.linter.compiler.MvelFileAnalysis");
+    private static final MvelStatementSeparatorAnalyzer SEPARATOR_ANALYZER = new MvelStatementSeparatorAnalyzer();
+
+    private final String text;
+    private final MvelTokenStream tokens;
+    private final TemplateCodeBlockScanner.TemplateScan scan;
+    private final Project project;
+    private volatile MvelCompileResult compileResult;
+    private final List<MvelDiagnostic> separatorDiagnostics;
+    private final String textWithoutCommentBodies;
+
+    private MvelFileAnalysis(@NotNull PsiFile file) {
+        text = file.getText();
+        tokens = MvelTokenStreamService.getInstance(file.getProject()).getTokenStream(file);
+        scan = TemplateCodeBlockScanner.scan(text);
+        project = file.getProject();
+        separatorDiagnostics = SEPARATOR_ANALYZER.analyze(text, scan);
+        textWithoutCommentBodies = maskCommentBodies(text, tokens);
+    }
+
+    public static @NotNull MvelFileAnalysis of(@NotNull PsiFile file) {
+        return CachedValuesManager.getManager(file.getProject()).getCachedValue(file, ANALYSIS_KEY, () ->
+                CachedValueProvider.Result.create(new MvelFileAnalysis(file), file), false);
+    }
+
+    public @NotNull String text() {
+        return text;
+    }
+
+    public @NotNull MvelTokenStream tokens() {
+        return tokens;
+    }
+
+    /**
+     * Compiled on first use: in the editor by the compile annotator on its background thread, with the template scan
+     * the inspections share, and otherwise only by the inspections run in batch mode.
+     */
+    public @NotNull MvelCompileResult compileResult() {
+        MvelCompileResult result = compileResult;
+        if (result == null) {
+            result = MvelCompileService.getInstance(project).compileText(text, scan);
+            compileResult = result;
+        }
+        return result;
+    }
+
+    public @NotNull List<MvelDiagnostic> separatorDiagnostics() {
+        return separatorDiagnostics;
+    }
+
+    /**
+     * The file text with {@code @comment{}} bodies blanked out. Line breaks are kept, so offsets and line numbers
+     * still match the file.
+     */
+    public @NotNull String textWithoutCommentBodies() {
+        return textWithoutCommentBodies;
+    }
+
+    List<TemplateCodeBlockScanner.TemplateFragment> fragments() {
+        return scan.fragments();
+    }
+
+    private static String maskCommentBodies(String text, MvelTokenStream tokens) {
+        char[] masked = null;
+        for (int index = 0; index < tokens.size(); index++) {
+            if (tokens.getType(index) != MvelTokenTypes.TEMPLATE_COMMENT_BODY) {
+                continue;
+            }
+            if (masked == null) {
+                masked = text.toCharArray();
+            }
+            int end = Math.min(tokens.getEnd(index), masked.length);
+            for (int offset = tokens.getStart(index); offset < end; offset++) {
+                if (masked[offset] != '\n' && masked[offset] != '\r') {
+                    masked[offset] = ' ';
+                }
+            }
+        }
+        return masked == null ? text : new String(masked);
+    }
+}
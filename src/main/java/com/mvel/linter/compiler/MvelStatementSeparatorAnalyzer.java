@@ -3,15 +3,18 @@ package com.mvel.linter.compiler;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
 public final class MvelStatementSeparatorAnalyzer {
     private static final Pattern IMPORT_PATTERN = Pattern.compile("^import\\s+[\\w.*$]+\\s*$");
+    // Qualified type names are matched with char classes plus a lookahead for the dot rule: a repeated group
+    // recurses once per iteration in java.util.regex and overflows the stack on long dotted chains.
     private static final Pattern TYPE_DECLARATION_PATTERN = Pattern.compile(
-            "^(?:final\\s+)?(?:(?:byte|short|int|long|float|double|boolean|char|String|BigDecimal|BigInteger|"
-                    + "[A-Z_$][\\w$]*|[a-z_$][\\w$]*)(?:\\.[A-Z_$][\\w$]*)*(?:<[^>]+>)?(?:\\[\\])?)\\s+"
+            "^(?:final\\s+)?(?![\\w$.]*\\.(?:[^A-Z_$]|$))[A-Za-z_$][\\w$.]*+(?:<[^>]+>)?(?:\\[\\])?\\s+"
                     + "[A-Za-z_$][\\w$]*\\b.*$"
     );
     private static final Set<String> CONTROL_FLOW_PREFIXES = Set.of(
@@ -20,15 +23,25 @@ public final class MvelStatementSeparatorAnalyzer {
     private static final Set<String> TERMINATOR_KEYWORDS = Set.of(
             "return", "break", "continue", "throw"
     );
+    private static final Set<String> CLAUSE_KEYWORDS = Set.of("else", "catch", "finally");
+    private static final Set<String> IMPORT_KEYWORD = Set.of("import");
 
     public @NotNull List<MvelDiagnostic> analyze(String text) {
         if (text == null || text.isBlank()) {
             return List.of();
         }
 
-        TemplateCodeBlockScanner.TemplateScan scan = TemplateCodeBlockScanner.scan(text);
+        return analyze(text, TemplateCodeBlockScanner.scan(text));
+    }
+
+    /** Analyzes text whose template scan is already known, so a {@link MvelFileAnalysis} scans the file once. */
+    @NotNull List<MvelDiagnostic> analyze(String text, TemplateCodeBlockScanner.TemplateScan scan) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+
         if (scan.fragments().isEmpty()) {
-            return analyzeFragment(text, 0, MvelDiagnostic.SourceKind.SCRIPT);
+            return analyzeFragment(text, 0, text.length(), MvelDiagnostic.SourceKind.SCRIPT);
         }
 
         List<MvelDiagnostic> diagnostics = new ArrayList<>();
@@ -36,26 +49,34 @@ public final class MvelStatementSeparatorAnalyzer {
             if (fragment.kind() != MvelDiagnostic.SourceKind.CODE_BLOCK) {
                 continue;
             }
-            diagnostics.addAll(analyzeFragment(fragment.content(text), fragment.contentStartOffset(), fragment.kind()));
+            diagnostics.addAll(analyzeFragment(
+                    text, fragment.contentStartOffset(), fragment.contentEndOffset(), fragment.kind()));
         }
         return List.copyOf(diagnostics);
     }
 
-    private List<MvelDiagnostic> analyzeFragment(String fragmentText, int absoluteStartOffset, MvelDiagnostic.SourceKind sourceKind) {
-        List<StatementLine> lines = collectSignificantLines(fragmentText, absoluteStartOffset);
+    /** Analyzes the fragment in place, so the file text is never copied by fragment or by line. */
+    private List<MvelDiagnostic> analyzeFragment(
+            String text,
+            int startOffset,
+            int endOffset,
+            MvelDiagnostic.SourceKind sourceKind
+    ) {
+        List<StatementLine> lines = collectSignificantLines(text, startOffset, endOffset);
+        int[] statementEnds = findStatementEnds(lines);
         List<MvelDiagnostic> diagnostics = new ArrayList<>();
 
         for (int index = 0; index < lines.size(); index++) {
             StatementLine line = lines.get(index);
-            if (isContinuationLine(line.text())) {
+            if (isContinuationLine(line)) {
                 continue;
             }
 
-            if (!requiresStatementSeparator(line.text())) {
+            if (!requiresStatementSeparator(line)) {
                 continue;
             }
 
-            int endIndex = findStatementEnd(lines, index);
+            int endIndex = statementEnds[index];
             StatementLine statementEnd = lines.get(endIndex);
             StatementLine nextLine = endIndex + 1 < lines.size() ? lines.get(endIndex + 1) : null;
 
@@ -63,7 +84,7 @@ public final class MvelStatementSeparatorAnalyzer {
                 continue;
             }
 
-            if (hasExplicitTerminator(statementEnd.text())) {
+            if (hasExplicitTerminator(statementEnd)) {
                 continue;
             }
 
@@ -72,6 +93,7 @@ public final class MvelStatementSeparatorAnalyzer {
                     MvelDiagnostic.Severity.WARNING,
                     sourceKind,
                     statementEnd.lastNonWhitespaceOffset(),
+                    statementEnd.lastNonWhitespaceOffset() + 1,
                     statementEnd.lastNonWhitespaceOffset() + 1
             ));
             index = endIndex;
@@ -80,64 +102,132 @@ public final class MvelStatementSeparatorAnalyzer {
         return diagnostics;
     }
 
-    private int findStatementEnd(List<StatementLine> lines, int startIndex) {
-        StatementLine start = lines.get(startIndex);
-        NestingState baseState = start.startState();
+    /**
+     * The significant lines of the fragment from {@code startOffset} to {@code endOffset} of the text and its top-level
+     * statements, from one scan of the fragment in place. Offsets are offsets into the text.
+     */
+    @NotNull FragmentLines scanLines(String text, int startOffset, int endOffset) {
+        List<StatementLine> lines = collectSignificantLines(text, startOffset, endOffset);
+        return new FragmentLines(lines, collectStatements(lines, findStatementEnds(lines)));
+    }
+
+    /**
+     * Splits a fragment into its top-level statements: a statement starts on a line at nesting depth zero and runs to
+     * the line where it returns to depth zero and is not continued, so blocks, multi-line calls and {@code else}
+     * clauses stay with the statement they belong to. Lines that never return to depth zero are left out.
+     */
+    @NotNull List<Statement> splitStatements(String fragmentText) {
+        return scanLines(fragmentText, 0, fragmentText.length()).statements();
+    }
 
-        for (int index = startIndex; index < lines.size(); index++) {
+    /**
+     * A line that may end a statement the next line does not continue, so a missing semicolon after it would join
+     * two statements: a declaration, an import or an assignment that ends in neither a semicolon nor a brace.
+     */
+    boolean mayLackSemicolon(StatementLine line) {
+        if (line.endsWith(";") || line.endsWith("{") || line.endsWith("}") || line.startsWith("@") ||
+                line.firstTokenIsOneOf(CONTROL_FLOW_PREFIXES)) {
+            return false;
+        }
+        return line.startsWith("import") && line.matches(IMPORT_PATTERN) || line.matches(TYPE_DECLARATION_PATTERN) ||
+                looksLikeAssignment(line);
+    }
+
+    /** A line that opens or continues a block comment. */
+    boolean isCommentLine(StatementLine line) {
+        return line.startsWith("/*") || line.startsWith("*");
+    }
+
+    /** A line that starts a statement of its own rather than continuing the one before. */
+    boolean beginsStatement(StatementLine line) {
+        if (line.startsWith("@")) {
+            return false;
+        }
+        if (line.firstTokenIsOneOf(CONTROL_FLOW_PREFIXES) || line.firstTokenIsOneOf(IMPORT_KEYWORD)) {
+            return true;
+        }
+        return line.matches(TYPE_DECLARATION_PATTERN) || looksLikeAssignment(line);
+    }
+
+    private List<Statement> collectStatements(List<StatementLine> lines, int[] statementEnds) {
+        List<Statement> statements = new ArrayList<>();
+
+        int index = 0;
+        while (index < lines.size()) {
             StatementLine line = lines.get(index);
-            if (!line.endState().equals(baseState)) {
+            int endIndex = statementEnds[index];
+            if (!line.startState().equals(NestingState.ZERO) ||
+                    !lines.get(endIndex).endState().equals(NestingState.ZERO)) {
+                index++;
                 continue;
             }
-
-            if (endsWithContinuationToken(line.text())) {
-                continue;
+            while (endIndex + 1 < lines.size() && lines.get(endIndex + 1).leadingWordIsOneOf(CLAUSE_KEYWORDS)) {
+                endIndex = statementEnds[endIndex + 1];
             }
 
+            statements.add(new Statement(
+                    line.textStart(),
+                    lines.get(endIndex).lastNonWhitespaceOffset() + 1,
+                    line.matchesWithoutTerminator(IMPORT_PATTERN)
+            ));
+            index = endIndex + 1;
+        }
+        return statements;
+    }
+
+    /**
+     * For every line, the first line at or after it that ends at the nesting depth the line starts at and is not
+     * continued by the following line, or the line itself if there is none. Built backwards in one pass: searching
+     * forward from each line is quadratic when a bracket is never closed.
+     */
+    private int[] findStatementEnds(List<StatementLine> lines) {
+        int[] statementEnds = new int[lines.size()];
+        Map<NestingState, Integer> nearestEndByState = new HashMap<>();
+
+        for (int index = lines.size() - 1; index >= 0; index--) {
+            StatementLine line = lines.get(index);
             StatementLine nextLine = index + 1 < lines.size() ? lines.get(index + 1) : null;
-            if (nextLine != null && isContinuationLine(nextLine.text())) {
-                continue;
+            if (!endsWithContinuationToken(line) && (nextLine == null || !isContinuationLine(nextLine))) {
+                nearestEndByState.put(line.endState(), index);
             }
-
-            return index;
+            statementEnds[index] = nearestEndByState.getOrDefault(line.startState(), index);
         }
 
-        return startIndex;
+        return statementEnds;
     }
 
     private boolean startsNewStatement(StatementLine nextLine, StatementLine currentLine) {
-        if (nextLine == null || isContinuationLine(nextLine.text())) {
+        if (nextLine == null || isContinuationLine(nextLine)) {
             return false;
         }
         return nextLine.startState().equals(currentLine.endState());
     }
 
-    private boolean requiresStatementSeparator(String line) {
-        if (line.isEmpty() || line.startsWith("@")) {
+    private boolean requiresStatementSeparator(StatementLine line) {
+        if (line.startsWith("@")) {
             return false;
         }
 
-        String firstToken = firstToken(line);
-        if (CONTROL_FLOW_PREFIXES.contains(firstToken)) {
+        if (line.firstTokenIsOneOf(CONTROL_FLOW_PREFIXES)) {
             return false;
         }
 
-        if (TERMINATOR_KEYWORDS.contains(firstToken)) {
+        if (line.firstTokenIsOneOf(TERMINATOR_KEYWORDS)) {
             return true;
         }
 
-        if (IMPORT_PATTERN.matcher(line).matches() || TYPE_DECLARATION_PATTERN.matcher(line).matches()) {
+        if (line.startsWith("import") && line.matches(IMPORT_PATTERN) || line.matches(TYPE_DECLARATION_PATTERN)) {
             return true;
         }
 
         return looksLikeAssignment(line) || looksLikeInvocation(line);
     }
 
-    private boolean hasExplicitTerminator(String line) {
+    private boolean hasExplicitTerminator(StatementLine line) {
         return line.endsWith(";") || line.endsWith("{") || line.endsWith("}") || line.endsWith(",");
     }
 
-    private boolean endsWithContinuationToken(String line) {
+    private boolean endsWithContinuationToken(StatementLine line) {
         return line.endsWith(".")
                 || line.endsWith(",")
                 || line.endsWith(":")
@@ -153,11 +243,7 @@ public final class MvelStatementSeparatorAnalyzer {
                 || line.endsWith("?");
     }
 
-    private boolean isContinuationLine(String line) {
-        if (line.isEmpty()) {
-            return false;
-        }
-
+    private boolean isContinuationLine(StatementLine line) {
         return line.startsWith(".")
                 || line.startsWith(",")
                 || line.startsWith(":")
@@ -172,7 +258,7 @@ public final class MvelStatementSeparatorAnalyzer {
                 || line.startsWith("?");
     }
 
-    private boolean looksLikeAssignment(String line) {
+    private boolean looksLikeAssignment(StatementLine line) {
         if (!line.contains("=")) {
             return false;
         }
@@ -183,7 +269,7 @@ public final class MvelStatementSeparatorAnalyzer {
                 && !line.contains("=>");
     }
 
-    private boolean looksLikeInvocation(String line) {
+    private boolean looksLikeInvocation(StatementLine line) {
         if (line.startsWith("new ")) {
             return true;
         }
@@ -196,22 +282,17 @@ public final class MvelStatementSeparatorAnalyzer {
             return false;
         }
 
-        String firstToken = firstToken(line);
-        return !CONTROL_FLOW_PREFIXES.contains(firstToken) && !TERMINATOR_KEYWORDS.contains(firstToken);
+        return !line.firstTokenIsOneOf(CONTROL_FLOW_PREFIXES) && !line.firstTokenIsOneOf(TERMINATOR_KEYWORDS);
     }
 
-    private boolean startsWithIdentifierLikeToken(String line) {
-        if (line == null || line.isEmpty()) {
-            return false;
-        }
-
-        char firstCharacter = line.charAt(0);
+    private boolean startsWithIdentifierLikeToken(StatementLine line) {
+        char firstCharacter = line.firstChar();
         return Character.isLetter(firstCharacter) || firstCharacter == '_' || firstCharacter == '$';
     }
 
-    private List<StatementLine> collectSignificantLines(String text, int absoluteStartOffset) {
+    private List<StatementLine> collectSignificantLines(String text, int startOffset, int endOffset) {
         List<StatementLine> lines = new ArrayList<>();
-        int lineStart = 0;
+        int lineStart = startOffset;
 
         NestingState lineStartState = NestingState.ZERO;
         int parenthesesDepth = 0;
@@ -222,29 +303,38 @@ public final class MvelStatementSeparatorAnalyzer {
         boolean inBlockComment = false;
         boolean inLineComment = false;
 
-        for (int index = 0; index <= text.length(); index++) {
-            if (index == text.length() || text.charAt(index) == '\n') {
-                String rawLine = text.substring(lineStart, index);
-                String normalizedLine = stripTrailingComment(rawLine).trim();
-                if (!normalizedLine.isEmpty()) {
-                    int lastNonWhitespaceOffset = absoluteStartOffset + findLastNonWhitespaceIndex(text, lineStart, index);
+        for (int index = startOffset; index <= endOffset; index++) {
+            if (index == endOffset || text.charAt(index) == '\n') {
+                NestingState lineEndState = NestingState.of(parenthesesDepth, bracketDepth, braceDepth);
+                // The line without its trailing // comment and surrounding whitespace, read in place.
+                int textEnd = trailingCommentStart(text, lineStart, index);
+                int textStart = lineStart;
+                while (textStart < textEnd && text.charAt(textStart) <= ' ') {
+                    textStart++;
+                }
+                while (textEnd > textStart && text.charAt(textEnd - 1) <= ' ') {
+                    textEnd--;
+                }
+                if (textStart < textEnd) {
                     lines.add(new StatementLine(
-                            normalizedLine,
-                            absoluteStartOffset + lineStart,
-                            lastNonWhitespaceOffset,
+                            text,
+                            textStart,
+                            textEnd,
+                            lineStart,
+                            findLastNonWhitespaceIndex(text, lineStart, index),
                             lineStartState,
-                            new NestingState(parenthesesDepth, bracketDepth, braceDepth)
+                            lineEndState
                     ));
                 }
 
                 lineStart = index + 1;
-                lineStartState = new NestingState(parenthesesDepth, bracketDepth, braceDepth);
+                lineStartState = lineEndState;
                 inLineComment = false;
                 continue;
             }
 
             char current = text.charAt(index);
-            char next = index + 1 < text.length() ? text.charAt(index + 1) : '\0';
+            char next = index + 1 < endOffset ? text.charAt(index + 1) : '\0';
 
             if (inLineComment) {
                 continue;
@@ -259,7 +349,7 @@ public final class MvelStatementSeparatorAnalyzer {
             }
 
             if (inSingleQuotedString) {
-                if (current == '\\' && index + 1 < text.length()) {
+                if (current == '\\' && index + 1 < endOffset) {
                     index++;
                     continue;
                 }
@@ -270,7 +360,7 @@ public final class MvelStatementSeparatorAnalyzer {
             }
 
             if (inDoubleQuotedString) {
-                if (current == '\\' && index + 1 < text.length()) {
+                if (current == '\\' && index + 1 < endOffset) {
                     index++;
                     continue;
                 }
@@ -325,13 +415,13 @@ public final class MvelStatementSeparatorAnalyzer {
         return Math.max(start, index);
     }
 
-    private String stripTrailingComment(String line) {
+    private int trailingCommentStart(String text, int lineStart, int lineEnd) {
         boolean inSingleQuotedString = false;
         boolean inDoubleQuotedString = false;
 
-        for (int index = 0; index < line.length() - 1; index++) {
-            char current = line.charAt(index);
-            char next = line.charAt(index + 1);
+        for (int index = lineStart; index < lineEnd - 1; index++) {
+            char current = text.charAt(index);
+            char next = text.charAt(index + 1);
 
             if (inSingleQuotedString) {
                 if (current == '\\') {
@@ -366,28 +456,110 @@ public final class MvelStatementSeparatorAnalyzer {
             }
 
             if (current == '/' && next == '/') {
-                return line.substring(0, index);
+                return index;
             }
         }
 
-        return line;
-    }
-
-    private String firstToken(String line) {
-        int separator = line.indexOf(' ');
-        return separator < 0 ? line : line.substring(0, separator);
+        return lineEnd;
     }
 
-    private record StatementLine(
-            String text,
+    /**
+     * A significant line of a fragment. Its text, without the trailing {@code //} comment and surrounding whitespace,
+     * is the range from {@code textStart} to {@code textEnd} of {@code source} and is never copied out of it.
+     */
+    record StatementLine(
+            String source,
+            int textStart,
+            int textEnd,
             int absoluteStartOffset,
             int lastNonWhitespaceOffset,
             NestingState startState,
             NestingState endState
     ) {
+        char firstChar() {
+            return source.charAt(textStart);
+        }
+
+        boolean startsWith(String prefix) {
+            return prefix.length() <= textEnd - textStart && source.startsWith(prefix, textStart);
+        }
+
+        boolean endsWith(String suffix) {
+            return suffix.length() <= textEnd - textStart && source.startsWith(suffix, textEnd - suffix.length());
+        }
+
+        /** Searches the line alone: searching on into the text after it would make a scan quadratic. */
+        boolean contains(String part) {
+            for (int index = textStart; index + part.length() <= textEnd; index++) {
+                if (source.startsWith(part, index)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean matches(Pattern pattern) {
+            return pattern.matcher(source).region(textStart, textEnd).matches();
+        }
+
+        /** Matches the text without a final {@code ;} and the whitespace before it. */
+        boolean matchesWithoutTerminator(Pattern pattern) {
+            int end = textEnd;
+            if (source.charAt(end - 1) == ';') {
+                end--;
+                while (end > textStart && source.charAt(end - 1) <= ' ') {
+                    end--;
+                }
+            }
+            return pattern.matcher(source).region(textStart, end).matches();
+        }
+
+        /** Whether the text up to its first space is one of {@code keywords}. */
+        boolean firstTokenIsOneOf(Set<String> keywords) {
+            int end = textStart;
+            while (end < textEnd && source.charAt(end) != ' ') {
+                end++;
+            }
+            return isOneOf(keywords, end);
+        }
+
+        /** Whether the letters the text starts with are one of {@code keywords}. */
+        boolean leadingWordIsOneOf(Set<String> keywords) {
+            int end = textStart;
+            while (end < textEnd && Character.isLetter(source.charAt(end))) {
+                end++;
+            }
+            return isOneOf(keywords, end);
+        }
+
+        private boolean isOneOf(Set<String> keywords, int end) {
+            for (String keyword : keywords) {
+                if (keyword.length() == end - textStart && source.startsWith(keyword, textStart)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** The significant lines of a fragment and the top-level statements they make up. */
+    record FragmentLines(List<StatementLine> lines, List<Statement> statements) {
+    }
+
+    /**
+     * A top-level statement of a fragment, from its first to one past its last non-whitespace character.
+     */
+    record Statement(int startOffset, int endOffset, boolean importDeclaration) {
     }
 
     private record NestingState(int parenthesesDepth, int bracketDepth, int braceDepth) {
         private static final NestingState ZERO = new NestingState(0, 0, 0);
+
+        static NestingState of(int parenthesesDepth, int bracketDepth, int braceDepth) {
+            if (parenthesesDepth == 0 && bracketDepth == 0 && braceDepth == 0) {
+                return ZERO;
+            }
+            return new NestingState(parenthesesDepth, bracketDepth, braceDepth);
+        }
     }
 }
@@ -4,6 +4,7 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 
 final class TemplateCodeBlockScanner {
@@ -25,74 +26,97 @@ final class TemplateCodeBlockScanner {
 
     static TemplateScan scan(String text) {
         if (text == null || text.isEmpty()) {
-            return new TemplateScan(List.of(), List.of());
+            return new TemplateScan(List.of(), List.of(), true);
         }
 
         List<TemplateFragment> fragments = new ArrayList<>();
         List<MvelDiagnostic> diagnostics = new ArrayList<>();
+        Deque<OpenBrace> openBraces = new ArrayDeque<>();
+        int openTags = 0;
+        boolean structureDecided = true;
 
+        // Braces are matched in this single pass; matching each tag separately rescans the rest of the text for
+        // every unclosed tag.
         int index = 0;
         while (index < text.length()) {
             char current = text.charAt(index);
 
+            int skippedTo = -1;
             if (current == '"' || current == '\'') {
-                index = skipQuotedString(text, index);
-                continue;
+                skippedTo = skipQuotedString(text, index);
+            } else if (startsWith(text, index, "//")) {
+                skippedTo = skipLineComment(text, index);
+            } else if (startsWith(text, index, "/*")) {
+                skippedTo = skipBlockComment(text, index);
             }
-
-            if (startsWith(text, index, "//")) {
-                index = skipLineComment(text, index);
-                continue;
-            }
-
-            if (startsWith(text, index, "/*")) {
-                index = skipBlockComment(text, index);
+            if (skippedTo >= 0) {
+                // Template text has no strings or comments, so a tag skipped over in it is one only TemplateCompiler
+                // sees.
+                if (openTags == 0 && contains(text, index, skippedTo, '@')) {
+                    structureDecided = false;
+                }
+                index = skippedTo;
                 continue;
             }
 
             if (current == '@') {
                 TagPattern tag = matchTag(text, index);
                 if (tag != null) {
-                    int openBraceOffset = index + tag.literal().length() - 1;
-                    int closeBraceOffset = findMatchingBrace(text, openBraceOffset);
-
-                    if (closeBraceOffset < 0) {
-                        diagnostics.add(new MvelDiagnostic(
-                                "Unclosed " + tag.literal() + " block",
-                                MvelDiagnostic.Severity.ERROR,
-                                MvelDiagnostic.SourceKind.TEMPLATE,
-                                index,
-                                Math.min(text.length(), openBraceOffset + 1)
-                        ));
-                        index += tag.literal().length();
-                        continue;
-                    }
+                    openBraces.push(new OpenBrace(tag, index, index + tag.literal().length() - 1));
+                    openTags++;
+                    index += tag.literal().length();
+                    continue;
+                }
+                if (openTags == 0 && isUnknownTag(text, index)) {
+                    structureDecided = false;
+                }
+            }
 
+            if (current == '{') {
+                openBraces.push(new OpenBrace(null, index, index));
+            } else if (current == '}' && !openBraces.isEmpty()) {
+                OpenBrace open = openBraces.pop();
+                if (open.tag() != null) {
+                    openTags--;
                     fragments.add(new TemplateFragment(
-                            tag.kind(),
+                            open.tag().kind(),
+                            open.tagStartOffset(),
+                            open.openBraceOffset(),
+                            open.openBraceOffset() + 1,
                             index,
-                            openBraceOffset,
-                            openBraceOffset + 1,
-                            closeBraceOffset,
-                            closeBraceOffset + 1,
-                            tag.literal()
+                            index + 1,
+                            open.tag().literal()
                     ));
-
-                    index += tag.literal().length();
-                    continue;
                 }
             }
 
             index++;
         }
 
+        Iterator<OpenBrace> unclosed = openBraces.descendingIterator();
+        while (unclosed.hasNext()) {
+            OpenBrace open = unclosed.next();
+            if (open.tag() == null) {
+                // A brace of template text left open may have taken the place of a tag's closing brace.
+                structureDecided = false;
+                continue;
+            }
+            diagnostics.add(new MvelDiagnostic(
+                    "Unclosed " + open.tag().literal() + " block",
+                    MvelDiagnostic.Severity.ERROR,
+                    MvelDiagnostic.SourceKind.TEMPLATE,
+                    open.tagStartOffset(),
+                    Math.min(text.length(), open.openBraceOffset() + 1)
+            ));
+        }
+
         fragments.sort(Comparator.comparingInt(TemplateFragment::tagStartOffset));
-        diagnostics.addAll(validateTemplateBlocks(fragments));
+        diagnostics.addAll(validateTemplateBlocks(text, fragments));
 
-        return new TemplateScan(List.copyOf(fragments), List.copyOf(diagnostics));
+        return new TemplateScan(List.copyOf(fragments), List.copyOf(diagnostics), structureDecided);
     }
 
-    private static List<MvelDiagnostic> validateTemplateBlocks(List<TemplateFragment> fragments) {
+    private static List<MvelDiagnostic> validateTemplateBlocks(String text, List<TemplateFragment> fragments) {
         List<MvelDiagnostic> diagnostics = new ArrayList<>();
         Deque<TemplateBlockState> blockStack = new ArrayDeque<>();
 
@@ -100,6 +124,22 @@ final class TemplateCodeBlockScanner {
             switch (fragment.kind()) {
                 case IF -> blockStack.push(new TemplateBlockState(fragment));
                 case FOREACH -> blockStack.push(new TemplateBlockState(fragment));
+                case DECLARE -> {
+                    if (isBlank(text, fragment.contentStartOffset(), fragment.contentEndOffset())) {
+                        diagnostics.add(templateDiagnostic("Missing template name in @declare{}", fragment));
+                    }
+                    blockStack.push(new TemplateBlockState(fragment));
+                }
+                case INCLUDE_NAMED -> {
+                    // The name comes before the first ';', the assignments run before the template is included.
+                    int nameEnd = text.indexOf(';', fragment.contentStartOffset());
+                    if (nameEnd < 0 || nameEnd > fragment.contentEndOffset()) {
+                        nameEnd = fragment.contentEndOffset();
+                    }
+                    if (isBlank(text, fragment.contentStartOffset(), nameEnd)) {
+                        diagnostics.add(templateDiagnostic("Missing template name in @includeNamed{}", fragment));
+                    }
+                }
                 case ELSE -> {
                     TemplateBlockState state = blockStack.peek();
                     if (state == null || state.fragment().kind() != MvelDiagnostic.SourceKind.IF) {
@@ -143,9 +183,11 @@ final class TemplateCodeBlockScanner {
 
         while (!blockStack.isEmpty()) {
             TemplateBlockState state = blockStack.removeLast();
-            String blockName = state.fragment().kind() == MvelDiagnostic.SourceKind.FOREACH
-                    ? "@foreach{}"
-                    : "@if{}";
+            String blockName = switch (state.fragment().kind()) {
+                case FOREACH -> "@foreach{}";
+                case DECLARE -> "@declare{}";
+                default -> "@if{}";
+            };
             diagnostics.add(new MvelDiagnostic(
                     "Unclosed " + blockName + " block. expected @end{}",
                     MvelDiagnostic.Severity.ERROR,
@@ -158,6 +200,50 @@ final class TemplateCodeBlockScanner {
         return diagnostics;
     }
 
+    private static MvelDiagnostic templateDiagnostic(String message, TemplateFragment fragment) {
+        return new MvelDiagnostic(
+                message,
+                MvelDiagnostic.Severity.ERROR,
+                MvelDiagnostic.SourceKind.TEMPLATE,
+                fragment.tagStartOffset(),
+                fragment.contentEndOffset()
+        );
+    }
+
+    /**
+     * An {@code @name{}} or {@code @name()} the scanner has no pattern for, which TemplateCompiler may still take as a
+     * tag.
+     */
+    private static boolean isUnknownTag(String text, int offset) {
+        int index = offset + 1;
+        while (index < text.length() && Character.isJavaIdentifierPart(text.charAt(index))) {
+            index++;
+        }
+        if (index >= text.length()) {
+            return false;
+        }
+        char next = text.charAt(index);
+        return next == '(' || (next == '{' && index > offset + 1);
+    }
+
+    private static boolean contains(String text, int startOffset, int endOffset, char wanted) {
+        for (int index = startOffset; index < endOffset; index++) {
+            if (text.charAt(index) == wanted) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBlank(String text, int startOffset, int endOffset) {
+        for (int index = startOffset; index < endOffset; index++) {
+            if (!Character.isWhitespace(text.charAt(index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static TagPattern matchTag(String text, int offset) {
         for (TagPattern pattern : TAG_PATTERNS) {
             if (startsWith(text, offset, pattern.literal())) {
@@ -173,43 +259,6 @@ final class TemplateCodeBlockScanner {
                 && text.startsWith(prefix, offset);
     }
 
-    private static int findMatchingBrace(String text, int openBraceOffset) {
-        int depth = 1;
-        int index = openBraceOffset + 1;
-
-        while (index < text.length()) {
-            char current = text.charAt(index);
-
-            if (current == '"' || current == '\'') {
-                index = skipQuotedString(text, index);
-                continue;
-            }
-
-            if (startsWith(text, index, "//")) {
-                index = skipLineComment(text, index);
-                continue;
-            }
-
-            if (startsWith(text, index, "/*")) {
-                index = skipBlockComment(text, index);
-                continue;
-            }
-
-            if (current == '{') {
-                depth++;
-            } else if (current == '}') {
-                depth--;
-                if (depth == 0) {
-                    return index;
-                }
-            }
-
-            index++;
-        }
-
-        return -1;
-    }
-
     private static int skipQuotedString(String text, int offset) {
         char quote = text.charAt(offset);
         int index = offset + 1;
@@ -248,7 +297,12 @@ final class TemplateCodeBlockScanner {
         return text.length();
     }
 
-    record TemplateScan(List<TemplateFragment> fragments, List<MvelDiagnostic> diagnostics) {
+    /**
+     * {@code structureDecided} is false when the template text holds something that only TemplateCompiler can tell
+     * whether it is a tag: an {@code @} inside quotes or a comment of template text, an unknown {@code @name{}}, or a
+     * brace left open.
+     */
+    record TemplateScan(List<TemplateFragment> fragments, List<MvelDiagnostic> diagnostics, boolean structureDecided) {
     }
 
     record TemplateFragment(
@@ -275,6 +329,9 @@ final class TemplateCodeBlockScanner {
     private record TagPattern(String literal, MvelDiagnostic.SourceKind kind) {
     }
 
+    private record OpenBrace(TagPattern tag, int tagStartOffset, int openBraceOffset) {
+    }
+
     private static final class TemplateBlockState {
         private final TemplateFragment fragment;
         private boolean elseSeen;
@@ -0,0 +1,101 @@
+package com.mvel.linter.completion;
+
+import com.intellij.codeInsight.completion.CompletionContributor;
+import com.intellij.codeInsight.completion.CompletionParameters;
+import com.intellij.codeInsight.completion.CompletionProvider;
+import com.intellij.codeInsight.completion.CompletionResultSet;
+import com.intellij.codeInsight.completion.CompletionType;
+import com.intellij.codeInsight.lookup.LookupElementBuilder;
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.patterns.PlatformPatterns;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.ProcessingContext;
+import com.mvel.linter.MvelLanguage;
+import com.mvel.linter.codeblock.MvelCodeBlockSupport;
+import com.mvel.linter.lexer.MvelTokenTypes;
+import com.mvel.linter.psi.MvelAssignment;
+import com.mvel.linter.psi.MvelDeclaration;
+import com.mvel.linter.psi.MvelDeclareTag;
+import com.mvel.linter.psi.MvelFunctionDef;
+import com.mvel.linter.psi.stubs.MvelDeclarationIndex;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Completes the functions, {@code @declare{}} templates and top-level variables of all MVEL files in the project
+ * from the {@link MvelDeclarationIndex}, without parsing any of them.
+ */
+public class MvelCompletionContributor extends CompletionContributor {
+    public MvelCompletionContributor() {
+        extend(
+                CompletionType.BASIC,
+                PlatformPatterns.psiElement(MvelTokenTypes.IDENTIFIER).withLanguage(MvelLanguage.INSTANCE),
+                new DeclarationProvider()
+        );
+    }
+
+    private static final class DeclarationProvider extends CompletionProvider<CompletionParameters> {
+        @Override
+        protected void addCompletions(
+                @NotNull CompletionParameters parameters,
+                @NotNull ProcessingContext context,
+                @NotNull CompletionResultSet result
+        ) {
+            Project project = parameters.getPosition().getProject();
+            if (DumbService.isDumb(project) ||
+                    MvelCodeBlockSupport.isInsideJavaCodeBlockContent(parameters.getPosition())) {
+                return;
+            }
+
+            GlobalSearchScope scope = GlobalSearchScope.projectScope(project);
+            // Collect the matching names first: the index must not be queried from inside its own key scan.
+            List<String> names = new ArrayList<>();
+            MvelDeclarationIndex.processAllNames(scope, name -> {
+                if (result.getPrefixMatcher().prefixMatches(name)) {
+                    names.add(name);
+                }
+                return true;
+            });
+
+            for (String name : names) {
+                Set<String> added = new HashSet<>();
+                for (MvelDeclaration declaration :
+                        MvelDeclarationIndex.find(name, MvelDeclaration.class, project, scope)) {
+                    LookupElementBuilder lookup = createLookup(name, declaration);
+                    if (lookup != null && added.add(lookup.getTailText() + lookup.getTypeText())) {
+                        result.addElement(lookup);
+                    }
+                }
+            }
+        }
+
+        private static LookupElementBuilder createLookup(String name, MvelDeclaration declaration) {
+            String fileName = declaration.getContainingFile().getName();
+            if (declaration instanceof MvelFunctionDef function) {
+                int parameterCount = function.getParameterCount();
+                return LookupElementBuilder.create(declaration, name)
+                        .withIcon(AllIcons.Nodes.Function)
+                        .withTailText(parameterCount == 0 ? "()" : "(" + parameterCount + " args)", true)
+                        .withTypeText(fileName);
+            }
+            if (declaration instanceof MvelDeclareTag) {
+                return LookupElementBuilder.create(declaration, name)
+                        .withIcon(AllIcons.Nodes.Tag)
+                        .withTypeText(fileName);
+            }
+            if (declaration instanceof MvelAssignment) {
+                return LookupElementBuilder.create(declaration, name)
+                        .withIcon(AllIcons.Nodes.Variable)
+                        .withTypeText(fileName);
+            }
+            // Imports are keyed by simple class name, which the Java class completion already offers.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.mvel.linter.highlighter;
+
+import com.intellij.codeHighlighting.HighlightDisplayLevel;
+import com.intellij.codeInsight.daemon.HighlightDisplayKey;
+import com.intellij.codeInspection.InspectionProfile;
+import com.intellij.lang.annotation.AnnotationBuilder;
+import com.intellij.lang.annotation.AnnotationHolder;
+import com.intellij.lang.annotation.ExternalAnnotator;
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
+import com.intellij.psi.PsiFile;
+import com.mvel.linter.compiler.MvelCompileResult;
+import com.mvel.linter.compiler.MvelDiagnostic;
+import com.mvel.linter.compiler.MvelFileAnalysis;
+import com.mvel.linter.inspections.MvelInsertSemicolonFix;
+import com.mvel.linter.inspections.MvelJavaCodeBlockInspection;
+import com.mvel.linter.inspections.MvelSyntaxInspection;
+import com.mvel.linter.psi.MvelFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reports MVEL and template compile diagnostics in the editor. The file's {@link MvelFileAnalysis}, whose template
+ * scan the inspection pass shares, is taken under the read lock and compiled on the external annotator's background
+ * thread without it, so the other highlighting passes never wait for MVEL. Results computed for text that has changed
+ * since are dropped.
+ * <p>
+ * Diagnostics are reported on behalf of {@link MvelSyntaxInspection} and {@link MvelJavaCodeBlockInspection}, which
+ * stay silent in the editor: an inspection turned off in the current profile hides its diagnostics here too, and its
+ * profile severity applies to warnings, as it would in a batch run.
+ */
+public class MvelCompileAnnotator
+        extends ExternalAnnotator<MvelCompileAnnotator.Snapshot, MvelCompileAnnotator.Result> {
+    @Override
+    public @Nullable Snapshot collectInformation(@NotNull PsiFile file, @NotNull Editor editor, boolean hasErrors) {
+        if (!(file instanceof MvelFile)) {
+            return null;
+        }
+
+        InspectionProfile profile = InspectionProjectProfileManager.getInstance(file.getProject()).getCurrentProfile();
+        Reporting syntax = Reporting.of(profile, MvelSyntaxInspection.SHORT_NAME, file);
+        Reporting codeBlocks = Reporting.of(profile, MvelJavaCodeBlockInspection.SHORT_NAME, file);
+        if (!syntax.enabled() && !codeBlocks.enabled()) {
+            return null;
+        }
+        return new Snapshot(
+                file.getProject(),
+                MvelFileAnalysis.of(file),
+                file.getModificationStamp(),
+                syntax,
+                codeBlocks
+        );
+    }
+
+    @Override
+    public @Nullable Result doAnnotate(Snapshot snapshot) {
+        if (snapshot.project().isDisposed()) {
+            return null;
+        }
+        return new Result(snapshot, snapshot.analysis().compileResult());
+    }
+
+    @Override
+    public void apply(@NotNull PsiFile file, Result result, @NotNull AnnotationHolder holder) {
+        if (result == null || result.snapshot().modificationStamp() != file.getModificationStamp()) {
+            return;
+        }
+
+        Snapshot snapshot = result.snapshot();
+        int textLength = snapshot.analysis().text().length();
+        for (MvelDiagnostic diagnostic : result.compileResult().diagnostics()) {
+            Reporting reporting = diagnostic.sourceKind() == MvelDiagnostic.SourceKind.CODE_BLOCK
+                    ? snapshot.codeBlocks()
+                    : snapshot.syntax();
+            if (!reporting.enabled()) {
+                continue;
+            }
+            TextRange range = diagnostic.toTextRange(textLength);
+            if (range.isEmpty()) {
+                continue;
+            }
+
+            AnnotationBuilder builder = holder.newAnnotation(reporting.severityOf(diagnostic), diagnostic.message())
+                    .range(range);
+            MvelInsertSemicolonFix fix = MvelInsertSemicolonFix.forDiagnostic(file, diagnostic);
+            if (fix != null) {
+                builder = builder.withFix(fix);
+            }
+            builder.create();
+        }
+    }
+
+    public record Snapshot(
+            Project project,
+            MvelFileAnalysis analysis,
+            long modificationStamp,
+            Reporting syntax,
+            Reporting codeBlocks
+    ) {
+    }
+
+    public record Result(Snapshot snapshot, MvelCompileResult compileResult) {
+    }
+
+    /**
+     * Whether an inspection is on for the file in the current profile, and the severity it is configured with.
+     * Errors stay errors whatever the severity, like the inspection's {@code ProblemHighlightType.ERROR}.
+     */
+    public record Reporting(boolean enabled, HighlightSeverity severity) {
+        private static final Reporting DEFAULT = new Reporting(true, HighlightSeverity.WARNING);
+
+        static Reporting of(InspectionProfile profile, String shortName, PsiFile file) {
+            HighlightDisplayKey key = HighlightDisplayKey.find(shortName);
+            if (key == null) {
+                return DEFAULT;
+            }
+            HighlightDisplayLevel level = profile.getErrorLevel(key, file);
+            return new Reporting(profile.isToolEnabled(key, file), level.getSeverity());
+        }
+
+        HighlightSeverity severityOf(MvelDiagnostic diagnostic) {
+            return diagnostic.severity() == MvelDiagnostic.Severity.WARNING ? severity : HighlightSeverity.ERROR;
+        }
+    }
+}
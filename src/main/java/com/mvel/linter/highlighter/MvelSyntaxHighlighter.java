@@ -97,7 +97,8 @@ public class MvelSyntaxHighlighter extends SyntaxHighlighterBase {
             return IDENTIFIER_KEYS;
         }
         if (tokenType == MvelTokenTypes.LINE_COMMENT ||
-            tokenType == MvelTokenTypes.COMMENT) {
+            tokenType == MvelTokenTypes.COMMENT ||
+            tokenType == MvelTokenTypes.TEMPLATE_COMMENT_BODY) {
             return COMMENT_KEYS;
         }
         if (tokenType == MvelTokenTypes.EQ ||
@@ -4,6 +4,7 @@ import com.intellij.codeInspection.*;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.tree.IElementType;
+import com.mvel.linter.compiler.MvelFileAnalysis;
 import com.mvel.linter.lexer.MvelTokenTypes;
 import com.mvel.linter.psi.MvelFile;
 import org.jetbrains.annotations.NotNull;
@@ -23,8 +24,8 @@ public class MvelBestPracticeInspection extends LocalInspectionTool {
     }
 
     private void checkBestPractices(MvelFile file, ProblemsHolder holder) {
-        String text = file.getText();
-        if (text == null || text.trim().isEmpty()) {
+        String text = MvelFileAnalysis.of(file).textWithoutCommentBodies();
+        if (text.trim().isEmpty()) {
             return;
         }
 
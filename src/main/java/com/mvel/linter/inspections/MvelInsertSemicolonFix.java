@@ -0,0 +1,63 @@
+package com.mvel.linter.inspections;
+
+import com.intellij.codeInspection.LocalQuickFix;
+import com.intellij.codeInspection.LocalQuickFixAndIntentionActionOnPsiElement;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.mvel.linter.compiler.MvelDiagnostic;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Inserts the {@code ;} a diagnostic found missing. Shared by the inspections and
+ * {@link com.mvel.linter.highlighter.MvelCompileAnnotator}.
+ */
+public class MvelInsertSemicolonFix extends LocalQuickFixAndIntentionActionOnPsiElement {
+    private static final LocalQuickFix[] NO_FIXES = new LocalQuickFix[0];
+
+    private final int offset;
+
+    public MvelInsertSemicolonFix(@NotNull PsiFile file, int offset) {
+        super(file);
+        this.offset = offset;
+    }
+
+    public static @Nullable MvelInsertSemicolonFix forDiagnostic(@NotNull PsiFile file, MvelDiagnostic diagnostic) {
+        return diagnostic.hasSemicolonFix() ? new MvelInsertSemicolonFix(file, diagnostic.semicolonFixOffset()) : null;
+    }
+
+    static LocalQuickFix[] fixesFor(@NotNull PsiFile file, MvelDiagnostic diagnostic) {
+        MvelInsertSemicolonFix fix = forDiagnostic(file, diagnostic);
+        return fix == null ? NO_FIXES : new LocalQuickFix[]{fix};
+    }
+
+    @Override
+    public @NotNull String getText() {
+        return "Insert ';'";
+    }
+
+    @Override
+    public @NotNull String getFamilyName() {
+        return "Insert missing ';'";
+    }
+
+    @Override
+    public void invoke(
+            @NotNull Project project,
+            @NotNull PsiFile file,
+            @Nullable Editor editor,
+            @NotNull PsiElement startElement,
+            @NotNull PsiElement endElement
+    ) {
+        Document document = PsiDocumentManager.getInstance(project).getDocument(file);
+        if (document == null || offset > document.getTextLength()) {
+            return;
+        }
+        document.insertString(offset, ";");
+        PsiDocumentManager.getInstance(project).commitDocument(document);
+    }
+}
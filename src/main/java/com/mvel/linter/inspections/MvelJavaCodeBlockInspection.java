@@ -6,15 +6,25 @@ import com.intellij.codeInspection.ProblemsHolder;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
-import com.mvel.linter.compiler.MvelCompileService;
 import com.mvel.linter.compiler.MvelDiagnostic;
+import com.mvel.linter.compiler.MvelFileAnalysis;
 import com.mvel.linter.psi.MvelFile;
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * Reports compile errors inside {@code @code{}} blocks in batch inspection runs. In the editor they come from
+ * {@link com.mvel.linter.highlighter.MvelCompileAnnotator}, which compiles off the inspection pass and follows
+ * this inspection's profile settings.
+ */
 public class MvelJavaCodeBlockInspection extends LocalInspectionTool {
+    public static final String SHORT_NAME = "MvelJavaCodeBlock";
+
     @NotNull
     @Override
     public PsiElementVisitor buildVisitor(@NotNull ProblemsHolder holder, boolean isOnTheFly) {
+        if (isOnTheFly) {
+            return PsiElementVisitor.EMPTY_VISITOR;
+        }
         return new PsiElementVisitor() {
             @Override
             public void visitFile(@NotNull PsiFile file) {
@@ -26,7 +36,7 @@ public class MvelJavaCodeBlockInspection extends LocalInspectionTool {
     }
 
     private void checkCodeBlocks(MvelFile file, ProblemsHolder holder) {
-        for (MvelDiagnostic diagnostic : MvelCompileService.getInstance(file.getProject()).getCompileResult(file).diagnostics()) {
+        for (MvelDiagnostic diagnostic : MvelFileAnalysis.of(file).compileResult().diagnostics()) {
             if (diagnostic.sourceKind() != MvelDiagnostic.SourceKind.CODE_BLOCK) {
                 continue;
             }
@@ -46,7 +56,8 @@ public class MvelJavaCodeBlockInspection extends LocalInspectionTool {
                 diagnostic.severity() == MvelDiagnostic.Severity.WARNING
                         ? ProblemHighlightType.GENERIC_ERROR_OR_WARNING
                         : ProblemHighlightType.ERROR,
-                range
+                range,
+                MvelInsertSemicolonFix.fixesFor(file, diagnostic)
         );
     }
 }
@@ -2,6 +2,7 @@ package com.mvel.linter.inspections;
 
 import com.intellij.codeInspection.*;
 import com.intellij.psi.PsiElementVisitor;
+import com.mvel.linter.compiler.MvelFileAnalysis;
 import com.mvel.linter.psi.MvelFile;
 import org.jetbrains.annotations.NotNull;
 
@@ -28,8 +29,8 @@ public class MvelResourceLeakInspection extends LocalInspectionTool {
     }
 
     private void checkResourceLeaks(MvelFile file, ProblemsHolder holder) {
-        String text = file.getText();
-        if (text == null || text.trim().isEmpty()) {
+        String text = MvelFileAnalysis.of(file).textWithoutCommentBodies();
+        if (text.trim().isEmpty()) {
             return;
         }
 
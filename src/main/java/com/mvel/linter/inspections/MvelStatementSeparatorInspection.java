@@ -7,13 +7,11 @@ import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
 import com.mvel.linter.compiler.MvelDiagnostic;
-import com.mvel.linter.compiler.MvelStatementSeparatorAnalyzer;
+import com.mvel.linter.compiler.MvelFileAnalysis;
 import com.mvel.linter.psi.MvelFile;
 import org.jetbrains.annotations.NotNull;
 
 public class MvelStatementSeparatorInspection extends LocalInspectionTool {
-    private final MvelStatementSeparatorAnalyzer analyzer = new MvelStatementSeparatorAnalyzer();
-
     @NotNull
     @Override
     public PsiElementVisitor buildVisitor(@NotNull ProblemsHolder holder, boolean isOnTheFly) {
@@ -28,7 +26,7 @@ public class MvelStatementSeparatorInspection extends LocalInspectionTool {
     }
 
     private void checkStatementSeparators(MvelFile file, ProblemsHolder holder) {
-        for (MvelDiagnostic diagnostic : analyzer.analyze(file.getText())) {
+        for (MvelDiagnostic diagnostic : MvelFileAnalysis.of(file).separatorDiagnostics()) {
             TextRange range = diagnostic.toTextRange(file.getTextLength());
             if (range.isEmpty()) {
                 continue;
@@ -38,7 +36,8 @@ public class MvelStatementSeparatorInspection extends LocalInspectionTool {
                     file,
                     diagnostic.message(),
                     ProblemHighlightType.GENERIC_ERROR_OR_WARNING,
-                    range
+                    range,
+                    MvelInsertSemicolonFix.fixesFor(file, diagnostic)
             );
         }
     }
@@ -1,14 +1,34 @@
 package com.mvel.linter.lexer;
 
 import com.intellij.lexer.LexerBase;
+import com.intellij.lexer.RestartableLexer;
+import com.intellij.lexer.TokenIterator;
 import com.intellij.psi.TokenType;
 import com.intellij.psi.tree.IElementType;
-import com.mvel.linter.MvelLanguage;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+/**
+ * Hand-written MVEL lexer. Every token is classified by dispatching on its first character and
+ * scanning the buffer in place, so lexing is linear in the input size and allocates nothing per token.
+ * <p>
+ * The lexer state records the template body a token sits in ({@code @comment{}}, {@code @code{}} or an
+ * expression tag such as {@code @if{}}) together with the brace depth inside it. A {@code @comment{}} body is
+ * emitted as one opaque {@link MvelTokenTypes#TEMPLATE_COMMENT_BODY} token. Block comments and
+ * string literals are always single tokens, so they never straddle a restart point.
+ * <p>
+ * The editor highlighter keeps no state per token, only whether it is restartable, and restarts with
+ * {@link #getStartState()}. Only tokens of plain text or script, outside every template body, are therefore
+ * restartable; an edit inside a body is re-lexed from the tag that opens it.
+ */
+public class MvelLexer extends LexerBase implements RestartableLexer {
+    static final int CONTEXT_NONE = 0;
+    static final int CONTEXT_COMMENT = 1;
+    static final int CONTEXT_CODE = 2;
+    static final int CONTEXT_EXPRESSION = 3;
+
+    private static final int CONTEXT_BITS = 2;
+    private static final int CONTEXT_MASK = (1 << CONTEXT_BITS) - 1;
+    private static final int MAX_DEPTH = Integer.MAX_VALUE >>> CONTEXT_BITS;
 
-public class MvelLexer extends LexerBase {
     private CharSequence buffer;
     private int startOffset;
     private int endOffset;
@@ -16,12 +36,14 @@ public class MvelLexer extends LexerBase {
     private IElementType tokenType;
     private int tokenStart;
     private int tokenEnd;
-    private static final Pattern IDENTIFIER_PATTERN = Pattern.compile("^[a-zA-Z_$][a-zA-Z0-9_$]*");
-    private static final Pattern NUMBER_PATTERN = Pattern.compile("^(?:\\d+\\.?\\d*|\\.\\d+)(?:[eE][+-]?\\d+)?[fFdDlL]?");
-    private static final Pattern STRING_PATTERN = Pattern.compile("^\"(?:[^\"\\\\]|\\\\.)*\"|^'(?:[^'\\\\]|\\\\.)*'");
-    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("^\\s+");
-    private static final Pattern LINE_COMMENT_PATTERN = Pattern.compile("^//.*");
-    private static final Pattern BLOCK_COMMENT_PATTERN = Pattern.compile("^/\\*.*?\\*/", Pattern.DOTALL);
+    private int tokenState;
+    private int state;
+    private int pendingContext;
+    // Memoized failed scans: an unterminated literal or comment must not be rescanned from every later quote or
+    // `/*`, otherwise text full of stray quotes becomes quadratic to lex.
+    private int unterminatedDoubleQuoteEnd;
+    private int unterminatedSingleQuoteEnd;
+    private int unterminatedBlockCommentStart;
 
     @Override
     public void start(CharSequence buffer, int startOffset, int endOffset, int initialState) {
@@ -29,14 +51,34 @@ public class MvelLexer extends LexerBase {
         this.startOffset = startOffset;
         this.endOffset = endOffset;
         this.currentOffset = startOffset;
+        this.state = initialState;
+        this.unterminatedDoubleQuoteEnd = -1;
+        this.unterminatedSingleQuoteEnd = -1;
+        this.unterminatedBlockCommentStart = Integer.MAX_VALUE;
         advance();
     }
 
+    /** The highlighter only restarts at the start state, so the tokens before the restart point are not needed. */
+    @Override
+    public void start(CharSequence buffer, int startOffset, int endOffset, int initialState, TokenIterator tokenIterator) {
+        start(buffer, startOffset, endOffset, initialState);
+    }
+
     @Override
     public int getState() {
+        return tokenState;
+    }
+
+    @Override
+    public int getStartState() {
         return 0;
     }
 
+    @Override
+    public boolean isRestartableState(int state) {
+        return state == getStartState();
+    }
+
     @Override
     public IElementType getTokenType() {
         return tokenType;
@@ -54,6 +96,7 @@ public class MvelLexer extends LexerBase {
 
     @Override
     public void advance() {
+        tokenState = state;
         if (currentOffset >= endOffset) {
             tokenType = null;
             tokenStart = tokenEnd = currentOffset;
@@ -61,259 +104,277 @@ public class MvelLexer extends LexerBase {
         }
 
         tokenStart = currentOffset;
-        CharSequence remaining = buffer.subSequence(currentOffset, endOffset);
+        pendingContext = CONTEXT_NONE;
+        tokenEnd = lexToken(currentOffset);
 
-        // Skip whitespace
-        Matcher wsMatcher = WHITESPACE_PATTERN.matcher(remaining);
-        if (wsMatcher.find()) {
-            tokenType = MvelTokenTypes.WHITESPACE;
-            tokenEnd = currentOffset + wsMatcher.end();
-            currentOffset = tokenEnd;
-            return;
+        // Safety check: ensure we always advance to prevent infinite loops
+        if (tokenEnd <= currentOffset) {
+            tokenEnd = currentOffset + 1;
+            tokenType = TokenType.BAD_CHARACTER;
         }
 
-        // Comments
-        Matcher lineCommentMatcher = LINE_COMMENT_PATTERN.matcher(remaining);
-        if (lineCommentMatcher.find()) {
-            tokenType = MvelTokenTypes.LINE_COMMENT;
-            tokenEnd = currentOffset + lineCommentMatcher.end();
-            currentOffset = tokenEnd;
-            return;
+        currentOffset = tokenEnd;
+        state = nextState(state);
+    }
+
+    /**
+     * Only the outermost template body is tracked: tags and braces nested inside it just move the depth,
+     * which is enough to know where that body ends.
+     */
+    private int nextState(int current) {
+        int context = context(current);
+        int depth = depth(current);
+
+        if (depth > 0) {
+            if (tokenType == MvelTokenTypes.LBRACE) {
+                return packState(context, Math.min(MAX_DEPTH, depth + 1));
+            }
+            if (tokenType == MvelTokenTypes.RBRACE) {
+                return depth == 1 ? packState(CONTEXT_NONE, 0) : packState(context, depth - 1);
+            }
+            return current;
         }
 
-        Matcher blockCommentMatcher = BLOCK_COMMENT_PATTERN.matcher(remaining);
-        if (blockCommentMatcher.find()) {
-            tokenType = MvelTokenTypes.COMMENT;
-            tokenEnd = currentOffset + blockCommentMatcher.end();
-            currentOffset = tokenEnd;
-            return;
+        // Depth zero with a context means a tag was just read and its `{` comes next.
+        if (context != CONTEXT_NONE && tokenType == MvelTokenTypes.LBRACE) {
+            return packState(context, 1);
         }
+        return packState(pendingContext, 0);
+    }
 
-        // String literals
-        Matcher stringMatcher = STRING_PATTERN.matcher(remaining);
-        if (stringMatcher.find()) {
-            tokenType = MvelTokenTypes.STRING_LITERAL;
-            tokenEnd = currentOffset + stringMatcher.end();
-            currentOffset = tokenEnd;
-            return;
+    static int packState(int context, int depth) {
+        return (depth << CONTEXT_BITS) | context;
+    }
+
+    static int context(int state) {
+        return state & CONTEXT_MASK;
+    }
+
+    static int depth(int state) {
+        return state >>> CONTEXT_BITS;
+    }
+
+    private int lexToken(int offset) {
+        char ch = buffer.charAt(offset);
+
+        if (context(state) == CONTEXT_COMMENT && depth(state) > 0 && ch != '}') {
+            tokenType = MvelTokenTypes.TEMPLATE_COMMENT_BODY;
+            return skipTemplateCommentBody(offset, depth(state));
         }
 
-        // Number literals
-        Matcher numberMatcher = NUMBER_PATTERN.matcher(remaining);
-        if (numberMatcher.find()) {
-            tokenType = MvelTokenTypes.NUMBER_LITERAL;
-            tokenEnd = currentOffset + numberMatcher.end();
-            currentOffset = tokenEnd;
-            return;
+        if (isWhitespace(ch)) {
+            tokenType = MvelTokenTypes.WHITESPACE;
+            return skipWhitespace(offset);
         }
 
-        // Operators and delimiters
-        char ch = remaining.charAt(0);
         switch (ch) {
-            case '=':
-                if (remaining.length() > 1 && remaining.charAt(1) == '=') {
-                    tokenType = MvelTokenTypes.EQ;
-                    tokenEnd = currentOffset + 2;
-                } else {
-                    tokenType = MvelTokenTypes.ASSIGN;
-                    tokenEnd = currentOffset + 1;
+            case '/':
+                if (charAt(offset + 1) == '/') {
+                    tokenType = MvelTokenTypes.LINE_COMMENT;
+                    return skipLineComment(offset);
                 }
-                break;
-            case '!':
-                if (remaining.length() > 1 && remaining.charAt(1) == '=') {
-                    tokenType = MvelTokenTypes.NE;
-                    tokenEnd = currentOffset + 2;
-                } else {
-                    tokenType = MvelTokenTypes.NOT;
-                    tokenEnd = currentOffset + 1;
+                if (charAt(offset + 1) == '*') {
+                    int commentEnd = skipBlockComment(offset);
+                    if (commentEnd >= 0) {
+                        tokenType = MvelTokenTypes.COMMENT;
+                        return commentEnd;
+                    }
                 }
-                break;
-            case '<':
-                if (remaining.length() > 1 && remaining.charAt(1) == '=') {
-                    tokenType = MvelTokenTypes.LE;
-                    tokenEnd = currentOffset + 2;
-                } else {
-                    tokenType = MvelTokenTypes.LT;
-                    tokenEnd = currentOffset + 1;
+                return single(MvelTokenTypes.DIV, offset);
+            case '"':
+            case '\'':
+                int stringEnd = skipQuotedString(offset);
+                if (stringEnd >= 0) {
+                    tokenType = MvelTokenTypes.STRING_LITERAL;
+                    return stringEnd;
                 }
-                break;
-            case '>':
-                if (remaining.length() > 1 && remaining.charAt(1) == '=') {
-                    tokenType = MvelTokenTypes.GE;
-                    tokenEnd = currentOffset + 2;
-                } else {
-                    tokenType = MvelTokenTypes.GT;
-                    tokenEnd = currentOffset + 1;
+                // An unterminated quote is reported on its own so lexing resumes right after it.
+                return single(TokenType.BAD_CHARACTER, offset);
+            case '.':
+                if (isDigit(charAt(offset + 1))) {
+                    tokenType = MvelTokenTypes.NUMBER_LITERAL;
+                    return skipNumber(offset);
                 }
-                break;
+                return single(MvelTokenTypes.DOT, offset);
+            case '=':
+                return pair(offset, '=', MvelTokenTypes.EQ, MvelTokenTypes.ASSIGN);
+            case '!':
+                return pair(offset, '=', MvelTokenTypes.NE, MvelTokenTypes.NOT);
+            case '<':
+                return pair(offset, '=', MvelTokenTypes.LE, MvelTokenTypes.LT);
+            case '>':
+                return pair(offset, '=', MvelTokenTypes.GE, MvelTokenTypes.GT);
             case '&':
-                if (remaining.length() > 1 && remaining.charAt(1) == '&') {
-                    tokenType = MvelTokenTypes.AND;
-                    tokenEnd = currentOffset + 2;
-                } else {
-                    tokenType = TokenType.BAD_CHARACTER;
-                    tokenEnd = currentOffset + 1;
-                }
-                break;
+                return pair(offset, '&', MvelTokenTypes.AND, TokenType.BAD_CHARACTER);
             case '|':
-                if (remaining.length() > 1 && remaining.charAt(1) == '|') {
-                    tokenType = MvelTokenTypes.OR;
-                    tokenEnd = currentOffset + 2;
-                } else {
-                    tokenType = TokenType.BAD_CHARACTER;
-                    tokenEnd = currentOffset + 1;
-                }
-                break;
+                return pair(offset, '|', MvelTokenTypes.OR, TokenType.BAD_CHARACTER);
             case '+':
-                tokenType = MvelTokenTypes.PLUS;
-                tokenEnd = currentOffset + 1;
-                break;
+                return single(MvelTokenTypes.PLUS, offset);
             case '-':
-                tokenType = MvelTokenTypes.MINUS;
-                tokenEnd = currentOffset + 1;
-                break;
+                return single(MvelTokenTypes.MINUS, offset);
             case '*':
-                tokenType = MvelTokenTypes.MUL;
-                tokenEnd = currentOffset + 1;
-                break;
-            case '/':
-                tokenType = MvelTokenTypes.DIV;
-                tokenEnd = currentOffset + 1;
-                break;
+                return single(MvelTokenTypes.MUL, offset);
             case '%':
-                tokenType = MvelTokenTypes.MOD;
-                tokenEnd = currentOffset + 1;
-                break;
-            case '.':
-                tokenType = MvelTokenTypes.DOT;
-                tokenEnd = currentOffset + 1;
-                break;
+                return single(MvelTokenTypes.MOD, offset);
             case ',':
-                tokenType = MvelTokenTypes.COMMA;
-                tokenEnd = currentOffset + 1;
-                break;
+                return single(MvelTokenTypes.COMMA, offset);
             case ';':
-                tokenType = MvelTokenTypes.SEMICOLON;
-                tokenEnd = currentOffset + 1;
-                break;
+                return single(MvelTokenTypes.SEMICOLON, offset);
             case '(':
-                tokenType = MvelTokenTypes.LPAREN;
-                tokenEnd = currentOffset + 1;
-                break;
+                return single(MvelTokenTypes.LPAREN, offset);
             case ')':
-                tokenType = MvelTokenTypes.RPAREN;
-                tokenEnd = currentOffset + 1;
-                break;
+                return single(MvelTokenTypes.RPAREN, offset);
             case '[':
-                tokenType = MvelTokenTypes.LBRACKET;
-                tokenEnd = currentOffset + 1;
-                break;
+                return single(MvelTokenTypes.LBRACKET, offset);
             case ']':
-                tokenType = MvelTokenTypes.RBRACKET;
-                tokenEnd = currentOffset + 1;
-                break;
+                return single(MvelTokenTypes.RBRACKET, offset);
             case '{':
-                tokenType = MvelTokenTypes.LBRACE;
-                tokenEnd = currentOffset + 1;
-                break;
+                return single(MvelTokenTypes.LBRACE, offset);
             case '}':
-                tokenType = MvelTokenTypes.RBRACE;
-                tokenEnd = currentOffset + 1;
-                break;
+                return single(MvelTokenTypes.RBRACE, offset);
             case ':':
-                tokenType = MvelTokenTypes.COLON;
-                tokenEnd = currentOffset + 1;
-                break;
+                return single(MvelTokenTypes.COLON, offset);
             case '?':
-                tokenType = MvelTokenTypes.QUESTION;
-                tokenEnd = currentOffset + 1;
-                break;
+                return single(MvelTokenTypes.QUESTION, offset);
             case '@':
-                // Keep the template keyword and the opening brace as separate tokens so
-                // editor brace matching sees the real `{` / `}` balance in template-heavy files.
-                String remainingStr = remaining.toString();
-                if (remainingStr.startsWith("@comment{")) {
-                    tokenType = MvelTokenTypes.TEMPLATE_COMMENT;
-                    tokenEnd = currentOffset + 8; // "@comment".length()
-                } else if (remainingStr.startsWith("@code{")) {
-                    tokenType = MvelTokenTypes.TEMPLATE_CODE;
-                    tokenEnd = currentOffset + 5; // "@code".length()
-                } else if (remainingStr.startsWith("@includeNamed{")) {
-                    tokenType = MvelTokenTypes.TEMPLATE_INCLUDE_NAMED;
-                    tokenEnd = currentOffset + 13; // "@includeNamed".length()
-                } else if (remainingStr.startsWith("@include{")) {
-                    tokenType = MvelTokenTypes.TEMPLATE_INCLUDE;
-                    tokenEnd = currentOffset + 8; // "@include".length()
-                } else if (remainingStr.startsWith("@foreach{")) {
-                    tokenType = MvelTokenTypes.TEMPLATE_FOREACH;
-                    tokenEnd = currentOffset + 8; // "@foreach".length()
-                } else if (remainingStr.startsWith("@if{")) {
-                    tokenType = MvelTokenTypes.TEMPLATE_IF;
-                    tokenEnd = currentOffset + 3; // "@if".length()
-                } else if (remainingStr.startsWith("@else{")) {
-                    tokenType = MvelTokenTypes.TEMPLATE_ELSE;
-                    tokenEnd = currentOffset + 5; // "@else".length()
-                } else if (remainingStr.startsWith("@end{")) {
-                    tokenType = MvelTokenTypes.TEMPLATE_END;
-                    tokenEnd = currentOffset + 4; // "@end".length()
-                } else if (remainingStr.startsWith("@declare{")) {
-                    tokenType = MvelTokenTypes.TEMPLATE_DECLARE;
-                    tokenEnd = currentOffset + 8; // "@declare".length()
-                } else {
-                    tokenType = MvelTokenTypes.AT;
-                    tokenEnd = currentOffset + 1;
-                }
-                break;
+                return lexTemplateTag(offset);
             default:
-                // Try identifier or keyword
-                Matcher idMatcher = IDENTIFIER_PATTERN.matcher(remaining);
-                if (idMatcher.find()) {
-                    String identifier = idMatcher.group();
-                    tokenType = getKeywordType(identifier);
-                    if (tokenType == null) {
-                        tokenType = MvelTokenTypes.IDENTIFIER;
-                    }
-                    tokenEnd = currentOffset + idMatcher.end();
-                } else {
-                    // Keep lexing after unknown characters so editor features continue to work.
-                    tokenType = TokenType.BAD_CHARACTER;
-                    tokenEnd = currentOffset + 1;
-                }
                 break;
         }
 
-        // Safety check: ensure we always advance to prevent infinite loops
-        if (tokenEnd <= currentOffset) {
-            tokenEnd = currentOffset + 1;
-            tokenType = TokenType.BAD_CHARACTER;
+        if (isDigit(ch)) {
+            tokenType = MvelTokenTypes.NUMBER_LITERAL;
+            return skipNumber(offset);
         }
-        
-        currentOffset = tokenEnd;
+
+        if (isIdentifierStart(ch)) {
+            int identifierEnd = skipIdentifier(offset);
+            IElementType keywordType = getKeywordType(offset, identifierEnd);
+            tokenType = keywordType != null ? keywordType : MvelTokenTypes.IDENTIFIER;
+            return identifierEnd;
+        }
+
+        // Keep lexing after unknown characters so editor features continue to work.
+        return single(TokenType.BAD_CHARACTER, offset);
     }
 
-    private IElementType getKeywordType(String identifier) {
-        switch (identifier) {
-            case "if": return MvelTokenTypes.IF;
-            case "else": return MvelTokenTypes.ELSE;
-            case "for": return MvelTokenTypes.FOR;
-            case "foreach": return MvelTokenTypes.FOREACH;
-            case "while": return MvelTokenTypes.WHILE;
-            case "do": return MvelTokenTypes.DO;
-            case "until": return MvelTokenTypes.UNTIL;
-            case "return": return MvelTokenTypes.RETURN;
-            case "new": return MvelTokenTypes.NEW;
-            case "function": return MvelTokenTypes.FUNCTION;
-            case "def": return MvelTokenTypes.DEF;
-            case "isdef": return MvelTokenTypes.ISDEF;
-            case "with": return MvelTokenTypes.WITH;
-            case "assert": return MvelTokenTypes.ASSERT;
-            case "true":
-            case "false": return MvelTokenTypes.BOOLEAN_LITERAL;
-            case "null":
-            case "nil": return MvelTokenTypes.NULL_LITERAL;
-            case "empty": return MvelTokenTypes.EMPTY_LITERAL;
-            default: return null;
+    /**
+     * Template tags are matched including their opening brace, but only the keyword part becomes the token so
+     * editor brace matching sees the real `{` / `}` balance. The character after `@` selects the candidates.
+     */
+    private int lexTemplateTag(int offset) {
+        int nameOffset = offset + 1;
+        switch (charAt(nameOffset)) {
+            case 'c' -> {
+                if (templateTag(nameOffset, "comment{", MvelTokenTypes.TEMPLATE_COMMENT, CONTEXT_COMMENT)
+                        || templateTag(nameOffset, "code{", MvelTokenTypes.TEMPLATE_CODE, CONTEXT_CODE)) {
+                    return tokenEnd;
+                }
+            }
+            case 'i' -> {
+                if (templateTag(nameOffset, "includeNamed{", MvelTokenTypes.TEMPLATE_INCLUDE_NAMED, CONTEXT_EXPRESSION)
+                        || templateTag(nameOffset, "include{", MvelTokenTypes.TEMPLATE_INCLUDE, CONTEXT_EXPRESSION)
+                        || templateTag(nameOffset, "if{", MvelTokenTypes.TEMPLATE_IF, CONTEXT_EXPRESSION)) {
+                    return tokenEnd;
+                }
+            }
+            case 'f' -> {
+                if (templateTag(nameOffset, "foreach{", MvelTokenTypes.TEMPLATE_FOREACH, CONTEXT_EXPRESSION)) {
+                    return tokenEnd;
+                }
+            }
+            case 'e' -> {
+                if (templateTag(nameOffset, "else{", MvelTokenTypes.TEMPLATE_ELSE, CONTEXT_EXPRESSION)
+                        || templateTag(nameOffset, "end{", MvelTokenTypes.TEMPLATE_END, CONTEXT_EXPRESSION)) {
+                    return tokenEnd;
+                }
+            }
+            case 'd' -> {
+                if (templateTag(nameOffset, "declare{", MvelTokenTypes.TEMPLATE_DECLARE, CONTEXT_EXPRESSION)) {
+                    return tokenEnd;
+                }
+            }
+            case '{' -> pendingContext = CONTEXT_EXPRESSION;
+            default -> {
+            }
+        }
+        return single(MvelTokenTypes.AT, offset);
+    }
+
+    private boolean templateTag(int nameOffset, String nameWithBrace, IElementType type, int context) {
+        if (!regionMatches(nameOffset, nameWithBrace)) {
+            return false;
         }
+        tokenType = type;
+        tokenEnd = nameOffset + nameWithBrace.length() - 1;
+        pendingContext = context;
+        return true;
+    }
+
+    private IElementType getKeywordType(int start, int end) {
+        char first = buffer.charAt(start);
+        return switch (end - start) {
+            case 2 -> switch (first) {
+                case 'i' -> keyword(start, "if", MvelTokenTypes.IF);
+                case 'd' -> keyword(start, "do", MvelTokenTypes.DO);
+                default -> null;
+            };
+            case 3 -> switch (first) {
+                case 'f' -> keyword(start, "for", MvelTokenTypes.FOR);
+                case 'n' -> buffer.charAt(start + 1) == 'e'
+                        ? keyword(start, "new", MvelTokenTypes.NEW)
+                        : keyword(start, "nil", MvelTokenTypes.NULL_LITERAL);
+                case 'd' -> keyword(start, "def", MvelTokenTypes.DEF);
+                default -> null;
+            };
+            case 4 -> switch (first) {
+                case 'e' -> keyword(start, "else", MvelTokenTypes.ELSE);
+                case 'w' -> keyword(start, "with", MvelTokenTypes.WITH);
+                case 't' -> keyword(start, "true", MvelTokenTypes.BOOLEAN_LITERAL);
+                case 'n' -> keyword(start, "null", MvelTokenTypes.NULL_LITERAL);
+                default -> null;
+            };
+            case 5 -> switch (first) {
+                case 'w' -> keyword(start, "while", MvelTokenTypes.WHILE);
+                case 'u' -> keyword(start, "until", MvelTokenTypes.UNTIL);
+                case 'i' -> keyword(start, "isdef", MvelTokenTypes.ISDEF);
+                case 'f' -> keyword(start, "false", MvelTokenTypes.BOOLEAN_LITERAL);
+                case 'e' -> keyword(start, "empty", MvelTokenTypes.EMPTY_LITERAL);
+                default -> null;
+            };
+            case 6 -> switch (first) {
+                case 'r' -> keyword(start, "return", MvelTokenTypes.RETURN);
+                case 'a' -> keyword(start, "assert", MvelTokenTypes.ASSERT);
+                default -> null;
+            };
+            case 7 -> first == 'f' ? keyword(start, "foreach", MvelTokenTypes.FOREACH) : null;
+            case 8 -> first == 'f' ? keyword(start, "function", MvelTokenTypes.FUNCTION) : null;
+            default -> null;
+        };
+    }
+
+    private IElementType keyword(int start, String keyword, IElementType type) {
+        // The first character was already checked by the caller.
+        for (int index = 1; index < keyword.length(); index++) {
+            if (buffer.charAt(start + index) != keyword.charAt(index)) {
+                return null;
+            }
+        }
+        return type;
+    }
+
+    private int single(IElementType type, int offset) {
+        tokenType = type;
+        return offset + 1;
+    }
+
+    private int pair(int offset, char second, IElementType pairType, IElementType singleType) {
+        if (charAt(offset + 1) == second) {
+            tokenType = pairType;
+            return offset + 2;
+        }
+        tokenType = singleType;
+        return offset + 1;
     }
 
     @Override
@@ -326,12 +387,100 @@ public class MvelLexer extends LexerBase {
         return endOffset;
     }
 
+    private char charAt(int offset) {
+        return offset < endOffset ? buffer.charAt(offset) : '\0';
+    }
+
+    private boolean regionMatches(int offset, String literal) {
+        if (offset + literal.length() > endOffset) {
+            return false;
+        }
+        for (int index = 0; index < literal.length(); index++) {
+            if (buffer.charAt(offset + index) != literal.charAt(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipWhitespace(int offset) {
+        int index = offset + 1;
+        while (index < endOffset && isWhitespace(buffer.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private int skipIdentifier(int offset) {
+        int index = offset + 1;
+        while (index < endOffset && isIdentifierPart(buffer.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private int skipDigits(int offset) {
+        int index = offset;
+        while (index < endOffset && isDigit(buffer.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private int skipNumber(int offset) {
+        int index;
+        if (buffer.charAt(offset) == '.') {
+            index = skipDigits(offset + 1);
+        } else {
+            index = skipDigits(offset);
+            if (charAt(index) == '.') {
+                index = skipDigits(index + 1);
+            }
+        }
+
+        char exponent = charAt(index);
+        if (exponent == 'e' || exponent == 'E') {
+            int digitsStart = index + 1;
+            char sign = charAt(digitsStart);
+            if (sign == '+' || sign == '-') {
+                digitsStart++;
+            }
+            int digitsEnd = skipDigits(digitsStart);
+            if (digitsEnd > digitsStart) {
+                index = digitsEnd;
+            }
+        }
+
+        switch (charAt(index)) {
+            case 'f', 'F', 'd', 'D', 'l', 'L' -> index++;
+            default -> {
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the offset after the closing quote, or -1 when the literal is not terminated.
+     * An escape never swallows a line break, matching how MVEL itself reads quoted text.
+     * <p>
+     * When a scan from an earlier quote failed and passed this one, this quote was consumed as an escaped
+     * character by that scan. Both scans then read the same characters from the next offset on, so this one
+     * fails as well and the buffer is not read again.
+     */
     private int skipQuotedString(int offset) {
         char quote = buffer.charAt(offset);
+        int knownFailureEnd = quote == '"' ? unterminatedDoubleQuoteEnd : unterminatedSingleQuoteEnd;
+        if (offset < knownFailureEnd) {
+            return -1;
+        }
+
         int index = offset + 1;
         while (index < endOffset) {
             char current = buffer.charAt(index);
-            if (current == '\\' && index + 1 < endOffset) {
+            if (current == '\\') {
+                if (index + 1 >= endOffset || isLineTerminator(buffer.charAt(index + 1))) {
+                    return rememberUnterminatedString(quote, index);
+                }
                 index += 2;
                 continue;
             }
@@ -340,18 +489,81 @@ public class MvelLexer extends LexerBase {
             }
             index++;
         }
+        return rememberUnterminatedString(quote, endOffset);
+    }
+
+    private int rememberUnterminatedString(char quote, int failureEnd) {
+        if (quote == '"') {
+            unterminatedDoubleQuoteEnd = failureEnd;
+        } else {
+            unterminatedSingleQuoteEnd = failureEnd;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offset of the brace closing the comment body, or the buffer end when it is unclosed. Strings and
+     * comments are skipped the same way {@code TemplateCodeBlockScanner} does, so both agree on where the block ends.
+     */
+    private int skipTemplateCommentBody(int offset, int depth) {
+        int index = offset;
+        while (index < endOffset) {
+            char current = buffer.charAt(index);
+            char next = charAt(index + 1);
+            if (current == '"' || current == '\'') {
+                index = skipScannerQuotedString(index);
+            } else if (current == '/' && next == '/') {
+                while (index < endOffset && buffer.charAt(index) != '\n') {
+                    index++;
+                }
+            } else if (current == '/' && next == '*') {
+                int commentEnd = skipBlockComment(index);
+                index = commentEnd >= 0 ? commentEnd : endOffset;
+            } else {
+                if (current == '{') {
+                    depth++;
+                } else if (current == '}' && --depth == 0) {
+                    return index;
+                }
+                index++;
+            }
+        }
+        return endOffset;
+    }
+
+    private int skipScannerQuotedString(int offset) {
+        char quote = buffer.charAt(offset);
+        int index = offset + 1;
+        while (index < endOffset) {
+            char current = buffer.charAt(index);
+            if (current == '\\') {
+                index += 2;
+            } else if (current == quote) {
+                return index + 1;
+            } else {
+                index++;
+            }
+        }
         return endOffset;
     }
 
     private int skipLineComment(int offset) {
         int index = offset + 2;
-        while (index < endOffset && buffer.charAt(index) != '\n') {
+        while (index < endOffset && !isLineTerminator(buffer.charAt(index))) {
             index++;
         }
         return index;
     }
 
+    /**
+     * Returns the offset after the closing {@code *}{@code /}, or -1 when the comment is not terminated.
+     * Once a comment has no terminator, no later comment can have one either.
+     */
     private int skipBlockComment(int offset) {
+        if (offset >= unterminatedBlockCommentStart) {
+            return -1;
+        }
+
         int index = offset + 2;
         while (index + 1 < endOffset) {
             if (buffer.charAt(index) == '*' && buffer.charAt(index + 1) == '/') {
@@ -359,6 +571,27 @@ public class MvelLexer extends LexerBase {
             }
             index++;
         }
-        return endOffset;
+        unterminatedBlockCommentStart = offset;
+        return -1;
+    }
+
+    private static boolean isWhitespace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r' || ch == '\f' || ch == '\u000B';
+    }
+
+    private static boolean isLineTerminator(char ch) {
+        return ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029';
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static boolean isIdentifierStart(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || ch == '_' || ch == '$';
+    }
+
+    private static boolean isIdentifierPart(char ch) {
+        return isIdentifierStart(ch) || isDigit(ch);
     }
 }
@@ -0,0 +1,156 @@
+package com.mvel.linter.lexer;
+
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Immutable, packed result of running {@link MvelLexer} over a text: token start offsets and element type ids
+ * are kept in parallel {@code int[]} arrays and token text is never copied. A stream can also be a view over
+ * a token-aligned range of another stream; offsets of a view are relative to the start of that range.
+ */
+public final class MvelTokenStream {
+    private final CharSequence text;
+    private final int[] starts;
+    private final int[] typeIds;
+    private final int fromIndex;
+    private final int toIndex;
+    private final int offsetShift;
+
+    private MvelTokenStream(CharSequence text, int[] starts, int[] typeIds, int fromIndex, int toIndex, int offsetShift) {
+        this.text = text;
+        this.starts = starts;
+        this.typeIds = typeIds;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+        this.offsetShift = offsetShift;
+    }
+
+    public static @NotNull MvelTokenStream build(@NotNull CharSequence text) {
+        int capacity = Math.max(16, text.length() / 4);
+        int[] starts = new int[capacity + 1];
+        int[] typeIds = new int[capacity];
+        int size = 0;
+
+        MvelLexer lexer = new MvelLexer();
+        lexer.start(text, 0, text.length(), 0);
+        while (lexer.getTokenType() != null) {
+            if (size == typeIds.length) {
+                typeIds = Arrays.copyOf(typeIds, size * 2);
+                starts = Arrays.copyOf(starts, size * 2 + 1);
+            }
+            starts[size] = lexer.getTokenStart();
+            typeIds[size] = lexer.getTokenType().getIndex();
+            size++;
+            lexer.advance();
+        }
+        starts[size] = text.length();
+
+        return new MvelTokenStream(text, starts, typeIds, 0, size, 0);
+    }
+
+    public int size() {
+        return toIndex - fromIndex;
+    }
+
+    public @NotNull IElementType getType(int index) {
+        return IElementType.find((short) typeIds[fromIndex + index]);
+    }
+
+    public int getStart(int index) {
+        return starts[fromIndex + index] - offsetShift;
+    }
+
+    public int getEnd(int index) {
+        return starts[fromIndex + index + 1] - offsetShift;
+    }
+
+    public @NotNull String getTokenText(int index) {
+        return text.subSequence(starts[fromIndex + index], starts[fromIndex + index + 1]).toString();
+    }
+
+    public boolean tokenTextEquals(int index, @NotNull CharSequence expected) {
+        int start = starts[fromIndex + index];
+        int end = starts[fromIndex + index + 1];
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int offset = 0; offset < expected.length(); offset++) {
+            if (text.charAt(start + offset) != expected.charAt(offset)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of the first token starting at or after {@code offset}, or {@link #size()} if there is none.
+     */
+    public int indexAtOrAfter(int offset) {
+        int absoluteOffset = offset + offsetShift;
+        int low = fromIndex;
+        int high = toIndex;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < absoluteOffset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - fromIndex;
+    }
+
+    /**
+     * Returns the tokens covering {@code [startOffset, endOffset)}. When both ends fall on token boundaries this is
+     * a view sharing the arrays of this stream; otherwise the range is lexed on its own.
+     */
+    public @NotNull MvelTokenStream slice(int startOffset, int endOffset) {
+        int sliceFrom = indexAtOrAfter(startOffset);
+        int sliceTo = indexAtOrAfter(endOffset);
+        boolean startAligned = sliceFrom < size() ? getStart(sliceFrom) == startOffset : startOffset == endOffset;
+        boolean endAligned = sliceTo < size() ? getStart(sliceTo) == endOffset : getEnd(size() - 1) == endOffset;
+        if (startAligned && endAligned) {
+            return new MvelTokenStream(
+                    text,
+                    starts,
+                    typeIds,
+                    fromIndex + sliceFrom,
+                    fromIndex + sliceTo,
+                    startOffset + offsetShift
+            );
+        }
+        return build(text.subSequence(startOffset + offsetShift, endOffset + offsetShift));
+    }
+
+    public int previousSignificant(int index) {
+        for (int i = index - 1; i >= 0; i--) {
+            if (isSignificant(getType(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int nextSignificant(int index, int limit) {
+        for (int i = index + 1; i < limit; i++) {
+            if (isSignificant(getType(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public @Nullable IElementType getTypeOrNull(int index) {
+        return index < 0 ? null : getType(index);
+    }
+
+    public static boolean isSignificant(IElementType type) {
+        return type != MvelTokenTypes.WHITESPACE &&
+                type != MvelTokenTypes.COMMENT &&
+                type != MvelTokenTypes.LINE_COMMENT &&
+                type != MvelTokenTypes.TEMPLATE_COMMENT_BODY;
+    }
+}
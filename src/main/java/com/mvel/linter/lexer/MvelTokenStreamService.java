@@ -0,0 +1,64 @@
+package com.mvel.linter.lexer;
+
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Hands out one {@link MvelTokenStream} per document and modification stamp, so navigation, code block
+ * transpiling and inspections share a single lexer pass over unchanged text.
+ */
+@Service(Service.Level.PROJECT)
+public final class MvelTokenStreamService {
+    private static final Key<StampedTokenStream> DOCUMENT_TOKENS_KEY =
+            Key.create("com.mvel.linter.lexer.MvelTokenStream.document");
+    private static final Key<CachedValue<MvelTokenStream>> FILE_TOKENS_KEY =
+            Key.create("com.mvel.linter.lexer.MvelTokenStream.file");
+
+    private final Project project;
+
+    public MvelTokenStreamService(@NotNull Project project) {
+        this.project = project;
+    }
+
+    public static @NotNull MvelTokenStreamService getInstance(@NotNull Project project) {
+        return project.getService(MvelTokenStreamService.class);
+    }
+
+    public @NotNull MvelTokenStream getTokenStream(@NotNull Document document) {
+        long stamp = document.getModificationStamp();
+        StampedTokenStream cached = document.getUserData(DOCUMENT_TOKENS_KEY);
+        if (cached != null && cached.stamp() == stamp) {
+            return cached.tokens();
+        }
+
+        MvelTokenStream tokens = MvelTokenStream.build(document.getImmutableCharSequence());
+        document.putUserData(DOCUMENT_TOKENS_KEY, new StampedTokenStream(stamp, tokens));
+        return tokens;
+    }
+
+    /**
+     * Returns the tokens of the file's current PSI text. The document cache is only used while the document is
+     * committed, because otherwise its offsets would not match the PSI.
+     */
+    public @NotNull MvelTokenStream getTokenStream(@NotNull PsiFile file) {
+        PsiDocumentManager documentManager = PsiDocumentManager.getInstance(project);
+        Document document = documentManager.getDocument(file);
+        if (document != null && documentManager.isCommitted(document)) {
+            return getTokenStream(document);
+        }
+
+        return CachedValuesManager.getManager(project).getCachedValue(file, FILE_TOKENS_KEY, () ->
+                CachedValueProvider.Result.create(MvelTokenStream.build(file.getViewProvider().getContents()), file), false);
+    }
+
+    private record StampedTokenStream(long stamp, MvelTokenStream tokens) {
+    }
+}
@@ -74,6 +74,7 @@ public class MvelTokenTypes {
     public static final IElementType WHITESPACE = new MvelElementType("WHITESPACE");
     public static final IElementType COMMENT = new MvelElementType("COMMENT");
     public static final IElementType LINE_COMMENT = new MvelElementType("LINE_COMMENT");
+    public static final IElementType TEMPLATE_COMMENT_BODY = new MvelElementType("TEMPLATE_COMMENT_BODY");
     
     private static class MvelElementType extends IElementType {
         public MvelElementType(String debugName) {
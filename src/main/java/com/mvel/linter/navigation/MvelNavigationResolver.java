@@ -1,5 +1,6 @@
 package com.mvel.linter.navigation;
 
+import com.intellij.openapi.project.DumbService;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiField;
@@ -10,9 +11,13 @@ import com.intellij.psi.search.PsiShortNamesCache;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.psi.util.PsiUtilCore;
-import com.mvel.linter.lexer.MvelLexer;
+import com.mvel.linter.lexer.MvelTokenStream;
+import com.mvel.linter.lexer.MvelTokenStreamService;
 import com.mvel.linter.lexer.MvelTokenTypes;
+import com.mvel.linter.psi.MvelFunctionDef;
+import com.mvel.linter.psi.stubs.MvelDeclarationIndex;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
@@ -36,15 +41,23 @@ public final class MvelNavigationResolver {
         Set<PsiElement> targets = new LinkedHashSet<>();
         String symbolName = element.getText();
         int usageOffset = element.getTextRange().getStartOffset();
-        CharSequence fileText = file.getViewProvider().getContents();
-        List<TokenInfo> tokens = tokenize(fileText, usageOffset);
+        MvelTokenStream tokens = MvelTokenStreamService.getInstance(file.getProject()).getTokenStream(file);
+        int tokenLimit = tokens.indexAtOrAfter(usageOffset);
 
-        Integer localFunctionOffset = findLocalFunctionDeclarationOffset(tokens, symbolName);
-        if (localFunctionOffset != null) {
-            addTargetAtOffset(file, localFunctionOffset, targets);
+        PsiElement indexedFunction = findIndexedFunctionDeclaration(file, symbolName, usageOffset);
+        if (indexedFunction != null) {
+            targets.add(indexedFunction);
+        } else {
+            // Functions declared inside other functions are not indexed.
+            Integer localFunctionOffset = findLocalFunctionDeclarationOffset(tokens, tokenLimit, symbolName);
+            if (localFunctionOffset != null) {
+                addTargetAtOffset(file, localFunctionOffset, targets);
+            } else if (isMethodCallIdentifier(element)) {
+                addFunctionsOfOtherFiles(element, file, symbolName, targets);
+            }
         }
 
-        Integer localVariableOffset = findLocalVariableDeclarationOffset(tokens, symbolName);
+        Integer localVariableOffset = findLocalVariableDeclarationOffset(tokens, tokenLimit, symbolName);
         if (localVariableOffset != null) {
             addTargetAtOffset(file, localVariableOffset, targets);
         }
@@ -94,6 +107,66 @@ public final class MvelNavigationResolver {
                 nextType == MvelTokenTypes.LPAREN;
     }
 
+    /**
+     * Name of the latest top-level function called {@code symbolName} declared before the usage, found through the
+     * stub index instead of the file's tokens. Returns {@code null} while indexes are not ready.
+     */
+    private static @Nullable PsiElement findIndexedFunctionDeclaration(
+            PsiFile file,
+            String symbolName,
+            int usageOffset
+    ) {
+        if (file.getVirtualFile() == null || DumbService.isDumb(file.getProject())) {
+            return null;
+        }
+
+        MvelFunctionDef latest = null;
+        int latestOffset = -1;
+        GlobalSearchScope scope = GlobalSearchScope.fileScope(file);
+        List<MvelFunctionDef> declared =
+                MvelDeclarationIndex.find(symbolName, MvelFunctionDef.class, file.getProject(), scope);
+        for (MvelFunctionDef function : declared) {
+            int offset = function.getTextOffset();
+            if (offset < usageOffset && offset > latestOffset) {
+                latest = function;
+                latestOffset = offset;
+            }
+        }
+        return latest != null ? latest.getNameIdentifier() : null;
+    }
+
+    private static void addFunctionsOfOtherFiles(
+            PsiElement element,
+            PsiFile file,
+            String symbolName,
+            Set<PsiElement> targets
+    ) {
+        if (DumbService.isDumb(file.getProject())) {
+            return;
+        }
+
+        GlobalSearchScope scope = GlobalSearchScope.projectScope(file.getProject());
+        List<MvelFunctionDef> functions = new ArrayList<>();
+        for (MvelFunctionDef function :
+                MvelDeclarationIndex.find(symbolName, MvelFunctionDef.class, file.getProject(), scope)) {
+            if (!file.getOriginalFile().equals(function.getContainingFile())) {
+                functions.add(function);
+            }
+        }
+
+        Integer argumentCount = MvelNavigationSupport.inferArgumentCount(
+                file.getViewProvider().getContents(),
+                element.getTextRange().getEndOffset()
+        );
+        List<MvelFunctionDef> matching = new ArrayList<>();
+        for (MvelFunctionDef function : functions) {
+            if (argumentCount == null || function.getParameterCount() == argumentCount) {
+                matching.add(function);
+            }
+        }
+        targets.addAll(matching.isEmpty() ? functions : matching);
+    }
+
     private static void addJavaMethods(PsiElement element, String symbolName, Set<PsiElement> targets) {
         GlobalSearchScope scope = element.getResolveScope();
         PsiShortNamesCache shortNamesCache = PsiShortNamesCache.getInstance(element.getProject());
@@ -179,62 +252,60 @@ public final class MvelNavigationResolver {
         return MvelNavigationSupport.isUppercaseQualifier(qualifier) ? qualifier : null;
     }
 
-    private static Integer findLocalFunctionDeclarationOffset(List<TokenInfo> tokens, String symbolName) {
+    private static Integer findLocalFunctionDeclarationOffset(MvelTokenStream tokens, int tokenLimit, String symbolName) {
         Integer result = null;
-        for (int i = 0; i < tokens.size(); i++) {
-            TokenInfo token = tokens.get(i);
-            if (token.type != MvelTokenTypes.IDENTIFIER || !symbolName.equals(token.text)) {
+        for (int i = 0; i < tokenLimit; i++) {
+            if (tokens.getType(i) != MvelTokenTypes.IDENTIFIER || !tokens.tokenTextEquals(i, symbolName)) {
                 continue;
             }
 
-            IElementType previousType = previousSignificantType(tokens, i);
-            IElementType nextType = nextSignificantType(tokens, i);
+            IElementType previousType = tokens.getTypeOrNull(tokens.previousSignificant(i));
+            IElementType nextType = tokens.getTypeOrNull(tokens.nextSignificant(i, tokenLimit));
             if ((previousType == MvelTokenTypes.DEF || previousType == MvelTokenTypes.FUNCTION) &&
                     nextType == MvelTokenTypes.LPAREN) {
-                result = token.startOffset;
+                result = tokens.getStart(i);
             }
         }
         return result;
     }
 
-    private static Integer findLocalVariableDeclarationOffset(List<TokenInfo> tokens, String symbolName) {
+    private static Integer findLocalVariableDeclarationOffset(MvelTokenStream tokens, int tokenLimit, String symbolName) {
         Integer result = null;
-        for (int i = 0; i < tokens.size(); i++) {
-            TokenInfo token = tokens.get(i);
-            if (token.type != MvelTokenTypes.IDENTIFIER || !symbolName.equals(token.text)) {
+        for (int i = 0; i < tokenLimit; i++) {
+            if (tokens.getType(i) != MvelTokenTypes.IDENTIFIER || !tokens.tokenTextEquals(i, symbolName)) {
                 continue;
             }
 
-            IElementType previousType = previousSignificantType(tokens, i);
-            IElementType nextType = nextSignificantType(tokens, i);
+            IElementType previousType = tokens.getTypeOrNull(tokens.previousSignificant(i));
+            IElementType nextType = tokens.getTypeOrNull(tokens.nextSignificant(i, tokenLimit));
 
             if (nextType == MvelTokenTypes.ASSIGN && previousType != MvelTokenTypes.DOT) {
-                result = token.startOffset;
+                result = tokens.getStart(i);
                 continue;
             }
 
             if (nextType == MvelTokenTypes.COLON && isForeachVariable(tokens, i)) {
-                result = token.startOffset;
+                result = tokens.getStart(i);
             }
         }
         return result;
     }
 
     static Integer findLocalFunctionDeclarationOffset(CharSequence text, String symbolName, int usageOffset) {
-        return findLocalFunctionDeclarationOffset(tokenize(text, usageOffset), symbolName);
+        MvelTokenStream tokens = MvelTokenStream.build(text);
+        return findLocalFunctionDeclarationOffset(tokens, tokens.indexAtOrAfter(usageOffset), symbolName);
     }
 
     static Integer findLocalVariableDeclarationOffset(CharSequence text, String symbolName, int usageOffset) {
-        return findLocalVariableDeclarationOffset(tokenize(text, usageOffset), symbolName);
+        MvelTokenStream tokens = MvelTokenStream.build(text);
+        return findLocalVariableDeclarationOffset(tokens, tokens.indexAtOrAfter(usageOffset), symbolName);
     }
 
-    private static boolean isForeachVariable(List<TokenInfo> tokens, int index) {
+    private static boolean isForeachVariable(MvelTokenStream tokens, int index) {
         int nesting = 0;
         for (int i = index - 1; i >= 0; i--) {
-            IElementType type = tokens.get(i).type;
-            if (type == MvelTokenTypes.WHITESPACE ||
-                    type == MvelTokenTypes.COMMENT ||
-                    type == MvelTokenTypes.LINE_COMMENT) {
+            IElementType type = tokens.getType(i);
+            if (!MvelTokenStream.isSignificant(type)) {
                 continue;
             }
 
@@ -245,7 +316,7 @@ public final class MvelNavigationResolver {
 
             if (type == MvelTokenTypes.LPAREN || type == MvelTokenTypes.LBRACE || type == MvelTokenTypes.LBRACKET) {
                 if (nesting == 0) {
-                    IElementType significantBefore = previousSignificantType(tokens, i);
+                    IElementType significantBefore = tokens.getTypeOrNull(tokens.previousSignificant(i));
                     return significantBefore == MvelTokenTypes.FOR ||
                             significantBefore == MvelTokenTypes.FOREACH ||
                             significantBefore == MvelTokenTypes.TEMPLATE_FOREACH;
@@ -262,68 +333,10 @@ public final class MvelNavigationResolver {
         return false;
     }
 
-    private static IElementType previousSignificantType(List<TokenInfo> tokens, int index) {
-        for (int i = index - 1; i >= 0; i--) {
-            IElementType type = tokens.get(i).type;
-            if (type != MvelTokenTypes.WHITESPACE &&
-                    type != MvelTokenTypes.COMMENT &&
-                    type != MvelTokenTypes.LINE_COMMENT) {
-                return type;
-            }
-        }
-        return null;
-    }
-
-    private static IElementType nextSignificantType(List<TokenInfo> tokens, int index) {
-        for (int i = index + 1; i < tokens.size(); i++) {
-            IElementType type = tokens.get(i).type;
-            if (type != MvelTokenTypes.WHITESPACE &&
-                    type != MvelTokenTypes.COMMENT &&
-                    type != MvelTokenTypes.LINE_COMMENT) {
-                return type;
-            }
-        }
-        return null;
-    }
-
-    private static List<TokenInfo> tokenize(CharSequence text, int endOffsetExclusive) {
-        MvelLexer lexer = new MvelLexer();
-        lexer.start(text, 0, Math.min(endOffsetExclusive, text.length()), 0);
-
-        List<TokenInfo> tokens = new ArrayList<>();
-        while (lexer.getTokenType() != null) {
-            int startOffset = lexer.getTokenStart();
-            int endOffset = lexer.getTokenEnd();
-            tokens.add(new TokenInfo(
-                    lexer.getTokenType(),
-                    text.subSequence(startOffset, endOffset).toString(),
-                    startOffset,
-                    endOffset
-            ));
-            lexer.advance();
-        }
-        return tokens;
-    }
-
     private static void addTargetAtOffset(PsiFile file, int offset, Set<PsiElement> targets) {
         PsiElement target = file.findElementAt(offset);
         if (target != null) {
             targets.add(target);
         }
     }
-
-    private static final class TokenInfo {
-        private final IElementType type;
-        private final String text;
-        private final int startOffset;
-        @SuppressWarnings("unused")
-        private final int endOffset;
-
-        private TokenInfo(IElementType type, String text, int startOffset, int endOffset) {
-            this.type = type;
-            this.text = text;
-            this.startOffset = startOffset;
-            this.endOffset = endOffset;
-        }
-    }
 }
@@ -0,0 +1,40 @@
+package com.mvel.linter.parser;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.Language;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.PsiBuilderFactory;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.tree.IReparseableElementType;
+import com.mvel.linter.MvelLanguage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The '{...}' body of a template tag such as {@code @code{}} or {@code @if{}}, or of a {@code def}/{@code function},
+ * parsed only when its contents are first needed. As long as an edit leaves the body self-contained, the editor
+ * reparses just this body instead of the whole file, and the PSI of every other body is kept.
+ */
+public class MvelBodyElementType extends IReparseableElementType {
+    public MvelBodyElementType(@NotNull String debugName) {
+        super(debugName, MvelLanguage.INSTANCE);
+    }
+
+    @Override
+    protected ASTNode doParseContents(@NotNull ASTNode chameleon, @NotNull PsiElement psi) {
+        PsiBuilder builder = PsiBuilderFactory.getInstance()
+                .createBuilder(psi.getProject(), chameleon, null, getLanguage(), chameleon.getChars());
+        return new MvelParser().parse(this, builder).getFirstChildNode();
+    }
+
+    @Override
+    public boolean isParsable(
+            @Nullable ASTNode parent,
+            @NotNull CharSequence buffer,
+            @NotNull Language fileLanguage,
+            @NotNull Project project
+    ) {
+        return MvelParser.isSelfContainedBody(buffer);
+    }
+}
@@ -3,528 +3,813 @@ package com.mvel.linter.parser;
 import com.intellij.lang.ASTNode;
 import com.intellij.lang.PsiBuilder;
 import com.intellij.lang.PsiParser;
+import com.intellij.psi.TokenType;
 import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import com.mvel.linter.lexer.MvelLexer;
+import com.mvel.linter.lexer.MvelTokenStream;
 import com.mvel.linter.lexer.MvelTokenTypes;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Loose MVEL parser: a file, a {@code {...}} block and every template tag body are sequences of statements up to their
+ * closer, and {@code (...)} and {@code [...]} groups are sequences of expressions.
+ * <p>
+ * Expressions are parsed by precedence climbing into a flat tree: an operand is a primary with its suffixes
+ * ({@code .name}, {@code .?name}, calls, indexes), and a node is built only where an operator, suffix or group
+ * actually occurs, so a plain name or literal stays a bare token instead of a chain of wrappers. Binary operators
+ * bind from {@code ||} (loosest) over {@code &&}, equality, relational and word operators ({@code instanceof},
+ * {@code contains}, ...), additive to multiplicative; {@code ?:} and assignments bind looser than all of them.
+ * <p>
+ * The parser keeps its own stack of {@link Frame}s instead of recursing, so deep nesting costs heap rather than Java
+ * stack, and it needs no depth or iteration caps: every step either consumes a token or finishes a frame, which keeps
+ * the parse linear in the number of tokens. Errors are recovered from without error elements, since template text
+ * is parsed with the same grammar and would report false positives:
+ * <ul>
+ *     <li>a token that cannot start a statement is skipped, so parsing resumes at the next statement;</li>
+ *     <li>a template tag ends every open group, so an unclosed bracket or tag body stops at the next tag;</li>
+ *     <li>a closer ends the groups opened inside the group it belongs to, and is skipped if no group waits for it.</li>
+ * </ul>
+ * A template tag body is parsed without regard to the groups around its tag, so it parses the same inside the file
+ * and on its own. A self-contained body (see {@link #isSelfContainedBody}) is not parsed with the file at all but
+ * collapsed into a lazily parsed {@link MvelTypes#TEMPLATE_BODY}, which the editor also reparses alone on edits.
+ * The '{...}' body of a {@code def} or {@code function} is collapsed the same way into a
+ * {@link MvelTypes#FUNCTION_BODY}, so an edit inside one function leaves the others untouched.
+ */
 public class MvelParser implements PsiParser {
-    // Maximum recursion depth to prevent stack overflow
-    private static final int MAX_RECURSION_DEPTH = 1000;
-    
+    private static final TokenSet TEMPLATE_TAGS = TokenSet.create(
+            MvelTokenTypes.TEMPLATE_CODE,
+            MvelTokenTypes.TEMPLATE_IF,
+            MvelTokenTypes.TEMPLATE_ELSE,
+            MvelTokenTypes.TEMPLATE_FOREACH,
+            MvelTokenTypes.TEMPLATE_INCLUDE,
+            MvelTokenTypes.TEMPLATE_INCLUDE_NAMED,
+            MvelTokenTypes.TEMPLATE_COMMENT,
+            MvelTokenTypes.TEMPLATE_DECLARE,
+            MvelTokenTypes.TEMPLATE_END
+    );
+    private static final TokenSet LITERALS = TokenSet.create(
+            MvelTokenTypes.IDENTIFIER,
+            MvelTokenTypes.STRING_LITERAL,
+            MvelTokenTypes.NUMBER_LITERAL,
+            MvelTokenTypes.BOOLEAN_LITERAL,
+            MvelTokenTypes.NULL_LITERAL,
+            MvelTokenTypes.EMPTY_LITERAL
+    );
+    private static final TokenSet RELATIONAL_OPERATORS = TokenSet.create(
+            MvelTokenTypes.LT,
+            MvelTokenTypes.GT,
+            MvelTokenTypes.LE,
+            MvelTokenTypes.GE
+    );
+    // Operators spelled as words, which the lexer leaves as identifiers.
+    private static final Set<String> WORD_OPERATORS =
+            Set.of("instanceof", "is", "contains", "soundslike", "strsim", "convertable_to");
+
     @NotNull
     @Override
     public ASTNode parse(@NotNull IElementType root, @NotNull PsiBuilder builder) {
         PsiBuilder.Marker rootMarker = builder.mark();
-        
-        int parseCount = 0;
-        int maxParseIterations = 100000; // Safety limit for very long files
-        
-        while (!builder.eof() && parseCount < maxParseIterations) {
-            parseCount++;
-            if (!parseExpression(builder, 0)) {
-                // If we can't parse, advance lexer to prevent infinite loop
-                builder.advanceLexer();
-            }
+        if (root == MvelTypes.TEMPLATE_BODY || root == MvelTypes.FUNCTION_BODY) {
+            new Run(builder).parseBody();
+        } else {
+            new Run(builder).parseFile();
         }
-        
         rootMarker.done(root);
         return builder.getTreeBuilt();
     }
 
-    private boolean parseExpression(PsiBuilder builder, int depth) {
-        // Prevent stack overflow from deep recursion
-        if (depth > MAX_RECURSION_DEPTH) {
-            // Force advance and return false to break recursion
-            if (!builder.eof()) {
-                builder.advanceLexer();
+    /**
+     * Whether {@code text} is a template tag body that parses the same on its own as inside the file: it starts with
+     * '{', ends with the matching '}', nests its brackets properly and holds no template tags or orbs.
+     * An unterminated quote or block comment is rejected as well, since text after the body could still close it.
+     */
+    static boolean isSelfContainedBody(@NotNull CharSequence text) {
+        MvelLexer lexer = new MvelLexer();
+        lexer.start(text, 0, text.length(), lexer.getStartState());
+        BodyScan scan = new BodyScan();
+        for (IElementType token = lexer.getTokenType(); token != null; lexer.advance(), token = lexer.getTokenType()) {
+            if (token == TokenType.BAD_CHARACTER && isQuote(text.charAt(lexer.getTokenStart()))) {
+                return false;
+            }
+            int end = lexer.getTokenEnd();
+            if (token == MvelTokenTypes.DIV && end < text.length() && text.charAt(end) == '*') {
+                return false;
+            }
+            if (MvelTokenStream.isSignificant(token) && !scan.accept(token)) {
+                return false;
             }
-            return false;
-        }
-        
-        if (builder.eof()) {
-            return false;
-        }
-        
-        PsiBuilder.Marker marker = builder.mark();
-        
-        if (parseStatement(builder, depth + 1)) {
-            marker.done(MvelTypes.EXPRESSION);
-            return true;
-        } else {
-            marker.drop();
-            return false;
         }
+        return scan.isClosed();
     }
 
-    private boolean parseStatement(PsiBuilder builder, int depth) {
-        if (depth > MAX_RECURSION_DEPTH) {
-            if (!builder.eof()) {
-                builder.advanceLexer();
-            }
-            return false;
-        }
-        
-        if (builder.eof()) {
-            return false;
-        }
-        
-        IElementType token = builder.getTokenType();
-        
-        if (token == null) {
-            return false;
-        }
-        
-        // Handle template syntax first
-        if (token == MvelTokenTypes.TEMPLATE_CODE ||
-            token == MvelTokenTypes.TEMPLATE_IF ||
-            token == MvelTokenTypes.TEMPLATE_ELSE ||
-            token == MvelTokenTypes.TEMPLATE_FOREACH ||
-            token == MvelTokenTypes.TEMPLATE_INCLUDE ||
-            token == MvelTokenTypes.TEMPLATE_INCLUDE_NAMED ||
-            token == MvelTokenTypes.TEMPLATE_COMMENT ||
-            token == MvelTokenTypes.TEMPLATE_DECLARE ||
-            token == MvelTokenTypes.TEMPLATE_END ||
-            token == MvelTokenTypes.AT) {
-            return parseTemplateBlock(builder, depth + 1);
-        }
-        
-        // Handle different statement types
-        if (token == MvelTokenTypes.IF) {
-            return parseIfStatement(builder, depth + 1);
-        } else if (token == MvelTokenTypes.FOR || token == MvelTokenTypes.FOREACH) {
-            return parseForStatement(builder, depth + 1);
-        } else if (token == MvelTokenTypes.WHILE || token == MvelTokenTypes.DO) {
-            return parseWhileStatement(builder, depth + 1);
-        } else if (token == MvelTokenTypes.RETURN) {
-            return parseReturnStatement(builder, depth + 1);
-        } else if (token == MvelTokenTypes.DEF || token == MvelTokenTypes.FUNCTION) {
-            return parseFunctionDefinition(builder, depth + 1);
-        } else {
-            return parseAssignmentOrExpression(builder, depth + 1);
-        }
+    private static boolean isQuote(char ch) {
+        return ch == '"' || ch == '\'';
     }
 
-    private boolean parseIfStatement(PsiBuilder builder, int depth) {
-        if (builder.getTokenType() != MvelTokenTypes.IF) {
-            return false;
-        }
-        
-        PsiBuilder.Marker marker = builder.mark();
-        builder.advanceLexer(); // consume 'if'
-        
-        if (builder.getTokenType() == MvelTokenTypes.LPAREN) {
-            builder.advanceLexer(); // consume '('
-            parseExpression(builder, depth + 1);
-            if (builder.getTokenType() == MvelTokenTypes.RPAREN) {
-                builder.advanceLexer(); // consume ')'
+    /**
+     * Follows the brackets of a template body token by token, whitespace and comments excluded.
+     */
+    private static final class BodyScan {
+        private final ArrayDeque<IElementType> closers = new ArrayDeque<>();
+        private boolean started;
+
+        /**
+         * Returns false when {@code token} cannot continue a self-contained body.
+         */
+        private boolean accept(IElementType token) {
+            if (token == null || isClosed() || token == MvelTokenTypes.AT || TEMPLATE_TAGS.contains(token)) {
+                return false;
             }
+            if (!started) {
+                started = true;
+                if (token != MvelTokenTypes.LBRACE) {
+                    return false;
+                }
+            }
+            IElementType closer = closerOf(token);
+            if (closer != null) {
+                closers.push(closer);
+                return true;
+            }
+            return closerIndex(token) < 0 || closers.poll() == token;
         }
-        
-        parseExpression(builder, depth + 1);
-        
-        if (builder.getTokenType() == MvelTokenTypes.ELSE) {
-            builder.advanceLexer(); // consume 'else'
-            parseExpression(builder, depth + 1);
-        }
-        
-        marker.done(MvelTypes.IF_STATEMENT);
-        return true;
-    }
 
-    private boolean parseForStatement(PsiBuilder builder, int depth) {
-        IElementType token = builder.getTokenType();
-        if (token != MvelTokenTypes.FOR && token != MvelTokenTypes.FOREACH) {
-            return false;
+        private boolean isClosed() {
+            return started && closers.isEmpty();
         }
-        
-        PsiBuilder.Marker marker = builder.mark();
-        builder.advanceLexer();
-        
-        if (builder.getTokenType() == MvelTokenTypes.LPAREN) {
-            builder.advanceLexer();
-            parseExpression(builder, depth + 1);
-            if (builder.getTokenType() == MvelTokenTypes.RPAREN) {
-                builder.advanceLexer();
-            }
-        }
-        
-        parseExpression(builder, depth + 1);
-        marker.done(MvelTypes.FOR_STATEMENT);
-        return true;
     }
 
-    private boolean parseWhileStatement(PsiBuilder builder, int depth) {
-        IElementType token = builder.getTokenType();
-        if (token != MvelTokenTypes.WHILE && token != MvelTokenTypes.DO) {
-            return false;
-        }
-        
-        PsiBuilder.Marker marker = builder.mark();
-        builder.advanceLexer();
-        
-        if (builder.getTokenType() == MvelTokenTypes.LPAREN) {
-            builder.advanceLexer();
-            parseExpression(builder, depth + 1);
-            if (builder.getTokenType() == MvelTokenTypes.RPAREN) {
-                builder.advanceLexer();
-            }
-        }
-        
-        parseExpression(builder, depth + 1);
-        marker.done(MvelTypes.WHILE_STATEMENT);
-        return true;
+    /**
+     * Where a frame resumes the next time it is on top of the stack.
+     */
+    private enum Step {
+        /** Dispatches on the first token of a statement; returns whether a statement was parsed. */
+        STATEMENT,
+        /** {@code import} followed by a qualified name, possibly ending in {@code .*}. */
+        IMPORT,
+        /** {@code if}, {@code for}, {@code foreach}, {@code while} and {@code do}: keyword, optional header, body. */
+        CONDITIONAL,
+        HEADER_END,
+        BODY,
+        ELSE,
+        /** {@code return} and {@code def}/{@code function}: keyword, optional signature, body or value. */
+        PREFIXED,
+        /** '{' statements '}' in statement position. */
+        BLOCK,
+        /** Expression, possibly the target of a plain or compound assignment. */
+        ASSIGNMENT_OR_EXPRESSION,
+        TARGET_END,
+        /** Binary expression, possibly the condition of {@code ? :}. */
+        TERNARY,
+        CONDITION_END,
+        THEN_END,
+        /** Operands and operators binding at least as tight as the frame's precedence. */
+        BINARY,
+        OPERATOR,
+        OPERAND_END,
+        /** Prefix {@code !}, {@code -}, {@code +}, {@code ++} and {@code --}. */
+        UNARY,
+        /** Primary followed by member accesses, calls, indexes and postfix {@code ++}/{@code --}. */
+        POSTFIX,
+        PRIMARY_END,
+        SUFFIX,
+        SUFFIX_CLOSE,
+        /** Literal, name, {@code new}, parenthesized expression, projection or inline collection. */
+        PRIMARY,
+        FIRST_ITEM_END,
+        PROJECTION_SOURCE_END,
+        /** Items up to the frame's closer, a template tag, or a closer an enclosing group waits for. */
+        GROUP,
+        ITEM_END,
+        TEMPLATE_BLOCK,
+        /** Consumes the frame's closer if it is there and finishes the frame's element. */
+        CLOSE,
+        DONE
     }
 
-    private boolean parseReturnStatement(PsiBuilder builder, int depth) {
-        if (builder.getTokenType() != MvelTokenTypes.RETURN) {
-            return false;
+    private static final class Frame {
+        private Step step;
+        private PsiBuilder.Marker marker;
+        private IElementType elementType;
+        private IElementType closer;
+        // What a group holds: statements in braces, expressions in parentheses and brackets.
+        private Step itemStep;
+        // Loosest operator precedence a BINARY frame may consume.
+        private int precedence;
+        // Open group counts of the enclosing groups while a template body is parsed inline.
+        private int[] outerGroups;
+
+        private Frame(Step step) {
+            this.step = step;
         }
-        
-        PsiBuilder.Marker marker = builder.mark();
-        builder.advanceLexer();
-        parseExpression(builder, depth + 1);
-        marker.done(MvelTypes.RETURN_STATEMENT);
-        return true;
     }
 
-    private boolean parseFunctionDefinition(PsiBuilder builder, int depth) {
-        IElementType token = builder.getTokenType();
-        if (token != MvelTokenTypes.DEF && token != MvelTokenTypes.FUNCTION) {
-            return false;
-        }
-        
-        PsiBuilder.Marker marker = builder.mark();
-        builder.advanceLexer();
-        
-        if (builder.getTokenType() == MvelTokenTypes.IDENTIFIER) {
-            builder.advanceLexer();
+    private static final class Run {
+        private final PsiBuilder builder;
+        private final ArrayDeque<Frame> stack = new ArrayDeque<>();
+        // Number of open groups waiting for ')', ']' and '}' respectively.
+        private final int[] openGroups = new int[3];
+        // Result of the frame that finished last.
+        private boolean result;
+        // Offsets of the openers the last failed body scan saw closed, and the offset where that scan stopped.
+        private final Set<Integer> closedOpeners = new HashSet<>();
+        private int failedScanEnd = -1;
+
+        private Run(PsiBuilder builder) {
+            this.builder = builder;
         }
-        
-        if (builder.getTokenType() == MvelTokenTypes.LPAREN) {
-            builder.advanceLexer();
-            parseParameterList(builder);
-            if (builder.getTokenType() == MvelTokenTypes.RPAREN) {
-                builder.advanceLexer();
+
+        private void parseFile() {
+            while (!builder.eof()) {
+                call(Step.STATEMENT);
+                if (!drain()) {
+                    builder.advanceLexer();
+                }
             }
         }
-        
-        parseExpression(builder, depth + 1);
-        marker.done(MvelTypes.FUNCTION_DEFINITION);
-        return true;
-    }
 
-    private void parseParameterList(PsiBuilder builder) {
-        int iterations = 0;
-        while (!builder.eof() && builder.getTokenType() == MvelTokenTypes.IDENTIFIER && iterations < 1000) {
-            iterations++;
-            builder.advanceLexer();
-            if (builder.getTokenType() == MvelTokenTypes.COMMA) {
+        private void parseBody() {
+            consume(MvelTokenTypes.LBRACE);
+            callGroup(MvelTokenTypes.RBRACE, Step.STATEMENT);
+            drain();
+            consume(MvelTokenTypes.RBRACE);
+            while (!builder.eof()) {
                 builder.advanceLexer();
-            } else {
-                break;
             }
         }
-    }
 
-    private boolean parseAssignmentOrExpression(PsiBuilder builder, int depth) {
-        if (depth > MAX_RECURSION_DEPTH) {
-            if (!builder.eof()) {
-                builder.advanceLexer();
+        private boolean drain() {
+            while (!stack.isEmpty()) {
+                resume(stack.peek());
             }
-            return false;
-        }
-        
-        if (builder.eof()) {
-            return false;
+            return result;
         }
-        
-        PsiBuilder.Marker marker = builder.mark();
-        boolean parsed = parsePrimaryExpression(builder, depth + 1);
-        
-        if (parsed) {
-            // Check for assignment
-            if (builder.getTokenType() == MvelTokenTypes.ASSIGN) {
-                builder.advanceLexer();
-                parseExpression(builder, depth + 1);
-                marker.done(MvelTypes.ASSIGNMENT);
-            } else {
-                // Check for binary operators
-                int operatorCount = 0;
-                while (!builder.eof() && isBinaryOperator(builder.getTokenType()) && operatorCount < 100) {
-                    operatorCount++; // Prevent infinite loop
+
+        private void resume(Frame frame) {
+            IElementType token = builder.getTokenType();
+            switch (frame.step) {
+                case STATEMENT -> {
+                    if (token == null) {
+                        finish(false);
+                    } else {
+                        frame.step = isImport(token) ? Step.IMPORT : statementStep(token);
+                    }
+                }
+                case IMPORT -> {
+                    frame.marker = builder.mark();
+                    frame.elementType = MvelTypes.IMPORT;
+                    frame.step = Step.DONE;
                     builder.advanceLexer();
-                    if (!parsePrimaryExpression(builder, depth + 1)) {
-                        break;
+                    if (builder.getTokenType() == MvelTokenTypes.IDENTIFIER && "static".equals(builder.getTokenText()) &&
+                            builder.lookAhead(1) == MvelTokenTypes.IDENTIFIER) {
+                        builder.advanceLexer();
+                    }
+                    consume(MvelTokenTypes.IDENTIFIER);
+                    while (builder.getTokenType() == MvelTokenTypes.DOT) {
+                        builder.advanceLexer();
+                        if (!consume(MvelTokenTypes.IDENTIFIER)) {
+                            consume(MvelTokenTypes.MUL);
+                            break;
+                        }
                     }
                 }
-                marker.done(MvelTypes.EXPRESSION);
-            }
-        } else {
-            marker.drop();
-        }
-        
-        return parsed;
-    }
-
-    private boolean parsePrimaryExpression(PsiBuilder builder, int depth) {
-        if (depth > MAX_RECURSION_DEPTH) {
-            if (!builder.eof()) {
-                builder.advanceLexer();
-            }
-            return false;
-        }
-        IElementType token = builder.getTokenType();
-        
-        if (token == null) {
-            return false;
-        }
-        
-        if (token == MvelTokenTypes.IDENTIFIER ||
-            token == MvelTokenTypes.STRING_LITERAL ||
-            token == MvelTokenTypes.NUMBER_LITERAL ||
-            token == MvelTokenTypes.BOOLEAN_LITERAL ||
-            token == MvelTokenTypes.NULL_LITERAL ||
-            token == MvelTokenTypes.EMPTY_LITERAL) {
-            builder.advanceLexer();
-            
-            // Handle property access
-            int dotCount = 0;
-            while (!builder.eof() && builder.getTokenType() == MvelTokenTypes.DOT && dotCount < 100) {
-                dotCount++; // Prevent infinite loop
-                builder.advanceLexer();
-                if (builder.getTokenType() == MvelTokenTypes.IDENTIFIER) {
+                case CONDITIONAL -> {
+                    frame.marker = builder.mark();
+                    frame.elementType = conditionalType(token);
                     builder.advanceLexer();
-                } else {
-                    break;
+                    if (builder.getTokenType() == MvelTokenTypes.LPAREN) {
+                        builder.advanceLexer();
+                        frame.step = Step.HEADER_END;
+                        callGroup(MvelTokenTypes.RPAREN, Step.ASSIGNMENT_OR_EXPRESSION);
+                    } else {
+                        frame.step = Step.BODY;
+                    }
                 }
-            }
-            
-            // Handle method calls
-            if (builder.getTokenType() == MvelTokenTypes.LPAREN) {
-                builder.advanceLexer();
-                parseArgumentList(builder, depth + 1);
-                if (builder.getTokenType() == MvelTokenTypes.RPAREN) {
+                case HEADER_END -> {
+                    consume(MvelTokenTypes.RPAREN);
+                    frame.step = Step.BODY;
+                }
+                case BODY -> {
+                    frame.step = frame.elementType == MvelTypes.IF_STATEMENT ? Step.ELSE : Step.DONE;
+                    call(Step.STATEMENT);
+                }
+                case ELSE -> {
+                    frame.step = Step.DONE;
+                    if (token == MvelTokenTypes.ELSE) {
+                        builder.advanceLexer();
+                        call(Step.STATEMENT);
+                    }
+                }
+                case PREFIXED -> {
+                    frame.marker = builder.mark();
                     builder.advanceLexer();
+                    frame.step = Step.DONE;
+                    if (token == MvelTokenTypes.RETURN) {
+                        frame.elementType = MvelTypes.RETURN_STATEMENT;
+                        call(Step.ASSIGNMENT_OR_EXPRESSION);
+                        return;
+                    }
+                    frame.elementType = MvelTypes.FUNCTION_DEFINITION;
+                    parseSignature();
+                    if (builder.getTokenType() == MvelTokenTypes.LBRACE &&
+                            collapseSelfContainedBody(MvelTypes.FUNCTION_BODY)) {
+                        return;
+                    }
+                    call(Step.STATEMENT);
+                }
+                case BLOCK -> openGroup(frame, MvelTypes.BLOCK_STATEMENT, Step.STATEMENT);
+                case ASSIGNMENT_OR_EXPRESSION -> {
+                    frame.marker = builder.mark();
+                    frame.step = Step.TARGET_END;
+                    call(Step.TERNARY);
+                }
+                case TARGET_END -> {
+                    boolean compound = isCompoundAssignment(token);
+                    if (result && (token == MvelTokenTypes.ASSIGN || compound)) {
+                        if (compound) {
+                            builder.advanceLexer();
+                        }
+                        builder.advanceLexer();
+                        frame.elementType = MvelTypes.ASSIGNMENT;
+                        frame.step = Step.DONE;
+                        call(Step.ASSIGNMENT_OR_EXPRESSION);
+                    } else {
+                        frame.marker.drop();
+                        finish(result);
+                    }
+                }
+                case TERNARY -> {
+                    frame.marker = builder.mark();
+                    frame.step = Step.CONDITION_END;
+                    callBinary(0);
+                }
+                case CONDITION_END -> {
+                    if (result && token == MvelTokenTypes.QUESTION) {
+                        builder.advanceLexer();
+                        frame.elementType = MvelTypes.TERNARY_EXPRESSION;
+                        frame.step = Step.THEN_END;
+                        call(Step.TERNARY);
+                    } else {
+                        frame.marker.drop();
+                        finish(result);
+                    }
+                }
+                case THEN_END -> {
+                    frame.step = Step.DONE;
+                    if (consume(MvelTokenTypes.COLON)) {
+                        call(Step.TERNARY);
+                    }
+                }
+                case BINARY -> {
+                    frame.marker = builder.mark();
+                    frame.step = Step.OPERATOR;
+                    call(Step.UNARY);
+                }
+                case OPERATOR -> {
+                    int precedence = binaryPrecedence(token);
+                    if (!result || precedence < frame.precedence) {
+                        frame.marker.drop();
+                        finish(result);
+                        return;
+                    }
+                    builder.advanceLexer();
+                    frame.step = Step.OPERAND_END;
+                    // Operators of one precedence are left-associative, so the right operand binds tighter.
+                    callBinary(precedence + 1);
+                }
+                case OPERAND_END -> {
+                    wrap(frame, MvelTypes.BINARY_EXPRESSION);
+                    if (result) {
+                        frame.step = Step.OPERATOR;
+                    } else {
+                        frame.marker.drop();
+                        finish(true);
+                    }
+                }
+                case UNARY -> {
+                    if (token == MvelTokenTypes.NOT || token == MvelTokenTypes.MINUS || token == MvelTokenTypes.PLUS) {
+                        frame.marker = builder.mark();
+                        frame.elementType = MvelTypes.UNARY_EXPRESSION;
+                        frame.step = Step.DONE;
+                        if (isIncrement(token)) {
+                            builder.advanceLexer();
+                        }
+                        builder.advanceLexer();
+                        call(Step.UNARY);
+                    } else {
+                        frame.step = Step.POSTFIX;
+                    }
+                }
+                case POSTFIX -> {
+                    frame.marker = builder.mark();
+                    frame.step = Step.PRIMARY_END;
+                    call(Step.PRIMARY);
+                }
+                case PRIMARY_END -> {
+                    if (result) {
+                        frame.step = Step.SUFFIX;
+                    } else {
+                        frame.marker.drop();
+                        finish(false);
+                    }
+                }
+                case SUFFIX -> resumeSuffix(frame, token);
+                case SUFFIX_CLOSE -> {
+                    consume(frame.closer);
+                    wrap(frame, frame.elementType);
+                    frame.step = Step.SUFFIX;
+                }
+                case PRIMARY -> resumePrimary(frame, token);
+                case FIRST_ITEM_END -> {
+                    if (result && isContextualKeyword(token, "in")) {
+                        builder.advanceLexer();
+                        frame.elementType = MvelTypes.PROJECTION;
+                        frame.step = Step.PROJECTION_SOURCE_END;
+                        call(Step.ASSIGNMENT_OR_EXPRESSION);
+                    } else {
+                        frame.elementType = MvelTypes.PARENTHESIZED_EXPRESSION;
+                        frame.step = Step.CLOSE;
+                        pushGroup(frame.closer, Step.ASSIGNMENT_OR_EXPRESSION);
+                    }
+                }
+                case PROJECTION_SOURCE_END -> {
+                    frame.step = Step.CLOSE;
+                    pushGroup(frame.closer, Step.ASSIGNMENT_OR_EXPRESSION);
+                    if (token == MvelTokenTypes.IF) {
+                        builder.advanceLexer();
+                        call(Step.ASSIGNMENT_OR_EXPRESSION);
+                    }
+                }
+                case GROUP -> resumeGroup(frame, token);
+                case ITEM_END -> {
+                    if (!result) {
+                        builder.advanceLexer();
+                    }
+                    frame.step = Step.GROUP;
+                }
+                case TEMPLATE_BLOCK -> {
+                    frame.marker = builder.mark();
+                    frame.elementType = templateBlockType(token);
+                    frame.step = Step.DONE;
+                    builder.advanceLexer();
+                    if (builder.getTokenType() != MvelTokenTypes.LBRACE) {
+                        return;
+                    }
+                    if (token == MvelTokenTypes.TEMPLATE_COMMENT || token == MvelTokenTypes.TEMPLATE_END) {
+                        // The lexer emits a comment body as one comment token, which the builder skips.
+                        builder.advanceLexer();
+                        consume(MvelTokenTypes.RBRACE);
+                        return;
+                    }
+
+                    if (collapseSelfContainedBody(MvelTypes.TEMPLATE_BODY)) {
+                        return;
+                    }
+                    builder.advanceLexer();
+                    frame.outerGroups = openGroups.clone();
+                    Arrays.fill(openGroups, 0);
+                    frame.closer = MvelTokenTypes.RBRACE;
+                    frame.step = Step.CLOSE;
+                    callGroup(MvelTokenTypes.RBRACE, Step.STATEMENT);
+                }
+                case CLOSE -> {
+                    consume(frame.closer);
+                    if (frame.outerGroups != null) {
+                        System.arraycopy(frame.outerGroups, 0, openGroups, 0, openGroups.length);
+                    }
+                    frame.step = Step.DONE;
+                }
+                case DONE -> {
+                    if (frame.marker != null) {
+                        frame.marker.done(frame.elementType);
+                    }
+                    finish(true);
                 }
             }
-            
-            return true;
-        } else if (token == MvelTokenTypes.LPAREN) {
-            builder.advanceLexer();
-            parseExpression(builder, depth + 1);
-            if (builder.getTokenType() == MvelTokenTypes.RPAREN) {
-                builder.advanceLexer();
-            }
-            return true;
-        } else if (token == MvelTokenTypes.LBRACKET) {
-            // Inline list or map
-            builder.advanceLexer();
-            parseListOrMap(builder, depth + 1);
-            if (builder.getTokenType() == MvelTokenTypes.RBRACKET) {
-                builder.advanceLexer();
-            }
-            return true;
-        } else if (token == MvelTokenTypes.LBRACE) {
-            // Inline array
-            builder.advanceLexer();
-            parseArray(builder, depth + 1);
-            if (builder.getTokenType() == MvelTokenTypes.RBRACE) {
-                builder.advanceLexer();
-            }
-            return true;
         }
-        
-        return false;
-    }
 
-    private void parseArgumentList(PsiBuilder builder, int depth) {
-        if (depth > MAX_RECURSION_DEPTH) {
-            return;
-        }
-        
-        int iterations = 0;
-        while (!builder.eof() && builder.getTokenType() != MvelTokenTypes.RPAREN && iterations < 1000) {
-            iterations++;
-            IElementType tokenBefore = builder.getTokenType();
-            parseExpression(builder, depth + 1);
-            // If parseExpression didn't advance, force advance to prevent infinite loop
-            if (tokenBefore == builder.getTokenType() && !builder.eof()) {
+        private void resumePrimary(Frame frame, IElementType token) {
+            if (LITERALS.contains(token)) {
                 builder.advanceLexer();
-            }
-            if (builder.getTokenType() == MvelTokenTypes.COMMA) {
+                finish(true);
+            } else if (token == MvelTokenTypes.NEW) {
+                frame.marker = builder.mark();
+                frame.elementType = MvelTypes.NEW_EXPRESSION;
+                frame.step = Step.DONE;
+                builder.advanceLexer();
+                consume(MvelTokenTypes.IDENTIFIER);
+                while (builder.getTokenType() == MvelTokenTypes.DOT) {
+                    builder.advanceLexer();
+                    if (!consume(MvelTokenTypes.IDENTIFIER)) {
+                        break;
+                    }
+                }
+                IElementType next = builder.getTokenType();
+                if (next == MvelTokenTypes.LPAREN || next == MvelTokenTypes.LBRACKET) {
+                    openGroup(frame, MvelTypes.NEW_EXPRESSION, Step.ASSIGNMENT_OR_EXPRESSION);
+                }
+            } else if (token == MvelTokenTypes.LPAREN) {
+                // Parenthesized expression or projection, told apart by an 'in' after the first item.
+                frame.marker = builder.mark();
+                frame.closer = MvelTokenTypes.RPAREN;
+                frame.step = Step.FIRST_ITEM_END;
                 builder.advanceLexer();
+                openGroups[closerIndex(frame.closer)]++;
+                call(Step.ASSIGNMENT_OR_EXPRESSION);
+            } else if (token == MvelTokenTypes.LBRACKET || token == MvelTokenTypes.LBRACE) {
+                openGroup(frame, MvelTypes.INLINE_COLLECTION, Step.ASSIGNMENT_OR_EXPRESSION);
             } else {
-                break;
+                finish(false);
             }
         }
-    }
 
-    private void parseListOrMap(PsiBuilder builder, int depth) {
-        if (depth > MAX_RECURSION_DEPTH) {
-            return;
-        }
-        
-        int iterations = 0;
-        while (!builder.eof() && builder.getTokenType() != MvelTokenTypes.RBRACKET && iterations < 1000) {
-            iterations++;
-            IElementType tokenBefore = builder.getTokenType();
-            parseExpression(builder, depth + 1);
-            // If parseExpression didn't advance, force advance to prevent infinite loop
-            if (tokenBefore == builder.getTokenType() && !builder.eof()) {
+        private void resumeSuffix(Frame frame, IElementType token) {
+            if (token == MvelTokenTypes.DOT) {
                 builder.advanceLexer();
-            }
-            if (builder.getTokenType() == MvelTokenTypes.COLON) {
+                IElementType access = consume(MvelTokenTypes.QUESTION)
+                        ? MvelTypes.NULL_SAFE_REFERENCE_EXPRESSION
+                        : MvelTypes.REFERENCE_EXPRESSION;
+                consume(MvelTokenTypes.IDENTIFIER);
+                wrap(frame, access);
+            } else if (token == MvelTokenTypes.LPAREN || token == MvelTokenTypes.LBRACKET) {
+                builder.advanceLexer();
+                frame.elementType = token == MvelTokenTypes.LPAREN
+                        ? MvelTypes.CALL_EXPRESSION
+                        : MvelTypes.INDEX_EXPRESSION;
+                frame.closer = closerOf(token);
+                frame.step = Step.SUFFIX_CLOSE;
+                callGroup(frame.closer, Step.ASSIGNMENT_OR_EXPRESSION);
+            } else if (isIncrement(token)) {
                 builder.advanceLexer();
-                parseExpression(builder, depth + 1);
-            }
-            if (builder.getTokenType() == MvelTokenTypes.COMMA) {
                 builder.advanceLexer();
+                wrap(frame, MvelTypes.UNARY_EXPRESSION);
             } else {
-                break;
+                frame.marker.drop();
+                finish(true);
             }
         }
-    }
 
-    private void parseArray(PsiBuilder builder, int depth) {
-        if (depth > MAX_RECURSION_DEPTH) {
-            return;
-        }
-        
-        int iterations = 0;
-        while (!builder.eof() && builder.getTokenType() != MvelTokenTypes.RBRACE && iterations < 1000) {
-            iterations++;
-            IElementType tokenBefore = builder.getTokenType();
-            parseExpression(builder, depth + 1);
-            // If parseExpression didn't advance, force advance to prevent infinite loop
-            if (tokenBefore == builder.getTokenType() && !builder.eof()) {
-                builder.advanceLexer();
+        private void resumeGroup(Frame frame, IElementType token) {
+            if (token == null || token == frame.closer || TEMPLATE_TAGS.contains(token)) {
+                endGroup(frame);
+                return;
             }
-            if (builder.getTokenType() == MvelTokenTypes.COMMA) {
-                builder.advanceLexer();
-            } else {
-                break;
+            int closerIndex = closerIndex(token);
+            if (closerIndex >= 0) {
+                if (openGroups[closerIndex] > 0) {
+                    endGroup(frame);
+                } else {
+                    builder.advanceLexer();
+                }
+                return;
             }
+            frame.step = Step.ITEM_END;
+            call(frame.itemStep);
         }
-    }
 
-    private boolean parseTemplateBlock(PsiBuilder builder, int depth) {
-        if (depth > MAX_RECURSION_DEPTH) {
-            if (!builder.eof()) {
-                builder.advanceLexer();
-            }
-            return false;
+        /**
+         * Starts {@code elementType} at the opener under the builder and parses {@code itemStep}s up to its closer.
+         */
+        private void openGroup(Frame frame, IElementType elementType, Step itemStep) {
+            frame.marker = frame.marker != null ? frame.marker : builder.mark();
+            frame.elementType = elementType;
+            frame.closer = closerOf(builder.getTokenType());
+            frame.step = Step.CLOSE;
+            builder.advanceLexer();
+            callGroup(frame.closer, itemStep);
         }
-        
-        IElementType token = builder.getTokenType();
-        if (token == null) {
+
+        /**
+         * Completes the element the frame's marker has grown so far as {@code type}, and keeps a marker open at the
+         * same start so that a following operator or suffix can wrap it again.
+         */
+        private void wrap(Frame frame, IElementType type) {
+            PsiBuilder.Marker outer = frame.marker.precede();
+            frame.marker.done(type);
+            frame.marker = outer;
+        }
+
+        /**
+         * Collapses the self-contained body at the current '{' into {@code bodyType} and returns true, or leaves the
+         * builder where it was and returns false.
+         */
+        private boolean collapseSelfContainedBody(IElementType bodyType) {
+            PsiBuilder.Marker body = builder.mark();
+            if (skipSelfContainedBody()) {
+                body.collapse(bodyType);
+                return true;
+            }
+            body.rollbackTo();
             return false;
         }
-        
-        PsiBuilder.Marker marker = builder.mark();
-        
-        // Consume the template token (`@code`, `@if`, etc.) and then the normal `{`
-        // so brace-aware editor features operate on real brace tokens.
-        if (token == MvelTokenTypes.AT) {
-            builder.advanceLexer();
-            // Check if it's @{...} expression orb
-            if (builder.getTokenType() == MvelTokenTypes.LBRACE) {
-                builder.advanceLexer();
-                // Parse content until matching }
-                parseTemplateContent(builder, depth + 1);
-                if (builder.getTokenType() == MvelTokenTypes.RBRACE) {
-                    builder.advanceLexer();
-                }
+
+        /**
+         * Consumes a self-contained body and returns true, or returns false somewhere inside the body.
+         * <p>
+         * A body nested in the range of the last failed scan is decided without scanning: unless that scan saw it
+         * closed, it fails at the same token, since its open brackets are the top of the failed scan's. This keeps
+         * nested {@code def} bodies linear; the scan of a template body already stops at the first tag or orb.
+         */
+        private boolean skipSelfContainedBody() {
+            int start = builder.getCurrentOffset();
+            if (start < failedScanEnd && !closedOpeners.contains(start)) {
+                return false;
             }
-        } else if (token == MvelTokenTypes.TEMPLATE_CODE ||
-                   token == MvelTokenTypes.TEMPLATE_IF ||
-                   token == MvelTokenTypes.TEMPLATE_ELSE ||
-                   token == MvelTokenTypes.TEMPLATE_FOREACH ||
-                   token == MvelTokenTypes.TEMPLATE_INCLUDE ||
-                   token == MvelTokenTypes.TEMPLATE_INCLUDE_NAMED ||
-                   token == MvelTokenTypes.TEMPLATE_DECLARE) {
-            builder.advanceLexer(); // Consume template keyword
-            if (builder.getTokenType() == MvelTokenTypes.LBRACE) {
-                builder.advanceLexer();
-                parseTemplateContent(builder, depth + 1);
-                if (builder.getTokenType() == MvelTokenTypes.RBRACE) {
-                    builder.advanceLexer();
-                }
+            boolean recording = start >= failedScanEnd;
+            if (recording) {
+                closedOpeners.clear();
             }
-        } else if (token == MvelTokenTypes.TEMPLATE_COMMENT) {
-            builder.advanceLexer();
-            if (builder.getTokenType() == MvelTokenTypes.LBRACE) {
-                builder.advanceLexer();
-                parseTemplateContent(builder, depth + 1);
-                if (builder.getTokenType() == MvelTokenTypes.RBRACE) {
-                    builder.advanceLexer();
+            ArrayDeque<Integer> openers = new ArrayDeque<>();
+            BodyScan scan = new BodyScan();
+            for (IElementType token = builder.getTokenType(); scan.accept(token); token = builder.getTokenType()) {
+                if (recording && closerOf(token) != null) {
+                    openers.push(builder.getCurrentOffset());
+                } else if (recording && closerIndex(token) >= 0) {
+                    closedOpeners.add(openers.pop());
                 }
-            }
-        } else if (token == MvelTokenTypes.TEMPLATE_END) {
-            builder.advanceLexer();
-            if (builder.getTokenType() == MvelTokenTypes.LBRACE) {
                 builder.advanceLexer();
-                if (builder.getTokenType() == MvelTokenTypes.RBRACE) {
-                    builder.advanceLexer();
+                if (scan.isClosed()) {
+                    return true;
                 }
             }
-        } else {
-            marker.drop();
+            if (recording) {
+                failedScanEnd = builder.getCurrentOffset();
+            }
             return false;
         }
-        
-        marker.done(MvelTypes.TEMPLATE_BLOCK);
-        return true;
-    }
-    
-    private void parseTemplateContent(PsiBuilder builder, int depth) {
-        if (depth > MAX_RECURSION_DEPTH) {
-            return;
-        }
-        
-        int braceDepth = 1; // We're already inside one brace
-        int iterations = 0;
-        
-        while (!builder.eof() && braceDepth > 0 && iterations < 10000) {
-            iterations++;
-            IElementType token = builder.getTokenType();
-            
-            if (token == MvelTokenTypes.LBRACE) {
-                braceDepth++;
-                builder.advanceLexer();
-            } else if (token == MvelTokenTypes.RBRACE) {
-                braceDepth--;
-                if (braceDepth > 0) {
-                    builder.advanceLexer();
-                } else {
-                    // This is the closing brace for our template block
+
+        /**
+         * Precedence of the binary operator under the builder, from 1 for {@code ||} to 6 for {@code *}, or -1.
+         */
+        private int binaryPrecedence(IElementType token) {
+            if (token == MvelTokenTypes.OR) {
+                return 1;
+            } else if (token == MvelTokenTypes.AND) {
+                return 2;
+            } else if (token == MvelTokenTypes.EQ || token == MvelTokenTypes.NE) {
+                return 3;
+            } else if (RELATIONAL_OPERATORS.contains(token) ||
+                    token == MvelTokenTypes.IDENTIFIER && WORD_OPERATORS.contains(builder.getTokenText())) {
+                return 4;
+            } else if (isCompoundAssignment(token) || isIncrement(token)) {
+                return -1;
+            } else if (token == MvelTokenTypes.PLUS || token == MvelTokenTypes.MINUS) {
+                return 5;
+            } else if (token == MvelTokenTypes.MUL || token == MvelTokenTypes.DIV || token == MvelTokenTypes.MOD) {
+                return 6;
+            }
+            return -1;
+        }
+
+        // '+=' and the like, which the lexer splits into the operator and '='.
+        private boolean isCompoundAssignment(IElementType token) {
+            return (token == MvelTokenTypes.PLUS || token == MvelTokenTypes.MINUS || token == MvelTokenTypes.MUL ||
+                    token == MvelTokenTypes.DIV || token == MvelTokenTypes.MOD) &&
+                    builder.rawLookup(1) == MvelTokenTypes.ASSIGN;
+        }
+
+        // '++' or '--', which the lexer splits into two operators.
+        private boolean isIncrement(IElementType token) {
+            return (token == MvelTokenTypes.PLUS || token == MvelTokenTypes.MINUS) && builder.rawLookup(1) == token;
+        }
+
+        private boolean isContextualKeyword(IElementType token, String keyword) {
+            return token == MvelTokenTypes.IDENTIFIER && keyword.equals(builder.getTokenText());
+        }
+
+        private boolean isImport(IElementType token) {
+            return token == MvelTokenTypes.IDENTIFIER &&
+                    "import".equals(builder.getTokenText()) &&
+                    builder.lookAhead(1) == MvelTokenTypes.IDENTIFIER;
+        }
+
+        private void parseSignature() {
+            consume(MvelTokenTypes.IDENTIFIER);
+            if (!consume(MvelTokenTypes.LPAREN)) {
+                return;
+            }
+            while (consume(MvelTokenTypes.IDENTIFIER)) {
+                if (!consume(MvelTokenTypes.COMMA)) {
                     break;
                 }
-            } else {
-                // Parse as expression or advance
-                IElementType tokenBefore = builder.getTokenType();
-                if (!parseExpression(builder, depth + 1)) {
-                    // If we can't parse, just advance to prevent infinite loop
-                    if (tokenBefore == builder.getTokenType() && !builder.eof()) {
-                        builder.advanceLexer();
-                    }
-                }
             }
+            consume(MvelTokenTypes.RPAREN);
+        }
+
+        private boolean consume(IElementType expected) {
+            if (builder.getTokenType() != expected) {
+                return false;
+            }
+            builder.advanceLexer();
+            return true;
+        }
+
+        private void call(Step step) {
+            stack.push(new Frame(step));
+        }
+
+        private void callBinary(int precedence) {
+            Frame binary = new Frame(Step.BINARY);
+            binary.precedence = precedence;
+            stack.push(binary);
+        }
+
+        private void callGroup(IElementType closer, Step itemStep) {
+            openGroups[closerIndex(closer)]++;
+            pushGroup(closer, itemStep);
+        }
+
+        // A group whose opener is already counted in openGroups.
+        private void pushGroup(IElementType closer, Step itemStep) {
+            Frame group = new Frame(Step.GROUP);
+            group.closer = closer;
+            group.itemStep = itemStep;
+            stack.push(group);
+        }
+
+        private void endGroup(Frame group) {
+            openGroups[closerIndex(group.closer)]--;
+            finish(false);
+        }
+
+        private void finish(boolean parsed) {
+            stack.pop();
+            result = parsed;
+        }
+    }
+
+    // Tags with PSI of their own get their own element type, so that an edit changing the tag replaces the element.
+    private static IElementType templateBlockType(IElementType token) {
+        if (token == MvelTokenTypes.AT) {
+            return MvelTypes.ORB;
+        }
+        if (token == MvelTokenTypes.TEMPLATE_CODE) {
+            return MvelTypes.CODE_BLOCK;
+        }
+        if (token == MvelTokenTypes.TEMPLATE_IF) {
+            return MvelTypes.IF_TAG;
         }
+        if (token == MvelTokenTypes.TEMPLATE_FOREACH) {
+            return MvelTypes.FOREACH_TAG;
+        }
+        if (token == MvelTokenTypes.TEMPLATE_DECLARE) {
+            return MvelTypes.DECLARE_BLOCK;
+        }
+        return MvelTypes.TEMPLATE_BLOCK;
+    }
+
+    private static Step statementStep(IElementType token) {
+        if (token == MvelTokenTypes.AT || TEMPLATE_TAGS.contains(token)) {
+            return Step.TEMPLATE_BLOCK;
+        }
+        if (conditionalType(token) != null) {
+            return Step.CONDITIONAL;
+        }
+        if (token == MvelTokenTypes.RETURN || token == MvelTokenTypes.DEF || token == MvelTokenTypes.FUNCTION) {
+            return Step.PREFIXED;
+        }
+        if (token == MvelTokenTypes.LBRACE) {
+            return Step.BLOCK;
+        }
+        return Step.ASSIGNMENT_OR_EXPRESSION;
+    }
+
+    private static IElementType conditionalType(IElementType token) {
+        if (token == MvelTokenTypes.IF) {
+            return MvelTypes.IF_STATEMENT;
+        } else if (token == MvelTokenTypes.FOR || token == MvelTokenTypes.FOREACH) {
+            return MvelTypes.FOR_STATEMENT;
+        } else if (token == MvelTokenTypes.WHILE || token == MvelTokenTypes.DO) {
+            return MvelTypes.WHILE_STATEMENT;
+        }
+        return null;
+    }
+
+    private static IElementType closerOf(IElementType opener) {
+        if (opener == MvelTokenTypes.LPAREN) {
+            return MvelTokenTypes.RPAREN;
+        } else if (opener == MvelTokenTypes.LBRACKET) {
+            return MvelTokenTypes.RBRACKET;
+        } else if (opener == MvelTokenTypes.LBRACE) {
+            return MvelTokenTypes.RBRACE;
+        }
+        return null;
     }
 
-    private boolean isBinaryOperator(IElementType token) {
-        return token == MvelTokenTypes.PLUS ||
-               token == MvelTokenTypes.MINUS ||
-               token == MvelTokenTypes.MUL ||
-               token == MvelTokenTypes.DIV ||
-               token == MvelTokenTypes.MOD ||
-               token == MvelTokenTypes.EQ ||
-               token == MvelTokenTypes.NE ||
-               token == MvelTokenTypes.LT ||
-               token == MvelTokenTypes.GT ||
-               token == MvelTokenTypes.LE ||
-               token == MvelTokenTypes.GE ||
-               token == MvelTokenTypes.AND ||
-               token == MvelTokenTypes.OR;
+    private static int closerIndex(IElementType token) {
+        if (token == MvelTokenTypes.RPAREN) {
+            return 0;
+        } else if (token == MvelTokenTypes.RBRACKET) {
+            return 1;
+        } else if (token == MvelTokenTypes.RBRACE) {
+            return 2;
+        }
+        return -1;
     }
 }
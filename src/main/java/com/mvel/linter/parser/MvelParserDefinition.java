@@ -11,20 +11,21 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.TokenType;
 import com.intellij.psi.tree.IFileElementType;
 import com.intellij.psi.tree.TokenSet;
-import com.mvel.linter.MvelLanguage;
 import com.mvel.linter.lexer.MvelLexer;
 import com.mvel.linter.lexer.MvelTokenTypes;
 import com.mvel.linter.psi.MvelFile;
+import com.mvel.linter.psi.stubs.MvelFileElementType;
 import org.jetbrains.annotations.NotNull;
 
 public class MvelParserDefinition implements ParserDefinition {
     public static final TokenSet WHITE_SPACES = TokenSet.create(MvelTokenTypes.WHITESPACE);
     public static final TokenSet COMMENTS = TokenSet.create(
             MvelTokenTypes.LINE_COMMENT,
-            MvelTokenTypes.COMMENT
+            MvelTokenTypes.COMMENT,
+            MvelTokenTypes.TEMPLATE_COMMENT_BODY
     );
     public static final TokenSet STRING_LITERALS = TokenSet.create(MvelTokenTypes.STRING_LITERAL);
-    public static final IFileElementType FILE = new IFileElementType(MvelLanguage.INSTANCE);
+    public static final IFileElementType FILE = new MvelFileElementType();
 
     @NotNull
     @Override
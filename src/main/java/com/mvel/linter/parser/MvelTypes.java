@@ -1,19 +1,60 @@
 package com.mvel.linter.parser;
 
 import com.intellij.psi.tree.IElementType;
-import com.intellij.psi.tree.IFileElementType;
+import com.intellij.psi.tree.TokenSet;
 import com.mvel.linter.MvelLanguage;
+import com.mvel.linter.psi.impl.MvelAssignmentImpl;
+import com.mvel.linter.psi.impl.MvelDeclareTagImpl;
+import com.mvel.linter.psi.impl.MvelFunctionDefImpl;
+import com.mvel.linter.psi.impl.MvelImportImpl;
+import com.mvel.linter.psi.stubs.MvelDeclarationElementType;
 
 public class MvelTypes {
-    public static final IElementType EXPRESSION = new MvelElementType("EXPRESSION");
-    public static final IElementType STATEMENT = new MvelElementType("STATEMENT");
+    public static final IElementType BINARY_EXPRESSION = new MvelElementType("BINARY_EXPRESSION");
+    public static final IElementType UNARY_EXPRESSION = new MvelElementType("UNARY_EXPRESSION");
+    public static final IElementType TERNARY_EXPRESSION = new MvelElementType("TERNARY_EXPRESSION");
+    public static final IElementType CALL_EXPRESSION = new MvelElementType("CALL_EXPRESSION");
+    public static final IElementType INDEX_EXPRESSION = new MvelElementType("INDEX_EXPRESSION");
+    public static final IElementType REFERENCE_EXPRESSION = new MvelElementType("REFERENCE_EXPRESSION");
+    public static final IElementType NULL_SAFE_REFERENCE_EXPRESSION =
+            new MvelElementType("NULL_SAFE_REFERENCE_EXPRESSION");
+    public static final IElementType NEW_EXPRESSION = new MvelElementType("NEW_EXPRESSION");
+    public static final IElementType PARENTHESIZED_EXPRESSION = new MvelElementType("PARENTHESIZED_EXPRESSION");
+    public static final IElementType PROJECTION = new MvelElementType("PROJECTION");
+    public static final IElementType INLINE_COLLECTION = new MvelElementType("INLINE_COLLECTION");
+    public static final IElementType BLOCK_STATEMENT = new MvelElementType("BLOCK_STATEMENT");
     public static final IElementType IF_STATEMENT = new MvelElementType("IF_STATEMENT");
     public static final IElementType FOR_STATEMENT = new MvelElementType("FOR_STATEMENT");
     public static final IElementType WHILE_STATEMENT = new MvelElementType("WHILE_STATEMENT");
     public static final IElementType RETURN_STATEMENT = new MvelElementType("RETURN_STATEMENT");
-    public static final IElementType FUNCTION_DEFINITION = new MvelElementType("FUNCTION_DEFINITION");
-    public static final IElementType ASSIGNMENT = new MvelElementType("ASSIGNMENT");
+    public static final MvelDeclarationElementType FUNCTION_DEFINITION = new MvelDeclarationElementType(
+            "FUNCTION_DEFINITION", MvelFunctionDefImpl::new, MvelFunctionDefImpl::new);
+    public static final MvelDeclarationElementType ASSIGNMENT = new MvelDeclarationElementType(
+            "ASSIGNMENT", MvelAssignmentImpl::new, MvelAssignmentImpl::new);
+    public static final MvelDeclarationElementType IMPORT = new MvelDeclarationElementType(
+            "IMPORT", MvelImportImpl::new, MvelImportImpl::new);
     public static final IElementType TEMPLATE_BLOCK = new MvelElementType("TEMPLATE_BLOCK");
+    public static final IElementType ORB = new MvelElementType("ORB");
+    public static final IElementType CODE_BLOCK = new MvelElementType("CODE_BLOCK");
+    public static final IElementType IF_TAG = new MvelElementType("IF_TAG");
+    public static final IElementType FOREACH_TAG = new MvelElementType("FOREACH_TAG");
+    public static final MvelDeclarationElementType DECLARE_BLOCK = new MvelDeclarationElementType(
+            "DECLARE_BLOCK", MvelDeclareTagImpl::new, MvelDeclareTagImpl::new);
+    public static final IElementType TEMPLATE_BODY = new MvelBodyElementType("TEMPLATE_BODY");
+    public static final IElementType FUNCTION_BODY = new MvelBodyElementType("FUNCTION_BODY");
+
+    /**
+     * Every expression with an element of its own. A literal or a plain name is a bare token, and so is an
+     * expression statement: it gets no wrapper element.
+     */
+    public static final TokenSet EXPRESSIONS = TokenSet.create(
+            BINARY_EXPRESSION, UNARY_EXPRESSION, TERNARY_EXPRESSION, CALL_EXPRESSION, INDEX_EXPRESSION,
+            REFERENCE_EXPRESSION, NULL_SAFE_REFERENCE_EXPRESSION, NEW_EXPRESSION, PARENTHESIZED_EXPRESSION,
+            PROJECTION, INLINE_COLLECTION);
+
+    /** Every template tag: {@code @{}}, {@code @code{}}, {@code @if{}} and the others. */
+    public static final TokenSet TEMPLATE_TAGS = TokenSet.create(
+            TEMPLATE_BLOCK, ORB, CODE_BLOCK, IF_TAG, FOREACH_TAG, DECLARE_BLOCK);
 
     private static class MvelElementType extends IElementType {
         public MvelElementType(String debugName) {
@@ -28,6 +69,11 @@ public class MvelTypes {
             if (type == com.mvel.linter.lexer.MvelTokenTypes.CODE_BLOCK_TEXT) {
                 return new com.mvel.linter.psi.impl.MvelCodeBlockTextPsi(node);
             }
+
+            // Declarations are stub-based and always get their own PSI class
+            if (type instanceof MvelDeclarationElementType declarationType) {
+                return declarationType.createPsi(node);
+            }
             
             // For leaf nodes (tokens), return null to use default token PSI
             // This allows the syntax highlighter to work directly with tokens
@@ -36,13 +82,24 @@ public class MvelTypes {
             }
             
             // For non-leaf nodes (expressions, statements), create custom PSI elements
+            if (type == ORB) {
+                return new com.mvel.linter.psi.impl.MvelOrbImpl(node);
+            }
+            if (type == CODE_BLOCK) {
+                return new com.mvel.linter.psi.impl.MvelCodeBlockImpl(node);
+            }
+            if (type == IF_TAG) {
+                return new com.mvel.linter.psi.impl.MvelIfTagImpl(node);
+            }
+            if (type == FOREACH_TAG) {
+                return new com.mvel.linter.psi.impl.MvelForeachTagImpl(node);
+            }
             if (type == TEMPLATE_BLOCK) {
                 return new com.mvel.linter.psi.impl.MvelTemplateBlockImpl(node);
             }
 
-            if (type == EXPRESSION || type == STATEMENT || type == IF_STATEMENT ||
-                type == FOR_STATEMENT || type == WHILE_STATEMENT || type == RETURN_STATEMENT ||
-                type == FUNCTION_DEFINITION || type == ASSIGNMENT) {
+            if (EXPRESSIONS.contains(type) || type == IF_STATEMENT || type == FOR_STATEMENT ||
+                type == WHILE_STATEMENT || type == RETURN_STATEMENT || type == BLOCK_STATEMENT) {
                 return new com.mvel.linter.psi.impl.MvelExpressionImpl(node);
             }
             return new com.mvel.linter.psi.impl.MvelElementImpl(node);
@@ -0,0 +1,7 @@
+package com.mvel.linter.psi;
+
+/**
+ * Assignment statement; only an assignment to a plain variable has a name.
+ */
+public interface MvelAssignment extends MvelDeclaration {
+}
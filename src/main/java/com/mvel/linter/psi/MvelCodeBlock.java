@@ -0,0 +1,9 @@
+package com.mvel.linter.psi;
+
+import com.intellij.psi.PsiLanguageInjectionHost;
+
+/**
+ * {@code @code{}} block, the host of the Java injected into its content.
+ */
+public interface MvelCodeBlock extends MvelTemplateTag, PsiLanguageInjectionHost {
+}
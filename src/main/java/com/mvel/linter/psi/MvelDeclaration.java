@@ -0,0 +1,15 @@
+package com.mvel.linter.psi;
+
+import com.intellij.psi.NavigatablePsiElement;
+import com.intellij.psi.PsiNameIdentifierOwner;
+import com.intellij.psi.StubBasedPsiElement;
+import com.mvel.linter.psi.stubs.MvelDeclarationStub;
+
+/**
+ * A name an MVEL file declares for other code to use: a {@code def}/{@code function}, an {@code @declare{}} template,
+ * an {@code import} or a top-level variable. Declarations outside function bodies are kept in the stub tree and the
+ * {@link com.mvel.linter.psi.stubs.MvelDeclarationIndex}, so their names are known without parsing the file.
+ */
+public interface MvelDeclaration
+        extends PsiNameIdentifierOwner, NavigatablePsiElement, StubBasedPsiElement<MvelDeclarationStub> {
+}
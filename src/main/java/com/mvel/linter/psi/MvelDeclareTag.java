@@ -0,0 +1,7 @@
+package com.mvel.linter.psi;
+
+/**
+ * {@code @declare{"name"}} tag, named by the template it declares.
+ */
+public interface MvelDeclareTag extends MvelDeclaration, MvelTemplateTag {
+}
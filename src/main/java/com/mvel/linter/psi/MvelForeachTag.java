@@ -0,0 +1,7 @@
+package com.mvel.linter.psi;
+
+/**
+ * {@code @foreach{item : items}} tag; its content is the iteration header.
+ */
+public interface MvelForeachTag extends MvelTemplateTag {
+}
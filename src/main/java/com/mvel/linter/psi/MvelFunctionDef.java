@@ -0,0 +1,5 @@
+package com.mvel.linter.psi;
+
+public interface MvelFunctionDef extends MvelDeclaration {
+    int getParameterCount();
+}
@@ -0,0 +1,7 @@
+package com.mvel.linter.psi;
+
+/**
+ * {@code @if{condition}} tag; its content is the condition.
+ */
+public interface MvelIfTag extends MvelTemplateTag {
+}
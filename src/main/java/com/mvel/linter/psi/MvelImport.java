@@ -0,0 +1,7 @@
+package com.mvel.linter.psi;
+
+/**
+ * {@code import} statement, named by the imported qualified name such as {@code java.util.Map} or {@code java.util.*}.
+ */
+public interface MvelImport extends MvelDeclaration {
+}
@@ -0,0 +1,7 @@
+package com.mvel.linter.psi;
+
+/**
+ * {@code @{expression}} orb, which outputs the value of its expression.
+ */
+public interface MvelOrb extends MvelTemplateTag {
+}
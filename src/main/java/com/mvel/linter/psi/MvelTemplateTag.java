@@ -0,0 +1,23 @@
+package com.mvel.linter.psi;
+
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A template tag: {@code @{}}, {@code @code{}}, {@code @if{}}, {@code @foreach{}}, {@code @declare{}} or one of the
+ * tags without PSI of their own, such as {@code @else{}} and {@code @end{}}.
+ */
+public interface MvelTemplateTag extends PsiElement {
+    /**
+     * Token that opens the tag, such as {@code TEMPLATE_IF}, or {@code AT} for {@code @{}}.
+     */
+    @NotNull IElementType getTagKind();
+
+    /**
+     * Range between the braces of the tag, relative to the tag, or an empty range if the tag has no closed body.
+     * Computed once per change to the file.
+     */
+    @NotNull TextRange getContentRangeInElement();
+}
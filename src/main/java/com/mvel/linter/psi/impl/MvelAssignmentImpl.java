@@ -0,0 +1,42 @@
+package com.mvel.linter.psi.impl;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.stubs.IStubElementType;
+import com.mvel.linter.lexer.MvelTokenTypes;
+import com.mvel.linter.psi.MvelAssignment;
+import com.mvel.linter.psi.stubs.MvelDeclarationStub;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public class MvelAssignmentImpl extends MvelDeclarationImpl implements MvelAssignment {
+    public MvelAssignmentImpl(@NotNull ASTNode node) {
+        super(node);
+    }
+
+    public MvelAssignmentImpl(@NotNull MvelDeclarationStub stub, @NotNull IStubElementType<?, ?> elementType) {
+        super(stub, elementType);
+    }
+
+    @Override
+    public @Nullable PsiElement getNameIdentifier() {
+        ASTNode name = findNameNode();
+        return name != null ? name.getPsi() : null;
+    }
+
+    @Override
+    protected @Nullable String getNameFromTree() {
+        ASTNode name = findNameNode();
+        return name != null ? name.getText() : null;
+    }
+
+    // The target of 'name = value'; a qualified or indexed target assigns a property, not a variable.
+    private @Nullable ASTNode findNameNode() {
+        ASTNode target = significant(getNode().getFirstChildNode());
+        if (target == null || target.getElementType() != MvelTokenTypes.IDENTIFIER) {
+            return null;
+        }
+        ASTNode next = nextSignificant(target);
+        return next != null && next.getElementType() == MvelTokenTypes.ASSIGN ? target : null;
+    }
+}
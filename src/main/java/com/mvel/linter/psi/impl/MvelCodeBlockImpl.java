@@ -0,0 +1,29 @@
+package com.mvel.linter.psi.impl;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.LiteralTextEscaper;
+import com.intellij.psi.PsiLanguageInjectionHost;
+import com.mvel.linter.codeblock.MvelJavaCodeBlockEscaper;
+import com.mvel.linter.psi.MvelCodeBlock;
+import org.jetbrains.annotations.NotNull;
+
+public class MvelCodeBlockImpl extends MvelTemplateBlockImpl implements MvelCodeBlock {
+    public MvelCodeBlockImpl(@NotNull ASTNode node) {
+        super(node);
+    }
+
+    @Override
+    public boolean isValidHost() {
+        return !getContentRangeInElement().isEmpty();
+    }
+
+    @Override
+    public PsiLanguageInjectionHost updateText(@NotNull String text) {
+        return this;
+    }
+
+    @Override
+    public @NotNull LiteralTextEscaper<? extends PsiLanguageInjectionHost> createLiteralTextEscaper() {
+        return new MvelJavaCodeBlockEscaper(this);
+    }
+}
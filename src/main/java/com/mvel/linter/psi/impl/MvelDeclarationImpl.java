@@ -0,0 +1,73 @@
+package com.mvel.linter.psi.impl;
+
+import com.intellij.extapi.psi.StubBasedPsiElementBase;
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.stubs.IStubElementType;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.util.IncorrectOperationException;
+import com.mvel.linter.lexer.MvelTokenStream;
+import com.mvel.linter.psi.MvelDeclaration;
+import com.mvel.linter.psi.stubs.MvelDeclarationStub;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Base of the declaration PSI: the name comes from the stub while the file is not parsed, and from the tree after.
+ */
+public abstract class MvelDeclarationImpl extends StubBasedPsiElementBase<MvelDeclarationStub>
+        implements MvelDeclaration {
+    private static final Key<CachedValue<String>> NAME_KEY = Key.create("com.mvel.linter.psi.MvelDeclaration.name");
+
+    protected MvelDeclarationImpl(@NotNull ASTNode node) {
+        super(node);
+    }
+
+    protected MvelDeclarationImpl(@NotNull MvelDeclarationStub stub, @NotNull IStubElementType<?, ?> elementType) {
+        super(stub, elementType);
+    }
+
+    @Override
+    public @Nullable String getName() {
+        MvelDeclarationStub stub = getGreenStub();
+        if (stub != null) {
+            return stub.getName();
+        }
+        return CachedValuesManager.getManager(getProject()).getCachedValue(this, NAME_KEY, () ->
+                CachedValueProvider.Result.create(getNameFromTree(), getContainingFile()), false);
+    }
+
+    /**
+     * Name as written in the tree, or {@code null} if this declaration has none. Called once per change to the file.
+     */
+    protected abstract @Nullable String getNameFromTree();
+
+    @Override
+    public PsiElement setName(@NotNull String name) throws IncorrectOperationException {
+        throw new IncorrectOperationException("Renaming MVEL declarations is not supported");
+    }
+
+    @Override
+    public int getTextOffset() {
+        PsiElement nameIdentifier = getNameIdentifier();
+        return nameIdentifier != null ? nameIdentifier.getTextOffset() : super.getTextOffset();
+    }
+
+    /**
+     * {@code node} or the first sibling after it that is not whitespace or a comment.
+     */
+    protected static @Nullable ASTNode significant(@Nullable ASTNode node) {
+        ASTNode current = node;
+        while (current != null && !MvelTokenStream.isSignificant(current.getElementType())) {
+            current = current.getTreeNext();
+        }
+        return current;
+    }
+
+    protected static @Nullable ASTNode nextSignificant(@Nullable ASTNode node) {
+        return node == null ? null : significant(node.getTreeNext());
+    }
+}
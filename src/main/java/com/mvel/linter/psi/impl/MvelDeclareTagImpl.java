@@ -0,0 +1,54 @@
+package com.mvel.linter.psi.impl;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.stubs.IStubElementType;
+import com.intellij.psi.tree.IElementType;
+import com.mvel.linter.lexer.MvelTokenTypes;
+import com.mvel.linter.psi.MvelDeclareTag;
+import com.mvel.linter.psi.stubs.MvelDeclarationStub;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public class MvelDeclareTagImpl extends MvelDeclarationImpl implements MvelDeclareTag {
+    public MvelDeclareTagImpl(@NotNull ASTNode node) {
+        super(node);
+    }
+
+    public MvelDeclareTagImpl(@NotNull MvelDeclarationStub stub, @NotNull IStubElementType<?, ?> elementType) {
+        super(stub, elementType);
+    }
+
+    /**
+     * The name is a string inside the tag body, which stays collapsed, so there is no identifier to point at.
+     */
+    @Override
+    public @Nullable PsiElement getNameIdentifier() {
+        return null;
+    }
+
+    @Override
+    public @NotNull IElementType getTagKind() {
+        return MvelTokenTypes.TEMPLATE_DECLARE;
+    }
+
+    @Override
+    public @NotNull TextRange getContentRangeInElement() {
+        return MvelTemplateBlockImpl.contentRange(this);
+    }
+
+    @Override
+    protected @Nullable String getNameFromTree() {
+        TextRange contentRange = getContentRangeInElement();
+        if (contentRange.isEmpty()) {
+            return null;
+        }
+        String name = contentRange.substring(getText()).trim();
+        if (name.length() >= 2 && (name.charAt(0) == '"' || name.charAt(0) == '\'') &&
+                name.charAt(name.length() - 1) == name.charAt(0)) {
+            name = name.substring(1, name.length() - 1);
+        }
+        return name.isEmpty() ? null : name;
+    }
+}
@@ -0,0 +1,11 @@
+package com.mvel.linter.psi.impl;
+
+import com.intellij.lang.ASTNode;
+import com.mvel.linter.psi.MvelForeachTag;
+import org.jetbrains.annotations.NotNull;
+
+public class MvelForeachTagImpl extends MvelTemplateBlockImpl implements MvelForeachTag {
+    public MvelForeachTagImpl(@NotNull ASTNode node) {
+        super(node);
+    }
+}
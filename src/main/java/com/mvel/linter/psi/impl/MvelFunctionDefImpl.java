@@ -0,0 +1,60 @@
+package com.mvel.linter.psi.impl;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.stubs.IStubElementType;
+import com.mvel.linter.lexer.MvelTokenTypes;
+import com.mvel.linter.psi.MvelFunctionDef;
+import com.mvel.linter.psi.stubs.MvelDeclarationStub;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public class MvelFunctionDefImpl extends MvelDeclarationImpl implements MvelFunctionDef {
+    public MvelFunctionDefImpl(@NotNull ASTNode node) {
+        super(node);
+    }
+
+    public MvelFunctionDefImpl(@NotNull MvelDeclarationStub stub, @NotNull IStubElementType<?, ?> elementType) {
+        super(stub, elementType);
+    }
+
+    @Override
+    public @Nullable PsiElement getNameIdentifier() {
+        ASTNode name = findNameNode();
+        return name != null ? name.getPsi() : null;
+    }
+
+    @Override
+    protected @Nullable String getNameFromTree() {
+        ASTNode name = findNameNode();
+        return name != null ? name.getText() : null;
+    }
+
+    @Override
+    public int getParameterCount() {
+        MvelDeclarationStub stub = getGreenStub();
+        if (stub != null) {
+            return stub.getParameterCount();
+        }
+
+        ASTNode current = nextSignificant(findNameNode());
+        if (current == null || current.getElementType() != MvelTokenTypes.LPAREN) {
+            return 0;
+        }
+        int parameters = 0;
+        for (current = nextSignificant(current); current != null; current = nextSignificant(current)) {
+            if (current.getElementType() == MvelTokenTypes.IDENTIFIER) {
+                parameters++;
+            } else if (current.getElementType() != MvelTokenTypes.COMMA) {
+                break;
+            }
+        }
+        return parameters;
+    }
+
+    // The identifier right after 'def' or 'function'.
+    private @Nullable ASTNode findNameNode() {
+        ASTNode name = nextSignificant(significant(getNode().getFirstChildNode()));
+        return name != null && name.getElementType() == MvelTokenTypes.IDENTIFIER ? name : null;
+    }
+}
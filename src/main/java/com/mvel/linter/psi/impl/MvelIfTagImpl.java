@@ -0,0 +1,11 @@
+package com.mvel.linter.psi.impl;
+
+import com.intellij.lang.ASTNode;
+import com.mvel.linter.psi.MvelIfTag;
+import org.jetbrains.annotations.NotNull;
+
+public class MvelIfTagImpl extends MvelTemplateBlockImpl implements MvelIfTag {
+    public MvelIfTagImpl(@NotNull ASTNode node) {
+        super(node);
+    }
+}
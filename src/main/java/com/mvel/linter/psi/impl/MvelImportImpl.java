@@ -0,0 +1,54 @@
+package com.mvel.linter.psi.impl;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.stubs.IStubElementType;
+import com.mvel.linter.lexer.MvelTokenTypes;
+import com.mvel.linter.psi.MvelImport;
+import com.mvel.linter.psi.stubs.MvelDeclarationStub;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public class MvelImportImpl extends MvelDeclarationImpl implements MvelImport {
+    public MvelImportImpl(@NotNull ASTNode node) {
+        super(node);
+    }
+
+    public MvelImportImpl(@NotNull MvelDeclarationStub stub, @NotNull IStubElementType<?, ?> elementType) {
+        super(stub, elementType);
+    }
+
+    /**
+     * The last segment of the imported name.
+     */
+    @Override
+    public @Nullable PsiElement getNameIdentifier() {
+        ASTNode last = null;
+        for (ASTNode current = firstNameNode(); current != null; current = nextSignificant(current)) {
+            if (current.getElementType() == MvelTokenTypes.IDENTIFIER) {
+                last = current;
+            }
+        }
+        return last != null ? last.getPsi() : null;
+    }
+
+    @Override
+    protected @Nullable String getNameFromTree() {
+        StringBuilder name = new StringBuilder();
+        for (ASTNode current = firstNameNode(); current != null; current = nextSignificant(current)) {
+            name.append(current.getText());
+        }
+        return name.isEmpty() ? null : name.toString();
+    }
+
+    // First segment of the name, after 'import' and an optional 'static'.
+    private @Nullable ASTNode firstNameNode() {
+        ASTNode first = nextSignificant(significant(getNode().getFirstChildNode()));
+        ASTNode next = nextSignificant(first);
+        if (first != null && "static".equals(first.getText()) && next != null
+                && next.getElementType() == MvelTokenTypes.IDENTIFIER) {
+            return next;
+        }
+        return first;
+    }
+}
@@ -0,0 +1,11 @@
+package com.mvel.linter.psi.impl;
+
+import com.intellij.lang.ASTNode;
+import com.mvel.linter.psi.MvelOrb;
+import org.jetbrains.annotations.NotNull;
+
+public class MvelOrbImpl extends MvelTemplateBlockImpl implements MvelOrb {
+    public MvelOrbImpl(@NotNull ASTNode node) {
+        super(node);
+    }
+}
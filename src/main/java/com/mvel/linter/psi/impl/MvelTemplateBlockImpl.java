@@ -1,29 +1,60 @@
 package com.mvel.linter.psi.impl;
 
 import com.intellij.lang.ASTNode;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.TextRange;
-import com.intellij.psi.LiteralTextEscaper;
-import com.intellij.psi.PsiLanguageInjectionHost;
+import com.intellij.psi.PsiElement;
 import com.intellij.psi.tree.IElementType;
-import com.mvel.linter.codeblock.MvelJavaCodeBlockEscaper;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
 import com.mvel.linter.lexer.MvelTokenTypes;
+import com.mvel.linter.parser.MvelTypes;
+import com.mvel.linter.psi.MvelTemplateTag;
 import org.jetbrains.annotations.NotNull;
 
-public class MvelTemplateBlockImpl extends MvelExpressionImpl implements PsiLanguageInjectionHost {
+/**
+ * Template tag without PSI of its own, and the base of the tags that have one.
+ */
+public class MvelTemplateBlockImpl extends MvelExpressionImpl implements MvelTemplateTag {
+    private static final Key<CachedValue<TextRange>> CONTENT_RANGE_KEY =
+            Key.create("com.mvel.linter.psi.MvelTemplateTag.contentRange");
+
     public MvelTemplateBlockImpl(@NotNull ASTNode node) {
         super(node);
     }
 
-    public boolean isCodeBlock() {
-        ASTNode firstChild = getNode().getFirstChildNode();
-        return firstChild != null && firstChild.getElementType() == MvelTokenTypes.TEMPLATE_CODE;
+    @Override
+    public @NotNull IElementType getTagKind() {
+        return tagKind(getNode());
     }
 
+    @Override
     public @NotNull TextRange getContentRangeInElement() {
+        return contentRange(this);
+    }
+
+    // The tag token is always the first child, so the kind needs no cache.
+    static @NotNull IElementType tagKind(@NotNull ASTNode tag) {
+        ASTNode firstChild = tag.getFirstChildNode();
+        return firstChild != null ? firstChild.getElementType() : tag.getElementType();
+    }
+
+    static @NotNull TextRange contentRange(@NotNull PsiElement tag) {
+        return CachedValuesManager.getManager(tag.getProject()).getCachedValue(tag, CONTENT_RANGE_KEY, () ->
+                CachedValueProvider.Result.create(computeContentRange(tag.getNode()), tag.getContainingFile()), false);
+    }
+
+    private static @NotNull TextRange computeContentRange(@NotNull ASTNode tag) {
         ASTNode leftBrace = null;
         ASTNode rightBrace = null;
-        for (ASTNode child = getNode().getFirstChildNode(); child != null; child = child.getTreeNext()) {
+        for (ASTNode child = tag.getFirstChildNode(); child != null; child = child.getTreeNext()) {
             IElementType type = child.getElementType();
+            if (type == MvelTypes.TEMPLATE_BODY) {
+                // A collapsed body always spans its braces, so there is no need to parse it to find them.
+                int bodyStart = child.getStartOffsetInParent();
+                return new TextRange(bodyStart + 1, bodyStart + child.getTextLength() - 1);
+            }
             if (type == MvelTokenTypes.LBRACE && leftBrace == null) {
                 leftBrace = child;
             } else if (type == MvelTokenTypes.RBRACE) {
@@ -42,19 +73,4 @@ public class MvelTemplateBlockImpl extends MvelExpressionImpl implements PsiLang
         }
         return new TextRange(start, end);
     }
-
-    @Override
-    public boolean isValidHost() {
-        return isCodeBlock() && !getContentRangeInElement().isEmpty();
-    }
-
-    @Override
-    public PsiLanguageInjectionHost updateText(@NotNull String text) {
-        return this;
-    }
-
-    @Override
-    public @NotNull LiteralTextEscaper<? extends PsiLanguageInjectionHost> createLiteralTextEscaper() {
-        return new MvelJavaCodeBlockEscaper(this);
-    }
 }
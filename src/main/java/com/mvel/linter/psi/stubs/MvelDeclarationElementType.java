@@ -0,0 +1,103 @@
+package com.mvel.linter.psi.stubs;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.stubs.IStubElementType;
+import com.intellij.psi.stubs.IndexSink;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.stubs.StubInputStream;
+import com.intellij.psi.stubs.StubOutputStream;
+import com.intellij.psi.tree.TokenSet;
+import com.mvel.linter.MvelLanguage;
+import com.mvel.linter.parser.MvelTypes;
+import com.mvel.linter.psi.MvelDeclaration;
+import com.mvel.linter.psi.MvelFunctionDef;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Element type of a declaration. Only named top-level declarations get a stub: names local to a function body or to
+ * an {@code if}, loop or block statement are of no use to other code.
+ */
+public class MvelDeclarationElementType extends IStubElementType<MvelDeclarationStub, MvelDeclaration> {
+    private static final TokenSet LOCAL_SCOPES = TokenSet.create(
+            MvelTypes.FUNCTION_DEFINITION, MvelTypes.FUNCTION_BODY, MvelTypes.BLOCK_STATEMENT, MvelTypes.IF_STATEMENT,
+            MvelTypes.FOR_STATEMENT, MvelTypes.WHILE_STATEMENT);
+
+    private final Function<ASTNode, MvelDeclaration> nodePsiFactory;
+    private final BiFunction<MvelDeclarationStub, IStubElementType<?, ?>, MvelDeclaration> stubPsiFactory;
+
+    public MvelDeclarationElementType(
+            @NotNull String debugName,
+            @NotNull Function<ASTNode, MvelDeclaration> nodePsiFactory,
+            @NotNull BiFunction<MvelDeclarationStub, IStubElementType<?, ?>, MvelDeclaration> stubPsiFactory
+    ) {
+        super(debugName, MvelLanguage.INSTANCE);
+        this.nodePsiFactory = nodePsiFactory;
+        this.stubPsiFactory = stubPsiFactory;
+    }
+
+    public @NotNull MvelDeclaration createPsi(@NotNull ASTNode node) {
+        return nodePsiFactory.apply(node);
+    }
+
+    @Override
+    public MvelDeclaration createPsi(@NotNull MvelDeclarationStub stub) {
+        return stubPsiFactory.apply(stub, this);
+    }
+
+    @Override
+    public @NotNull MvelDeclarationStub createStub(
+            @NotNull MvelDeclaration psi,
+            StubElement<? extends PsiElement> parentStub
+    ) {
+        int parameterCount = psi instanceof MvelFunctionDef function ? function.getParameterCount() : -1;
+        return new MvelDeclarationStub(parentStub, this, psi.getName(), parameterCount);
+    }
+
+    @Override
+    public boolean shouldCreateStub(ASTNode node) {
+        for (ASTNode parent = node.getTreeParent(); parent != null; parent = parent.getTreeParent()) {
+            if (LOCAL_SCOPES.contains(parent.getElementType())) {
+                return false;
+            }
+        }
+        return node.getPsi(MvelDeclaration.class).getName() != null;
+    }
+
+    @Override
+    public @NotNull String getExternalId() {
+        return "mvel." + this;
+    }
+
+    @Override
+    public void serialize(@NotNull MvelDeclarationStub stub, @NotNull StubOutputStream dataStream) throws IOException {
+        dataStream.writeName(stub.getName());
+        dataStream.writeVarInt(stub.getParameterCount() + 1);
+    }
+
+    @Override
+    public @NotNull MvelDeclarationStub deserialize(
+            @NotNull StubInputStream dataStream,
+            StubElement parentStub
+    ) throws IOException {
+        String name = dataStream.readNameString();
+        int parameterCount = dataStream.readVarInt() - 1;
+        return new MvelDeclarationStub(parentStub, this, name, parameterCount);
+    }
+
+    @Override
+    public void indexStub(@NotNull MvelDeclarationStub stub, @NotNull IndexSink sink) {
+        String name = stub.getName();
+        if (name == null) {
+            return;
+        }
+        if (this == MvelTypes.IMPORT) {
+            name = name.substring(name.lastIndexOf('.') + 1);
+        }
+        sink.occurrence(MvelDeclarationIndex.KEY, name);
+    }
+}
@@ -0,0 +1,49 @@
+package com.mvel.linter.psi.stubs;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StringStubIndexExtension;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.psi.stubs.StubIndexKey;
+import com.intellij.util.Processor;
+import com.mvel.linter.psi.MvelDeclaration;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Declarations of all MVEL files by name. Imports are keyed by their last segment, the simple class name they make
+ * available (or {@code *}).
+ */
+public class MvelDeclarationIndex extends StringStubIndexExtension<MvelDeclaration> {
+    public static final StubIndexKey<String, MvelDeclaration> KEY = StubIndexKey.createIndexKey("mvel.declaration");
+
+    @Override
+    public @NotNull StubIndexKey<String, MvelDeclaration> getKey() {
+        return KEY;
+    }
+
+    public static @NotNull <T extends MvelDeclaration> List<T> find(
+            @NotNull String name,
+            @NotNull Class<T> kind,
+            @NotNull Project project,
+            @NotNull GlobalSearchScope scope
+    ) {
+        List<T> declarations = new ArrayList<>();
+        for (MvelDeclaration declaration : StubIndex.getElements(KEY, name, project, scope, MvelDeclaration.class)) {
+            if (kind.isInstance(declaration)) {
+                declarations.add(kind.cast(declaration));
+            }
+        }
+        return declarations;
+    }
+
+    /** Feeds the names with a declaration in {@code scope} to {@code processor} until it returns {@code false}. */
+    public static boolean processAllNames(
+            @NotNull GlobalSearchScope scope,
+            @NotNull Processor<? super String> processor
+    ) {
+        return StubIndex.getInstance().processAllKeys(KEY, processor, scope, null);
+    }
+}
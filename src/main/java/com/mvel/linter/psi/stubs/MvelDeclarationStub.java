@@ -0,0 +1,28 @@
+package com.mvel.linter.psi.stubs;
+
+import com.intellij.psi.stubs.IStubElementType;
+import com.intellij.psi.stubs.NamedStubBase;
+import com.intellij.psi.stubs.StubElement;
+import com.mvel.linter.psi.MvelDeclaration;
+import org.jetbrains.annotations.Nullable;
+
+public class MvelDeclarationStub extends NamedStubBase<MvelDeclaration> {
+    private final int parameterCount;
+
+    public MvelDeclarationStub(
+            StubElement<?> parent,
+            IStubElementType<?, ?> elementType,
+            @Nullable String name,
+            int parameterCount
+    ) {
+        super(parent, elementType, name);
+        this.parameterCount = parameterCount;
+    }
+
+    /**
+     * Number of parameters of a function, or -1 for any other declaration.
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+}
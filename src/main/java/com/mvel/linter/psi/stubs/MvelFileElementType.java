@@ -0,0 +1,43 @@
+package com.mvel.linter.psi.stubs;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.StubBuilder;
+import com.intellij.psi.stubs.DefaultStubBuilder;
+import com.intellij.psi.stubs.PsiFileStub;
+import com.intellij.psi.tree.IStubFileElementType;
+import com.mvel.linter.MvelLanguage;
+import com.mvel.linter.parser.MvelTypes;
+import com.mvel.linter.psi.MvelFile;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * File element type with a stub tree of the file's declarations. Function bodies hold only local names, so the stub
+ * builder leaves them collapsed.
+ */
+public class MvelFileElementType extends IStubFileElementType<PsiFileStub<MvelFile>> {
+    private static final int STUB_VERSION = 2;
+
+    public MvelFileElementType() {
+        super("MVEL_FILE", MvelLanguage.INSTANCE);
+    }
+
+    @Override
+    public @NotNull StubBuilder getBuilder() {
+        return new DefaultStubBuilder() {
+            @Override
+            public boolean skipChildProcessingWhenBuildingStubs(@NotNull ASTNode parent, @NotNull ASTNode node) {
+                return node.getElementType() == MvelTypes.FUNCTION_BODY;
+            }
+        };
+    }
+
+    @Override
+    public int getStubVersion() {
+        return STUB_VERSION;
+    }
+
+    @Override
+    public @NotNull String getExternalId() {
+        return "mvel.FILE";
+    }
+}
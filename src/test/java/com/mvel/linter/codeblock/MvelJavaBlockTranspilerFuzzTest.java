@@ -0,0 +1,25 @@
+package com.mvel.linter.codeblock;
+
+import org.junit.Test;
+
+import java.util.function.Consumer;
+
+import static com.mvel.linter.testing.PerformanceFuzzer.assertNoSuperlinearInputs;
+import static com.mvel.linter.testing.PerformanceFuzzer.assertRecordedInputsScale;
+
+public class MvelJavaBlockTranspilerFuzzTest {
+    private static final String TRANSPILER = "MvelJavaBlockTranspiler.transpileContent";
+
+    private final MvelJavaBlockTranspiler transpiler = new MvelJavaBlockTranspiler();
+    private final Consumer<String> entryPoint = content -> transpiler.transpileContent(content, 0, content.length());
+
+    @Test(timeout = 120_000)
+    public void recordedInputsScaleNoWorseThanNLogN() {
+        assertRecordedInputsScale(TRANSPILER, entryPoint);
+    }
+
+    @Test(timeout = 120_000)
+    public void fuzzingFindsNoSuperlinearInput() {
+        assertNoSuperlinearInputs(TRANSPILER, entryPoint, 2_000);
+    }
+}
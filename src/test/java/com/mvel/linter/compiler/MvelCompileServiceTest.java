@@ -1,11 +1,20 @@
 package com.mvel.linter.compiler;
 
+import org.junit.After;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -13,7 +22,13 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 public class MvelCompileServiceTest {
-    private final MvelCompileService compileService = new MvelCompileService();
+    // Large enough that no test depends on how loaded the machine is.
+    private final MvelCompileService compileService = new MvelCompileService(4, TimeUnit.MINUTES.toMillis(10));
+
+    @After
+    public void tearDown() {
+        compileService.dispose();
+    }
 
     @Test
     public void plainScriptMissingSemicolonGetsPreciseHint() {
@@ -67,11 +82,193 @@ public class MvelCompileServiceTest {
                 + "    bar = )\n"
                 + "}\n";
 
-        MvelDiagnostic diagnostic = singleDiagnostic(text);
+        List<MvelDiagnostic> diagnostics = compileService.compileText(text).diagnostics();
 
-        assertEquals(MvelDiagnostic.SourceKind.CODE_BLOCK, diagnostic.sourceKind());
-        assertTrue(diagnostic.startOffset() >= text.indexOf("positionId"));
-        assertTrue(diagnostic.startOffset() < text.length());
+        assertFalse(diagnostics.isEmpty());
+        for (MvelDiagnostic diagnostic : diagnostics) {
+            assertEquals(MvelDiagnostic.SourceKind.CODE_BLOCK, diagnostic.sourceKind());
+            assertTrue(diagnostic.startOffset() >= text.indexOf("positionId"));
+            assertTrue(diagnostic.startOffset() < text.length());
+        }
+    }
+
+    @Test
+    public void reportsEveryBrokenStatementOfACodeBlock() {
+        String text = "@code{\n"
+                + "    a = ;\n"
+                + "    b = 1;\n"
+                + "    c = ;\n"
+                + "    if (b > 0) {\n"
+                + "        d = ;\n"
+                + "    }\n"
+                + "    e = 2;\n"
+                + "}\n";
+
+        List<MvelDiagnostic> diagnostics = compileService.compileText(text).diagnostics();
+
+        assertEquals(3, diagnostics.size());
+        assertTrue(diagnostics.get(0).startOffset() >= text.indexOf("a = ;"));
+        assertTrue(diagnostics.get(0).startOffset() < text.indexOf("b = 1"));
+        assertTrue(diagnostics.get(1).startOffset() >= text.indexOf("c = ;"));
+        assertTrue(diagnostics.get(1).startOffset() < text.indexOf("if ("));
+        assertTrue(diagnostics.get(2).startOffset() >= text.indexOf("if ("));
+        assertTrue(diagnostics.get(2).startOffset() < text.indexOf("e = 2"));
+        for (MvelDiagnostic diagnostic : diagnostics) {
+            assertEquals(MvelDiagnostic.SourceKind.CODE_BLOCK, diagnostic.sourceKind());
+        }
+    }
+
+    @Test
+    public void reportsEveryMissingSemicolonWithItsFix() {
+        String text = "@code{\n"
+                + "    int a = 1\n"
+                + "    int b = 2\n"
+                + "    if (a > 0) {\n"
+                + "        int c = 3\n"
+                + "        int d = 4;\n"
+                + "    }\n"
+                + "    int e = 5;\n"
+                + "}\n";
+
+        List<MvelDiagnostic> diagnostics = compileService.compileText(text).diagnostics();
+
+        assertEquals(3, diagnostics.size());
+        String[] statements = {"int a = 1", "int b = 2", "int c = 3"};
+        for (int index = 0; index < statements.length; index++) {
+            MvelDiagnostic diagnostic = diagnostics.get(index);
+            assertEquals("Possible missing ';'", diagnostic.message());
+            assertEquals(MvelDiagnostic.SourceKind.CODE_BLOCK, diagnostic.sourceKind());
+            assertEquals(text.indexOf(statements[index]) + statements[index].length(), diagnostic.semicolonFixOffset());
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void semicolonSearchStaysWithinItsBudgetOnLongCodeBlocks() {
+        StringBuilder block = new StringBuilder("@code{\n");
+        for (int line = 0; line < 1_000; line++) {
+            block.append("    int value").append(line).append(" = ").append(line).append('\n');
+        }
+        block.append("}\n");
+
+        List<MvelDiagnostic> diagnostics = compileService.compileText(block.toString()).diagnostics();
+
+        assertFalse(diagnostics.isEmpty());
+        assertTrue(diagnostics.size() < 1_000);
+        for (MvelDiagnostic diagnostic : diagnostics) {
+            assertEquals("Possible missing ';'", diagnostic.message());
+            assertTrue(diagnostic.hasSemicolonFix());
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void semicolonSearchFindsTheSameSemicolonsHoweverItsWindowsAreScheduled() {
+        StringBuilder block = new StringBuilder("@code{\n");
+        for (int line = 0; line < 1_000; line++) {
+            block.append("    int value").append(line).append(" = ").append(line).append('\n');
+        }
+        String text = block.append("}\n").toString();
+
+        MvelCompileService sequential = new MvelCompileService(1, TimeUnit.MINUTES.toMillis(10));
+        try {
+            List<MvelDiagnostic> expected = sequential.compileText(text).diagnostics();
+            for (int run = 0; run < 3; run++) {
+                compileService.clearFragmentCache();
+                assertEquals(expected, compileService.compileText(text).diagnostics());
+            }
+        } finally {
+            sequential.dispose();
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void cachesOnlyDiagnosticsTheDeadlineDidNotCutShort() {
+        StringBuilder block = new StringBuilder("@code{\n");
+        for (int line = 0; line < 1_000; line++) {
+            block.append("    int value").append(line).append(" = ").append(line).append('\n');
+        }
+        String text = block.append("}\n").toString();
+        List<MvelDiagnostic> complete = compileService.compileText(text).diagnostics();
+
+        // The deadline passes while the semicolon search is under way.
+        PoolReadClock clock = new PoolReadClock(10);
+        MvelCompileService hurried = new MvelCompileService(2, TimeUnit.MINUTES.toMillis(10), null, clock);
+        try {
+            hurried.compileText(text);
+            assertTrue(hurried.awaitQuiescence(30, TimeUnit.SECONDS));
+            assertEquals(0, hurried.getFragmentCacheStats().size());
+
+            clock.stop();
+            assertEquals(complete, hurried.compileText(text).diagnostics());
+            assertEquals(1, hurried.getFragmentCacheStats().size());
+            assertEquals(complete, hurried.compileText(text).diagnostics());
+        } finally {
+            hurried.dispose();
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void doesNotCompileASourceAgainWhileItsAbandonedCompileRuns() {
+        // Looking up Slow moves the clock past the deadline and holds the compile until the test releases it.
+        AtomicLong clock = new AtomicLong();
+        SlowClassLoader slowLoader = new SlowClassLoader(getClass().getClassLoader(), "java.util.Slow",
+                () -> clock.addAndGet(TimeUnit.MINUTES.toNanos(1)));
+        String text = "@code{\n    import java.util.*;\n    value = Slow.value();\n}\n";
+
+        MvelCompileService hurried = new MvelCompileService(2, 1_000, slowLoader, clock::get);
+        try {
+            assertEquals(MvelCompileService.SKIPPED_MESSAGE, hurried.compileText(text).diagnostics().get(0).message());
+
+            // Reported as skipped without a second compile holding another pool thread on the same source.
+            assertEquals(MvelCompileService.SKIPPED_MESSAGE, hurried.compileText(text).diagnostics().get(0).message());
+            assertEquals(1, slowLoader.slowLookups.get());
+
+            slowLoader.release.countDown();
+            assertTrue(hurried.awaitQuiescence(30, TimeUnit.SECONDS));
+            for (MvelDiagnostic diagnostic : hurried.compileText(text).diagnostics()) {
+                assertNotEquals(MvelCompileService.SKIPPED_MESSAGE, diagnostic.message());
+            }
+        } finally {
+            slowLoader.release.countDown();
+            hurried.dispose();
+        }
+    }
+
+    @Test
+    public void importsResolveAgainAfterTheClasspathChanged() {
+        String text = "@code{\n    import java.util.*;\n    list = new ArrayList();\n}\n"
+                + "@code{\n    import java.util.*;\n    map = new HashMap();\n}\n";
+
+        assertTrue(compileService.compileText(text).diagnostics().isEmpty());
+        compileService.classpathChanged();
+        assertTrue(compileService.compileText(text).diagnostics().isEmpty());
+        assertEquals(2, compileService.getFragmentCacheStats().size());
+    }
+
+    @Test
+    public void compilesWithTheSameImportsReuseTheirClassLookups() {
+        List<String> lookups = Collections.synchronizedList(new ArrayList<>());
+        ClassLoader countingLoader = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                lookups.add(name);
+                return super.loadClass(name, resolve);
+            }
+        };
+        MvelCompileService service = new MvelCompileService(2, TimeUnit.MINUTES.toMillis(10), countingLoader);
+        try {
+            service.compileText("@code{\n    import java.util.*;\n    list = new ArrayList();\n"
+                    + "    size = Missing.size(list);\n}\n");
+            service.compileText("@code{\n    import java.util.*;\n    map = new ArrayList();\n"
+                    + "    count = Missing.count(map);\n}\n");
+            // A name that is no class of java.util is looked up once, not once per compile.
+            assertEquals(1, Collections.frequency(lookups, "java.util.Missing"));
+
+            service.classpathChanged();
+            service.compileText("@code{\n    import java.util.*;\n    size = Missing.size();\n}\n");
+            assertEquals(2, Collections.frequency(lookups, "java.util.Missing"));
+        } finally {
+            service.dispose();
+        }
     }
 
     @Test
@@ -96,6 +293,42 @@ public class MvelCompileServiceTest {
         assertEquals(MvelDiagnostic.SourceKind.TEMPLATE, diagnostic.sourceKind());
     }
 
+    @Test
+    public void declareBlockEndsAtItsEndTag() {
+        assertTrue(compileService.compileText("@declare{'row'}<td>@{row.name}</td>@end{}\n").diagnostics().isEmpty());
+
+        String text = "@declare{'row'}<td>@{row.name}</td>";
+        MvelDiagnostic diagnostic = singleDiagnostic(text);
+
+        assertEquals("Unclosed @declare{} block. expected @end{}", diagnostic.message());
+        assertEquals(0, diagnostic.startOffset());
+        assertEquals(MvelDiagnostic.SourceKind.TEMPLATE, diagnostic.sourceKind());
+    }
+
+    @Test
+    public void namedTemplatesNeedAName() {
+        String text = "@declare{ }<td/>@end{}\n@includeNamed{ ; row = 1}\n@includeNamed{'row'; row = 1}";
+
+        List<MvelDiagnostic> diagnostics = compileService.compileText(text).diagnostics();
+
+        assertEquals(2, diagnostics.size());
+        assertEquals("Missing template name in @declare{}", diagnostics.get(0).message());
+        assertEquals(text.indexOf("@declare{"), diagnostics.get(0).startOffset());
+        assertEquals("Missing template name in @includeNamed{}", diagnostics.get(1).message());
+        assertEquals(text.indexOf("@includeNamed{ ;"), diagnostics.get(1).startOffset());
+    }
+
+    @Test
+    public void templateCompilerRunsOnlyWhenTheScanCannotDecide() throws IOException {
+        assertTrue(TemplateCodeBlockScanner.scan(readProjectFile("ghor.mvel")).structureDecided());
+        assertTrue(TemplateCodeBlockScanner.scan("@if{a}@{b}@else{}@{c}@end{}").structureDecided());
+        assertTrue(TemplateCodeBlockScanner.scan("@code{ s = \"@{x}\"; }").structureDecided());
+
+        assertFalse(TemplateCodeBlockScanner.scan("it's @if{a}@{b}@end{}").structureDecided());
+        assertFalse(TemplateCodeBlockScanner.scan("@custom{a}@{b}").structureDecided());
+        assertFalse(TemplateCodeBlockScanner.scan("function() { @{b}").structureDecided());
+    }
+
     @Test
     public void orbExpressionErrorIsLocalizedInsideOrb() {
         String text = "prefix @{foo = } suffix";
@@ -118,6 +351,143 @@ public class MvelCompileServiceTest {
         assertTrue(diagnostic.startOffset() < text.indexOf("@{item}"));
     }
 
+    @Test
+    public void fragmentDiagnosticsMoveWithTheirFragment() {
+        // Unchanged fragments keep their diagnostics across edits, shifted to where the fragment now starts.
+        String block = "@code{\n    int x = 10\n    String name = \"demo\";\n}\n@{foo = }\n";
+        String prefix = "@{a}\nline\n";
+
+        MvelDiagnostic[] alone = compileService.compileText(block).diagnostics().toArray(MvelDiagnostic[]::new);
+        MvelDiagnostic[] shifted = compileService.compileText(prefix + block).diagnostics().toArray(MvelDiagnostic[]::new);
+
+        assertEquals(2, alone.length);
+        assertEquals(alone.length, shifted.length);
+        for (int index = 0; index < alone.length; index++) {
+            assertEquals(alone[index].message(), shifted[index].message());
+            assertEquals(alone[index].sourceKind(), shifted[index].sourceKind());
+            assertEquals(alone[index].startOffset() + prefix.length(), shifted[index].startOffset());
+            assertEquals(alone[index].endOffset() + prefix.length(), shifted[index].endOffset());
+        }
+    }
+
+    @Test
+    public void recompilesOnlyTheEditedFragment() {
+        StringBuilder template = new StringBuilder();
+        for (int orb = 0; orb < 300; orb++) {
+            template.append("<td>@{row.cell").append(orb).append("}</td>\n");
+        }
+        String text = template.toString();
+        compileService.compileText(text);
+        MvelCompileService.FragmentCacheStats before = compileService.getFragmentCacheStats();
+
+        compileService.compileText(text.replace("row.cell150}", "row.cell150.name}"));
+        MvelCompileService.FragmentCacheStats after = compileService.getFragmentCacheStats();
+
+        assertEquals(300, before.misses());
+        assertEquals(299, after.hits() - before.hits());
+        assertEquals(1, after.misses() - before.misses());
+    }
+
+    @Test
+    public void parallelCompileReportsLikeSequentialCompile() {
+        StringBuilder template = new StringBuilder();
+        for (int orb = 0; orb < 64; orb++) {
+            template.append(orb % 3 == 0 ? "@{foo" + orb + " = }\n" : "@{row.cell" + orb + "}\n");
+        }
+        String text = template.toString();
+
+        MvelCompileService sequential = new MvelCompileService(1);
+        MvelCompileService parallel = new MvelCompileService(4);
+        try {
+            List<MvelDiagnostic> expected = sequential.compileText(text).diagnostics();
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, parallel.compileText(text).diagnostics());
+        } finally {
+            sequential.dispose();
+            parallel.dispose();
+        }
+    }
+
+    @Test
+    public void reportsSourcesAsSkippedOnceTheBudgetIsSpent() {
+        MvelCompileService exhausted = new MvelCompileService(2, 0);
+        try {
+            String text = "@{a}\n@code{ b = 1; }\n";
+            List<MvelDiagnostic> diagnostics = exhausted.compileText(text).diagnostics();
+
+            assertFalse(diagnostics.isEmpty());
+            for (MvelDiagnostic diagnostic : diagnostics) {
+                assertEquals(MvelCompileService.SKIPPED_MESSAGE, diagnostic.message());
+                assertEquals(MvelDiagnostic.Severity.WARNING, diagnostic.severity());
+            }
+            assertEquals(0, exhausted.getFragmentCacheStats().size());
+
+            MvelDiagnostic script = exhausted.compileText("x = 1;").diagnostics().get(0);
+            assertEquals(MvelCompileService.SKIPPED_MESSAGE, script.message());
+        } finally {
+            exhausted.dispose();
+        }
+    }
+
+    /** Holds every lookup of one class until released. */
+    private static final class SlowClassLoader extends ClassLoader {
+        static {
+            // A second lookup must reach loadClass instead of waiting for the loader's lock.
+            registerAsParallelCapable();
+        }
+
+        final AtomicInteger slowLookups = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        private final String slowName;
+        private final Runnable onLookup;
+
+        SlowClassLoader(ClassLoader parent, String slowName, Runnable onLookup) {
+            super(parent);
+            this.slowName = slowName;
+            this.onLookup = onLookup;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.equals(slowName)) {
+                slowLookups.incrementAndGet();
+                onLookup.run();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    /**
+     * A clock that stands still until compile pool threads have read it a given number of times, then jumps past any
+     * deadline taken from it before.
+     */
+    private static final class PoolReadClock implements LongSupplier {
+        private final AtomicInteger readsLeft;
+        private volatile long now;
+
+        PoolReadClock(int reads) {
+            readsLeft = new AtomicInteger(reads);
+        }
+
+        /** Stops the clock where it is, so deadlines taken from now on never pass. */
+        void stop() {
+            readsLeft.set(Integer.MAX_VALUE);
+        }
+
+        @Override
+        public long getAsLong() {
+            if (Thread.currentThread() instanceof ForkJoinWorkerThread && readsLeft.decrementAndGet() == 0) {
+                now += TimeUnit.DAYS.toNanos(1);
+            }
+            return now;
+        }
+    }
+
     private MvelDiagnostic singleDiagnostic(String text) {
         List<MvelDiagnostic> diagnostics = compileService.compileText(text).diagnostics();
         assertFalse(diagnostics.isEmpty());
@@ -0,0 +1,43 @@
+package com.mvel.linter.compiler;
+
+import com.mvel.linter.testing.MvelCorpusGenerator;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.mvel.linter.testing.ScalingAssert.assertScalesNoWorseThanNLogN;
+
+public class MvelCompilerScalingTest {
+    // The budget would cut large compiles short and flatten the curve.
+    private final MvelCompileService compileService = new MvelCompileService(4, TimeUnit.MINUTES.toMillis(10));
+
+    @After
+    public void tearDown() {
+        compileService.dispose();
+    }
+
+    @Test(timeout = 120_000)
+    public void scanningTemplatesScalesNoWorseThanNLogN() {
+        assertScalesNoWorseThanNLogN("TemplateCodeBlockScanner", 12_500, 4,
+                lines -> MvelCorpusGenerator.template(42, lines), TemplateCodeBlockScanner::scan);
+    }
+
+    @Test(timeout = 300_000)
+    public void compilingScriptsScalesNoWorseThanNLogN() {
+        assertScalesNoWorseThanNLogN("MvelCompileService (script)", 2_500, 3,
+                lines -> MvelCorpusGenerator.script(42, lines), this::compileCold);
+    }
+
+    @Test(timeout = 300_000)
+    public void compilingTemplatesScalesNoWorseThanNLogN() {
+        assertScalesNoWorseThanNLogN("MvelCompileService (template)", 2_500, 3,
+                lines -> MvelCorpusGenerator.template(42, lines), this::compileCold);
+    }
+
+    /** Every run compiles, instead of finding the fragments compiled by the warm-up runs in the cache. */
+    private void compileCold(String text) {
+        compileService.clearFragmentCache();
+        compileService.compileText(text);
+    }
+}
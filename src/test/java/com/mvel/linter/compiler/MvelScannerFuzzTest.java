@@ -0,0 +1,33 @@
+package com.mvel.linter.compiler;
+
+import org.junit.Test;
+
+import static com.mvel.linter.testing.PerformanceFuzzer.assertNoSuperlinearInputs;
+import static com.mvel.linter.testing.PerformanceFuzzer.assertRecordedInputsScale;
+
+public class MvelScannerFuzzTest {
+    private static final String SCANNER = "TemplateCodeBlockScanner.scan";
+    private static final String ANALYZER = "MvelStatementSeparatorAnalyzer.analyze";
+
+    private final MvelStatementSeparatorAnalyzer analyzer = new MvelStatementSeparatorAnalyzer();
+
+    @Test(timeout = 120_000)
+    public void recordedScannerInputsScaleNoWorseThanNLogN() {
+        assertRecordedInputsScale(SCANNER, TemplateCodeBlockScanner::scan);
+    }
+
+    @Test(timeout = 120_000)
+    public void fuzzingFindsNoSuperlinearScannerInput() {
+        assertNoSuperlinearInputs(SCANNER, TemplateCodeBlockScanner::scan, 500);
+    }
+
+    @Test(timeout = 120_000)
+    public void recordedAnalyzerInputsScaleNoWorseThanNLogN() {
+        assertRecordedInputsScale(ANALYZER, analyzer::analyze);
+    }
+
+    @Test(timeout = 120_000)
+    public void fuzzingFindsNoSuperlinearAnalyzerInput() {
+        assertNoSuperlinearInputs(ANALYZER, analyzer::analyze, 1_000);
+    }
+}
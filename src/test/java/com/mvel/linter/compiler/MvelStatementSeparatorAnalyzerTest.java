@@ -5,6 +5,7 @@ import org.junit.Test;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class MvelStatementSeparatorAnalyzerTest {
@@ -68,6 +69,37 @@ public class MvelStatementSeparatorAnalyzerTest {
         assertTrue(analyzer.analyze(text).isEmpty());
     }
 
+    @Test
+    public void splitsFragmentIntoTopLevelStatements() {
+        String content = "\n"
+                + "    import java.util.List;\n"
+                + "    data = [\n"
+                + "        \"a\": 1\n"
+                + "    ];\n"
+                + "    if (x) {\n"
+                + "        y = 1;\n"
+                + "    } else {\n"
+                + "        y = 2;\n"
+                + "    }\n"
+                + "    z = 3;\n";
+
+        List<MvelStatementSeparatorAnalyzer.Statement> statements = analyzer.splitStatements(content);
+
+        assertEquals(4, statements.size());
+        assertEquals("import java.util.List;", statementText(content, statements.get(0)));
+        assertTrue(statements.get(0).importDeclaration());
+        assertEquals(content.substring(content.indexOf("data"), content.indexOf("];") + 2),
+                statementText(content, statements.get(1)));
+        assertEquals(content.substring(content.indexOf("if"), content.indexOf("    z") - 1),
+                statementText(content, statements.get(2)));
+        assertEquals("z = 3;", statementText(content, statements.get(3)));
+        assertFalse(statements.get(3).importDeclaration());
+    }
+
+    private String statementText(String content, MvelStatementSeparatorAnalyzer.Statement statement) {
+        return content.substring(statement.startOffset(), statement.endOffset());
+    }
+
     private MvelDiagnostic singleDiagnostic(String text) {
         List<MvelDiagnostic> diagnostics = analyzer.analyze(text);
         assertEquals(1, diagnostics.size());
@@ -0,0 +1,35 @@
+package com.mvel.linter.lexer;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.testFramework.LexerTestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Restarts the lexer the way the editor highlighter does after an edit: at every token in the start state, with the
+ * start state.
+ */
+public class MvelLexerRestartTest extends LexerTestCase {
+    public void testRestartsInsideTemplateBodies() {
+        checkCorrectRestart("a = 1;\n@comment{ if (a) { b = 'c'; } }\n@code{ if (x) { y = 1; } }\n"
+                + "@if{ {1, 2} }z@else{}@{ [a : b] }@end{}\n/* c */ d");
+    }
+
+    public void testRestartsInRealWorldFiles() throws IOException {
+        for (String fileName : new String[]{"cont.mvel", "ghor.mvel", "test.mvel"}) {
+            checkCorrectRestart(Files.readString(Path.of(System.getProperty("user.dir"), fileName)));
+        }
+    }
+
+    @Override
+    protected Lexer createLexer() {
+        return new MvelLexer();
+    }
+
+    @Override
+    protected String getDirPath() {
+        return "";
+    }
+}
@@ -0,0 +1,34 @@
+package com.mvel.linter.lexer;
+
+import com.mvel.linter.testing.MvelCorpusGenerator;
+import org.junit.Test;
+
+import static com.mvel.linter.testing.ScalingAssert.assertScalesNoWorseThanNLogN;
+
+public class MvelLexerScalingTest {
+    @Test(timeout = 120_000)
+    public void lexingScriptsScalesNoWorseThanNLogN() {
+        assertScalesNoWorseThanNLogN("MvelLexer (script)", 12_500, 4,
+                lines -> MvelCorpusGenerator.script(42, lines), MvelLexerScalingTest::lexAll);
+    }
+
+    @Test(timeout = 120_000)
+    public void lexingTemplatesScalesNoWorseThanNLogN() {
+        assertScalesNoWorseThanNLogN("MvelLexer (template)", 12_500, 4,
+                lines -> MvelCorpusGenerator.template(42, lines), MvelLexerScalingTest::lexAll);
+    }
+
+    @Test(timeout = 120_000)
+    public void buildingTokenStreamsScalesNoWorseThanNLogN() {
+        assertScalesNoWorseThanNLogN("MvelTokenStream", 12_500, 4,
+                lines -> MvelCorpusGenerator.template(42, lines), MvelTokenStream::build);
+    }
+
+    private static void lexAll(String text) {
+        MvelLexer lexer = new MvelLexer();
+        lexer.start(text, 0, text.length(), 0);
+        while (lexer.getTokenType() != null) {
+            lexer.advance();
+        }
+    }
+}
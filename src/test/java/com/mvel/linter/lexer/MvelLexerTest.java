@@ -2,13 +2,20 @@ package com.mvel.linter.lexer;
 
 import com.intellij.psi.TokenType;
 import com.intellij.psi.tree.IElementType;
+import com.sun.management.ThreadMXBean;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 public class MvelLexerTest {
     @Test
@@ -58,4 +65,229 @@ public class MvelLexerTest {
         assertEquals(MvelTokenTypes.IDENTIFIER, tokens.get(2));
         assertEquals(MvelTokenTypes.RBRACE, tokens.get(3));
     }
+
+    @Test
+    public void lexesUnterminatedQuoteAndCommentLikeBeforeTheRewrite() {
+        MvelLexer lexer = new MvelLexer();
+        String text = "'abc /* x";
+        lexer.start(text, 0, text.length(), 0);
+
+        List<IElementType> tokens = new ArrayList<>();
+        while (lexer.getTokenType() != null) {
+            tokens.add(lexer.getTokenType());
+            lexer.advance();
+        }
+
+        assertEquals(List.of(
+                TokenType.BAD_CHARACTER,
+                MvelTokenTypes.IDENTIFIER,
+                MvelTokenTypes.WHITESPACE,
+                MvelTokenTypes.DIV,
+                MvelTokenTypes.MUL,
+                MvelTokenTypes.WHITESPACE,
+                MvelTokenTypes.IDENTIFIER
+        ), tokens);
+    }
+
+    @Test
+    public void keepsExponentOnlyWhenDigitsFollow() {
+        MvelLexer lexer = new MvelLexer();
+        String text = "1.5e+3f 2e .5";
+        lexer.start(text, 0, text.length(), 0);
+
+        List<String> numbers = new ArrayList<>();
+        while (lexer.getTokenType() != null) {
+            if (lexer.getTokenType() == MvelTokenTypes.NUMBER_LITERAL) {
+                numbers.add(text.substring(lexer.getTokenStart(), lexer.getTokenEnd()));
+            }
+            lexer.advance();
+        }
+
+        assertEquals(List.of("1.5e+3f", "2", ".5"), numbers);
+    }
+
+    @Test
+    public void tracksTemplateBodyContextInLexerState() {
+        MvelLexer lexer = new MvelLexer();
+        String text = "@{ a { b } }x@code{ if (y) { z(); } }";
+        lexer.start(text, 0, text.length(), 0);
+
+        int orbInnerBraceState = -1;
+        int stateAfterOrb = -1;
+        int codeInnerBraceState = -1;
+        while (lexer.getTokenType() != null) {
+            if (lexer.getTokenStart() == text.indexOf('b')) {
+                orbInnerBraceState = lexer.getState();
+            } else if (lexer.getTokenStart() == text.indexOf('x')) {
+                stateAfterOrb = lexer.getState();
+            } else if (lexer.getTokenStart() == text.indexOf('z')) {
+                codeInnerBraceState = lexer.getState();
+            }
+            lexer.advance();
+        }
+
+        assertEquals(MvelLexer.packState(MvelLexer.CONTEXT_EXPRESSION, 2), orbInnerBraceState);
+        assertEquals(0, stateAfterOrb);
+        assertEquals(MvelLexer.packState(MvelLexer.CONTEXT_CODE, 2), codeInnerBraceState);
+    }
+
+    @Test
+    public void lexesTemplateCommentBodyAsSingleOpaqueToken() {
+        String text = "@comment{ if (x) { '}' } // }\n y }z";
+        List<IElementType> tokens = lexTypes(text);
+
+        assertEquals(List.of(
+                MvelTokenTypes.TEMPLATE_COMMENT,
+                MvelTokenTypes.LBRACE,
+                MvelTokenTypes.TEMPLATE_COMMENT_BODY,
+                MvelTokenTypes.RBRACE,
+                MvelTokenTypes.IDENTIFIER
+        ), tokens);
+        assertEquals(List.of(MvelTokenTypes.TEMPLATE_COMMENT, MvelTokenTypes.LBRACE, MvelTokenTypes.RBRACE),
+                lexTypes("@comment{}"));
+        assertEquals(List.of(MvelTokenTypes.TEMPLATE_COMMENT, MvelTokenTypes.LBRACE, MvelTokenTypes.TEMPLATE_COMMENT_BODY),
+                lexTypes("@comment{ never { closed }"));
+    }
+
+    @Test
+    public void restartingFromAnyTokenStateReproducesTheSameTokens() throws Exception {
+        String text = Files.readString(Path.of(System.getProperty("user.dir"), "cont.mvel"));
+        List<int[]> fullRun = lexWithStates(text, 0, 0);
+
+        for (int index = 0; index < fullRun.size(); index += 97) {
+            int[] restartToken = fullRun.get(index);
+            List<int[]> restartedRun = lexWithStates(text, restartToken[0], restartToken[3]);
+            List<int[]> expected = fullRun.subList(index, fullRun.size());
+
+            assertEquals(expected.size(), restartedRun.size());
+            for (int tokenIndex = 0; tokenIndex < expected.size(); tokenIndex++) {
+                assertArrayEquals(expected.get(tokenIndex), restartedRun.get(tokenIndex));
+            }
+        }
+    }
+
+    @Test
+    public void restartingWithTheStartStateAtEveryRestartableTokenReproducesTheSameTokens() throws Exception {
+        // What the editor highlighter does after an edit: it keeps no token states, so it restarts at a token flagged
+        // restartable with the start state.
+        String text = Files.readString(Path.of(System.getProperty("user.dir"), "ghor.mvel"))
+                + "@comment{ if (a) { b = 'c'; } }@code{ if (x) { y = 1; } }@if{ {1, 2} }z@end{}";
+        MvelLexer lexer = new MvelLexer();
+        List<int[]> fullRun = lexWithStates(text, 0, lexer.getStartState());
+
+        int restarts = 0;
+        for (int index = 0; index < fullRun.size(); index++) {
+            int[] restartToken = fullRun.get(index);
+            if (!lexer.isRestartableState(restartToken[3])) {
+                continue;
+            }
+            restarts++;
+            List<int[]> restartedRun = lexWithStates(text, restartToken[0], lexer.getStartState());
+            List<int[]> expected = fullRun.subList(index, fullRun.size());
+
+            assertEquals(expected.size(), restartedRun.size());
+            for (int tokenIndex = 0; tokenIndex < expected.size(); tokenIndex++) {
+                assertArrayEquals(expected.get(tokenIndex), restartedRun.get(tokenIndex));
+            }
+        }
+        assertTrue(restarts > 1);
+        assertFalse(lexer.isRestartableState(MvelLexer.packState(MvelLexer.CONTEXT_COMMENT, 1)));
+    }
+
+    @Test(timeout = 10_000)
+    public void lexesTenMegabyteStringLiteralAsSingleToken() {
+        String text = "x = \"" + "SELECT col, \\\"quoted\\\" ".repeat(400_000) + "\";";
+        List<IElementType> tokens = lexTypes(text);
+
+        assertEquals(List.of(
+                MvelTokenTypes.IDENTIFIER,
+                MvelTokenTypes.WHITESPACE,
+                MvelTokenTypes.ASSIGN,
+                MvelTokenTypes.WHITESPACE,
+                MvelTokenTypes.STRING_LITERAL,
+                MvelTokenTypes.SEMICOLON
+        ), tokens);
+    }
+
+    @Test(timeout = 10_000)
+    public void lexesTenMegabyteBlockCommentAsSingleToken() {
+        String text = "/*" + "disabled { logic } * / \n".repeat(420_000) + "*/x";
+        List<IElementType> tokens = lexTypes(text);
+
+        assertEquals(List.of(MvelTokenTypes.COMMENT, MvelTokenTypes.IDENTIFIER), tokens);
+    }
+
+    @Test(timeout = 10_000)
+    public void unterminatedLiteralsAndCommentsStayLinear() {
+        // Every escaped quote and every `/*` would otherwise trigger a fresh scan to the end of the buffer.
+        String text = "\"" + "a\\\"".repeat(500_000) + "'" + "b\\'".repeat(500_000) + "/* c ".repeat(500_000);
+        List<IElementType> tokens = lexTypes(text);
+
+        assertEquals(TokenType.BAD_CHARACTER, tokens.get(0));
+        assertEquals(MvelTokenTypes.MUL, tokens.get(tokens.size() - 4));
+    }
+
+    @Test
+    public void lexingAllocatesNothingPerToken() throws Exception {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+        ThreadMXBean allocationBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled());
+
+        String text = Files.readString(Path.of(System.getProperty("user.dir"), "cont.mvel"));
+        MvelLexer lexer = new MvelLexer();
+        for (int warmup = 0; warmup < 20; warmup++) {
+            countTokens(lexer, text);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        long tokens = 0;
+        for (int run = 0; run < 200; run++) {
+            tokens += countTokens(lexer, text);
+        }
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+        double bytesPerToken = (double) allocated / tokens;
+        // A single per-token object would cost at least 16 bytes; the slack only covers measurement noise.
+        assertTrue("bytes/token = " + bytesPerToken, bytesPerToken < 0.05);
+    }
+
+    private static int countTokens(MvelLexer lexer, String text) {
+        lexer.start(text, 0, text.length(), 0);
+        int count = 0;
+        while (lexer.getTokenType() != null) {
+            count++;
+            lexer.advance();
+        }
+        return count;
+    }
+
+    private static List<IElementType> lexTypes(String text) {
+        MvelLexer lexer = new MvelLexer();
+        lexer.start(text, 0, text.length(), 0);
+
+        List<IElementType> tokens = new ArrayList<>();
+        while (lexer.getTokenType() != null) {
+            tokens.add(lexer.getTokenType());
+            lexer.advance();
+        }
+        return tokens;
+    }
+
+    private static List<int[]> lexWithStates(String text, int startOffset, int initialState) {
+        MvelLexer lexer = new MvelLexer();
+        lexer.start(text, startOffset, text.length(), initialState);
+
+        List<int[]> tokens = new ArrayList<>();
+        while (lexer.getTokenType() != null) {
+            tokens.add(new int[]{
+                    lexer.getTokenStart(),
+                    lexer.getTokenEnd(),
+                    lexer.getTokenType().getIndex(),
+                    lexer.getState()
+            });
+            lexer.advance();
+        }
+        return tokens;
+    }
 }
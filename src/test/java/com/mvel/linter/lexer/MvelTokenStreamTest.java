@@ -0,0 +1,73 @@
+package com.mvel.linter.lexer;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MvelTokenStreamTest {
+    @Test
+    public void matchesLexerOutputForCorpusFile() throws Exception {
+        String text = Files.readString(Path.of(System.getProperty("user.dir"), "cont.mvel"));
+        MvelTokenStream tokens = MvelTokenStream.build(text);
+
+        MvelLexer lexer = new MvelLexer();
+        lexer.start(text, 0, text.length(), 0);
+        int index = 0;
+        while (lexer.getTokenType() != null) {
+            assertEquals(lexer.getTokenType(), tokens.getType(index));
+            assertEquals(lexer.getTokenStart(), tokens.getStart(index));
+            assertEquals(lexer.getTokenEnd(), tokens.getEnd(index));
+            index++;
+            lexer.advance();
+        }
+        assertEquals(index, tokens.size());
+    }
+
+    @Test
+    public void sliceOnTokenBoundariesSharesOffsetsRelativeToRange() {
+        String text = "@code{ total = price * 2; }";
+        MvelTokenStream tokens = MvelTokenStream.build(text);
+        int contentStart = text.indexOf('{') + 1;
+        int contentEnd = text.lastIndexOf('}');
+
+        MvelTokenStream slice = tokens.slice(contentStart, contentEnd);
+
+        MvelTokenStream standalone = MvelTokenStream.build(text.substring(contentStart, contentEnd));
+        assertEquals(standalone.size(), slice.size());
+        for (int index = 0; index < slice.size(); index++) {
+            assertEquals(standalone.getType(index), slice.getType(index));
+            assertEquals(standalone.getStart(index), slice.getStart(index));
+            assertEquals(standalone.getTokenText(index), slice.getTokenText(index));
+        }
+        assertEquals(slice.size(), slice.indexAtOrAfter(contentEnd - contentStart));
+    }
+
+    @Test
+    public void sliceInsideTokenLexesTheRangeOnItsOwn() {
+        String text = "alpha beta";
+        MvelTokenStream slice = MvelTokenStream.build(text).slice(2, 8);
+
+        assertEquals(3, slice.size());
+        assertEquals("pha", slice.getTokenText(0));
+        assertEquals(MvelTokenTypes.IDENTIFIER, slice.getType(2));
+        assertEquals(0, slice.getStart(0));
+    }
+
+    @Test
+    public void skipsWhitespaceAndCommentsWhenLookingForSignificantTokens() {
+        String text = "def /* c */ helper // x\n(";
+        MvelTokenStream tokens = MvelTokenStream.build(text);
+        int helper = tokens.indexAtOrAfter(text.indexOf("helper"));
+
+        assertTrue(tokens.tokenTextEquals(helper, "helper"));
+        assertFalse(tokens.tokenTextEquals(helper, "help"));
+        assertEquals(MvelTokenTypes.DEF, tokens.getTypeOrNull(tokens.previousSignificant(helper)));
+        assertEquals(MvelTokenTypes.LPAREN, tokens.getTypeOrNull(tokens.nextSignificant(helper, tokens.size())));
+        assertEquals(-1, tokens.nextSignificant(helper, helper + 1));
+    }
+}
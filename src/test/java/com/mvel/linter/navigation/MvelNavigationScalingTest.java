@@ -0,0 +1,28 @@
+package com.mvel.linter.navigation;
+
+import com.mvel.linter.testing.MvelCorpusGenerator;
+import org.junit.Test;
+
+import static com.mvel.linter.testing.ScalingAssert.assertScalesNoWorseThanNLogN;
+import static org.junit.Assert.assertNotNull;
+
+public class MvelNavigationScalingTest {
+    @Test(timeout = 120_000)
+    public void resolvingVariablesAtEndOfFileScalesNoWorseThanNLogN() {
+        assertScalesNoWorseThanNLogN("MvelNavigationResolver (variable)", 12_500, 4,
+                lines -> MvelCorpusGenerator.script(42, lines),
+                text -> assertNotNull(MvelNavigationResolver.findLocalVariableDeclarationOffset(text, "result", text.length())));
+    }
+
+    @Test(timeout = 120_000)
+    public void resolvingFunctionsAtEndOfFileScalesNoWorseThanNLogN() {
+        assertScalesNoWorseThanNLogN("MvelNavigationResolver (function)", 12_500, 4,
+                lines -> MvelCorpusGenerator.template(42, lines),
+                text -> assertNotNull(MvelNavigationResolver.findLocalFunctionDeclarationOffset(text, firstFunctionName(text), text.length())));
+    }
+
+    private static String firstFunctionName(String text) {
+        int nameStart = text.indexOf("def ") + "def ".length();
+        return text.substring(nameStart, text.indexOf('(', nameStart));
+    }
+}
@@ -0,0 +1,24 @@
+package com.mvel.linter.navigation;
+
+import org.junit.Test;
+
+import java.util.function.Consumer;
+
+import static com.mvel.linter.testing.PerformanceFuzzer.assertNoSuperlinearInputs;
+import static com.mvel.linter.testing.PerformanceFuzzer.assertRecordedInputsScale;
+
+public class MvelNavigationSupportFuzzTest {
+    private static final String ARGUMENT_COUNT = "MvelNavigationSupport.inferArgumentCount";
+
+    private final Consumer<String> entryPoint = arguments -> MvelNavigationSupport.inferArgumentCount("(" + arguments, 0);
+
+    @Test(timeout = 120_000)
+    public void recordedInputsScaleNoWorseThanNLogN() {
+        assertRecordedInputsScale(ARGUMENT_COUNT, entryPoint);
+    }
+
+    @Test(timeout = 120_000)
+    public void fuzzingFindsNoSuperlinearInput() {
+        assertNoSuperlinearInputs(ARGUMENT_COUNT, entryPoint, 200);
+    }
+}
@@ -0,0 +1,170 @@
+package com.mvel.linter.parser;
+
+import com.intellij.lang.PsiBuilder;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import com.mvel.linter.lexer.MvelTokenStream;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal {@link PsiBuilder} over a {@link MvelTokenStream} for testing and benchmarking {@link MvelParser} without
+ * an IDE. Markers are counted, and only the requested element types are listed as {@link Element}s, so a benchmark
+ * measures the parser's own token and marker work. Whitespace and comments are skipped the way the platform builder
+ * does. Unsupported builder calls fail loudly so that parser changes relying on them are noticed.
+ */
+public final class LightPsiBuilder implements InvocationHandler {
+    private final CharSequence text;
+    private final MvelTokenStream tokens;
+    private final TokenSet recordedTypes;
+    private final List<Element> elements = new ArrayList<>();
+    private int index;
+    private int consumedEnd;
+    private int completedMarkers;
+    private int errors;
+
+    private LightPsiBuilder(CharSequence text, TokenSet recordedTypes) {
+        this.text = text;
+        this.tokens = MvelTokenStream.build(text);
+        this.recordedTypes = recordedTypes;
+        skipInsignificant();
+    }
+
+    public static LightPsiBuilder create(CharSequence text) {
+        return new LightPsiBuilder(text, null);
+    }
+
+    /**
+     * Builder that also lists the completed markers of {@code recordedTypes}, in completion order.
+     */
+    public static LightPsiBuilder recording(CharSequence text, TokenSet recordedTypes) {
+        return new LightPsiBuilder(text, recordedTypes);
+    }
+
+    /**
+     * Completed marker, from the start of its first token to the end of its last consumed token.
+     */
+    public record Element(IElementType type, int startOffset, int endOffset) {
+    }
+
+    public PsiBuilder asPsiBuilder() {
+        return (PsiBuilder) Proxy.newProxyInstance(
+                PsiBuilder.class.getClassLoader(),
+                new Class<?>[]{PsiBuilder.class},
+                this
+        );
+    }
+
+    public int completedMarkers() {
+        return completedMarkers;
+    }
+
+    public int errors() {
+        return errors;
+    }
+
+    public List<Element> elements() {
+        return elements;
+    }
+
+    public MvelTokenStream tokens() {
+        return tokens;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "getTokenType" -> eof() ? null : tokens.getType(index);
+            case "advanceLexer" -> {
+                if (!eof()) {
+                    consumedEnd = tokens.getEnd(index);
+                    index++;
+                    skipInsignificant();
+                }
+                yield null;
+            }
+            case "eof" -> eof();
+            case "mark" -> newMarker(index, consumedEnd);
+            case "getCurrentOffset" -> eof() ? text.length() : tokens.getStart(index);
+            case "getTokenText" -> eof() ? null : tokens.getTokenText(index);
+            case "lookAhead" -> lookAhead((Integer) args[0]);
+            case "rawLookup" -> {
+                int rawIndex = index + (Integer) args[0];
+                yield rawIndex >= 0 && rawIndex < tokens.size() ? tokens.getType(rawIndex) : null;
+            }
+            case "rawTokenIndex" -> index;
+            case "error" -> {
+                errors++;
+                yield null;
+            }
+            case "getOriginalText" -> text;
+            case "getTreeBuilt", "getLatestDoneMarker", "setDebugMode", "enforceCommentTokens" -> null;
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> "LightPsiBuilder@" + index;
+            default -> throw new UnsupportedOperationException("PsiBuilder." + method.getName());
+        };
+    }
+
+    private boolean eof() {
+        return index >= tokens.size();
+    }
+
+    private void skipInsignificant() {
+        while (index < tokens.size() && !MvelTokenStream.isSignificant(tokens.getType(index))) {
+            index++;
+        }
+    }
+
+    private IElementType lookAhead(int steps) {
+        int current = index;
+        for (int step = 0; step < steps && current < tokens.size(); step++) {
+            current++;
+            while (current < tokens.size() && !MvelTokenStream.isSignificant(tokens.getType(current))) {
+                current++;
+            }
+        }
+        return current < tokens.size() ? tokens.getType(current) : null;
+    }
+
+    private PsiBuilder.Marker newMarker(int startIndex, int consumedEndAtStart) {
+        InvocationHandler handler = (proxy, method, args) -> switch (method.getName()) {
+            case "done", "collapse" -> {
+                completedMarkers++;
+                if (recordedTypes != null && recordedTypes.contains((IElementType) args[0])) {
+                    int startOffset = startIndex < tokens.size() ? tokens.getStart(startIndex) : text.length();
+                    elements.add(new Element((IElementType) args[0], startOffset, Math.max(startOffset, consumedEnd)));
+                }
+                yield null;
+            }
+            case "doneBefore" -> {
+                completedMarkers++;
+                yield null;
+            }
+            case "error", "errorBefore" -> {
+                errors++;
+                yield null;
+            }
+            case "precede" -> newMarker(startIndex, consumedEndAtStart);
+            case "rollbackTo" -> {
+                index = startIndex;
+                consumedEnd = consumedEndAtStart;
+                yield null;
+            }
+            case "drop", "setCustomEdgeTokenBinders" -> null;
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> "LightMarker@" + startIndex;
+            default -> throw new UnsupportedOperationException("PsiBuilder.Marker." + method.getName());
+        };
+        return (PsiBuilder.Marker) Proxy.newProxyInstance(
+                PsiBuilder.class.getClassLoader(),
+                new Class<?>[]{PsiBuilder.Marker.class},
+                handler
+        );
+    }
+}
@@ -0,0 +1,26 @@
+package com.mvel.linter.parser;
+
+import org.junit.Test;
+
+import java.util.function.Consumer;
+
+import static com.mvel.linter.testing.PerformanceFuzzer.assertNoSuperlinearInputs;
+import static com.mvel.linter.testing.PerformanceFuzzer.assertRecordedInputsScale;
+
+public class MvelParserFuzzTest {
+    private static final String PARSER = "MvelParser.parse";
+
+    // Includes lexing and a proxy call per builder operation, so the per-char cost is high but constant.
+    private final Consumer<String> entryPoint =
+            text -> new MvelParser().parse(MvelParserDefinition.FILE, LightPsiBuilder.create(text).asPsiBuilder());
+
+    @Test(timeout = 120_000)
+    public void recordedInputsScaleNoWorseThanNLogN() {
+        assertRecordedInputsScale(PARSER, entryPoint);
+    }
+
+    @Test(timeout = 120_000)
+    public void fuzzingFindsNoSuperlinearInput() {
+        assertNoSuperlinearInputs(PARSER, entryPoint, 10_000);
+    }
+}
@@ -0,0 +1,24 @@
+package com.mvel.linter.parser;
+
+import com.mvel.linter.testing.MvelCorpusGenerator;
+import org.junit.Test;
+
+import static com.mvel.linter.testing.ScalingAssert.assertScalesNoWorseThanNLogN;
+
+public class MvelParserScalingTest {
+    @Test(timeout = 120_000)
+    public void parsingScriptsScalesNoWorseThanNLogN() {
+        assertScalesNoWorseThanNLogN("MvelParser (script)", 12_500, 3,
+                lines -> MvelCorpusGenerator.script(42, lines), MvelParserScalingTest::parse);
+    }
+
+    @Test(timeout = 120_000)
+    public void parsingTemplatesScalesNoWorseThanNLogN() {
+        assertScalesNoWorseThanNLogN("MvelParser (template)", 12_500, 3,
+                lines -> MvelCorpusGenerator.template(42, lines), MvelParserScalingTest::parse);
+    }
+
+    private static void parse(String text) {
+        new MvelParser().parse(MvelParserDefinition.FILE, LightPsiBuilder.create(text).asPsiBuilder());
+    }
+}
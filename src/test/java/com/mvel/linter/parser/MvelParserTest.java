@@ -0,0 +1,326 @@
+package com.mvel.linter.parser;
+
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import com.mvel.linter.lexer.MvelTokenStream;
+import com.mvel.linter.lexer.MvelTokenTypes;
+import com.mvel.linter.testing.MvelCorpusGenerator;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MvelParserTest {
+    // Far below the default thread stack; the old recursive parser needed several frames per nesting level.
+    private static final long SMALL_STACK_BYTES = 256 * 1024;
+    private static final TokenSet TEMPLATE_BLOCKS = MvelTypes.TEMPLATE_TAGS;
+    private static final TokenSet STATEMENTS = TokenSet.orSet(MvelTypes.TEMPLATE_TAGS, TokenSet.create(
+            MvelTypes.FUNCTION_DEFINITION, MvelTypes.IF_STATEMENT, MvelTypes.ASSIGNMENT));
+    private static final TokenSet FUNCTION_BODIES = TokenSet.create(MvelTypes.FUNCTION_BODY);
+
+    @Test(timeout = 300_000)
+    public void parsesFiveHundredThousandLineTemplateToTheEnd() {
+        String text = MvelCorpusGenerator.template(7, 500_000);
+        LightPsiBuilder builder = parseOnSmallStack(text, TEMPLATE_BLOCKS);
+
+        MvelTokenStream tokens = builder.tokens();
+        Map<Integer, Integer> blockEnds = new HashMap<>();
+        for (LightPsiBuilder.Element element : builder.elements()) {
+            blockEnds.put(element.startOffset(), element.endOffset());
+        }
+        int tags = 0;
+        for (int index = 0; index < tokens.size(); index++) {
+            IElementType type = tokens.getType(index);
+            if (type == MvelTokenTypes.AT || isTemplateTag(type)) {
+                tags++;
+            }
+            if (type == MvelTokenTypes.TEMPLATE_CODE) {
+                assertEquals(Integer.valueOf(matchingBraceEnd(tokens, index)), blockEnds.get(tokens.getStart(index)));
+            }
+        }
+        assertEquals(tags, builder.elements().size());
+        assertEquals(text.stripTrailing().length(), builder.elements().get(builder.elements().size() - 1).endOffset());
+    }
+
+    @Test(timeout = 60_000)
+    public void parsesDeepNestingInConstantStack() {
+        int depth = 200_000;
+        for (String text : List.of(
+                "(".repeat(depth) + "a" + ")".repeat(depth),
+                "[".repeat(depth) + "]".repeat(depth),
+                "{".repeat(depth) + "}".repeat(depth),
+                "@{".repeat(depth) + "}".repeat(depth),
+                "if (a) ".repeat(depth) + "b = 1",
+                "a = ".repeat(depth) + "1",
+                "f(".repeat(depth)
+        )) {
+            LightPsiBuilder builder = parseOnSmallStack(text, TokenSet.orSet(MvelTypes.EXPRESSIONS, STATEMENTS,
+                    TokenSet.create(MvelTypes.BLOCK_STATEMENT)));
+            List<LightPsiBuilder.Element> elements = builder.elements();
+            LightPsiBuilder.Element outermost = elements.get(elements.size() - 1);
+            assertEquals(text.substring(0, 12), 0, outermost.startOffset());
+            assertEquals(text.substring(0, 12), text.length(), outermost.endOffset());
+        }
+    }
+
+    @Test
+    public void keepsStatementBlocksInsideTheirFunction() {
+        String text = "def f(a, b) {\n  if (a) { x = 1; return x; } else { return b; }\n  return 2;\n}\ny = f(1, 2);";
+        String body = text.substring(text.indexOf('{'), text.indexOf("\ny = "));
+        List<LightPsiBuilder.Element> elements = parse(text, TokenSet.orSet(STATEMENTS, FUNCTION_BODIES));
+
+        assertEquals(List.of(
+                element(MvelTypes.FUNCTION_BODY, text, body),
+                element(MvelTypes.FUNCTION_DEFINITION, text, text.substring(0, text.indexOf("\ny = "))),
+                element(MvelTypes.ASSIGNMENT, text, "y = f(1, 2)")
+        ), elements);
+
+        LightPsiBuilder alone = LightPsiBuilder.recording(body, STATEMENTS);
+        new MvelParser().parse(MvelTypes.FUNCTION_BODY, alone.asPsiBuilder());
+        assertEquals(List.of(
+                element(MvelTypes.ASSIGNMENT, body, "x = 1"),
+                element(MvelTypes.IF_STATEMENT, body, "if (a) { x = 1; return x; } else { return b; }")
+        ), alone.elements());
+    }
+
+    @Test
+    public void parsesFunctionBodiesInlineUnlessSelfContained() {
+        String text = "def f() {\n  def g() { return 1; }\n  a = (1;\n}\nb = 2";
+        List<LightPsiBuilder.Element> elements = parse(text, TokenSet.orSet(STATEMENTS, FUNCTION_BODIES));
+
+        assertEquals(List.of(
+                element(MvelTypes.FUNCTION_BODY, text, "{ return 1; }"),
+                element(MvelTypes.FUNCTION_DEFINITION, text, "def g() { return 1; }"),
+                element(MvelTypes.ASSIGNMENT, text, "a = (1;"),
+                element(MvelTypes.FUNCTION_DEFINITION, text, text.substring(0, text.indexOf("\nb = "))),
+                element(MvelTypes.ASSIGNMENT, text, "b = 2")
+        ), elements);
+    }
+
+    @Test
+    public void parsesDeclarationsOfTheStubIndex() {
+        String text = "import java.util.*;\nimport static a.b.C.max;\nimport = 1;\n@declare{'row'}<td/>@end{}";
+        List<LightPsiBuilder.Element> elements = parse(text, TokenSet.create(
+                MvelTypes.IMPORT, MvelTypes.ASSIGNMENT, MvelTypes.DECLARE_BLOCK, MvelTypes.TEMPLATE_BLOCK));
+
+        assertEquals(List.of(
+                element(MvelTypes.IMPORT, text, "import java.util.*"),
+                element(MvelTypes.IMPORT, text, "import static a.b.C.max"),
+                element(MvelTypes.ASSIGNMENT, text, "import = 1"),
+                element(MvelTypes.DECLARE_BLOCK, text, "@declare{'row'}"),
+                element(MvelTypes.TEMPLATE_BLOCK, text, "@end{}")
+        ), elements);
+    }
+
+    @Test
+    public void parsesExpressionsByPrecedence() {
+        String text = "a || b && c == d + e * !f;\ng ? h : i;\nj(k).?l[0];\nm += n++;\n(o in p if q);\n[1, 2];";
+        List<LightPsiBuilder.Element> elements = parse(text, MvelTypes.EXPRESSIONS);
+
+        assertEquals(List.of(
+                element(MvelTypes.UNARY_EXPRESSION, text, "!f"),
+                element(MvelTypes.BINARY_EXPRESSION, text, "e * !f"),
+                element(MvelTypes.BINARY_EXPRESSION, text, "d + e * !f"),
+                element(MvelTypes.BINARY_EXPRESSION, text, "c == d + e * !f"),
+                element(MvelTypes.BINARY_EXPRESSION, text, "b && c == d + e * !f"),
+                element(MvelTypes.BINARY_EXPRESSION, text, "a || b && c == d + e * !f"),
+                element(MvelTypes.TERNARY_EXPRESSION, text, "g ? h : i"),
+                element(MvelTypes.CALL_EXPRESSION, text, "j(k)"),
+                element(MvelTypes.NULL_SAFE_REFERENCE_EXPRESSION, text, "j(k).?l"),
+                element(MvelTypes.INDEX_EXPRESSION, text, "j(k).?l[0]"),
+                element(MvelTypes.UNARY_EXPRESSION, text, "n++"),
+                element(MvelTypes.PROJECTION, text, "(o in p if q)"),
+                element(MvelTypes.INLINE_COLLECTION, text, "[1, 2]")
+        ), elements);
+    }
+
+    @Test
+    public void nestsSuffixChainsWithoutWrapperNodes() {
+        String text = "total = order.items.size() * price + (discount == null ? 0 : discount.value);";
+        List<LightPsiBuilder.Element> elements = parse(text, MvelTypes.EXPRESSIONS);
+
+        assertEquals(List.of(
+                element(MvelTypes.REFERENCE_EXPRESSION, text, "order.items"),
+                element(MvelTypes.REFERENCE_EXPRESSION, text, "order.items.size"),
+                element(MvelTypes.CALL_EXPRESSION, text, "order.items.size()"),
+                element(MvelTypes.BINARY_EXPRESSION, text, "order.items.size() * price"),
+                element(MvelTypes.BINARY_EXPRESSION, text, "discount == null"),
+                element(MvelTypes.REFERENCE_EXPRESSION, text, "discount.value"),
+                element(MvelTypes.TERNARY_EXPRESSION, text, "discount == null ? 0 : discount.value"),
+                element(MvelTypes.PARENTHESIZED_EXPRESSION, text, "(discount == null ? 0 : discount.value)"),
+                element(MvelTypes.BINARY_EXPRESSION, text, text.substring(text.indexOf("order"), text.indexOf(';')))
+        ), elements);
+    }
+
+    @Test
+    public void givesTagsWithTheirOwnPsiTheirOwnElementType() {
+        String text = "@{a}@code{b = 1;}@if{c}@foreach{x : xs}@{x}@end{}@else{}@comment{d}@end{}";
+        List<LightPsiBuilder.Element> elements = parse(text, TEMPLATE_BLOCKS);
+
+        assertEquals(List.of(
+                element(MvelTypes.ORB, text, "@{a}"),
+                element(MvelTypes.CODE_BLOCK, text, "@code{b = 1;}"),
+                element(MvelTypes.IF_TAG, text, "@if{c}"),
+                element(MvelTypes.FOREACH_TAG, text, "@foreach{x : xs}"),
+                element(MvelTypes.ORB, text, "@{x}"),
+                element(MvelTypes.TEMPLATE_BLOCK, text, "@end{}"),
+                element(MvelTypes.TEMPLATE_BLOCK, text, "@else{}"),
+                element(MvelTypes.TEMPLATE_BLOCK, text, "@comment{d}"),
+                new LightPsiBuilder.Element(MvelTypes.TEMPLATE_BLOCK, text.length() - "@end{}".length(), text.length())
+        ), elements);
+    }
+
+    @Test
+    public void keepsCodeBlockOpenUntilItsOwnClosingBrace() {
+        String text = "@code{\n  def f(row) {\n    if (row.id == empty) { return \"\"; }\n    return row.label;\n  }\n}\n@{f(row)}";
+        List<LightPsiBuilder.Element> elements = parse(text, TEMPLATE_BLOCKS);
+
+        assertEquals(List.of(
+                element(MvelTypes.CODE_BLOCK, text, text.substring(0, text.indexOf("\n@{"))),
+                element(MvelTypes.ORB, text, "@{f(row)}")
+        ), elements);
+    }
+
+    @Test
+    public void recoversFromUnclosedCallAtTheEnclosingBrace() {
+        String text = "@code{ x = foo(a, }\n@{y}";
+        List<LightPsiBuilder.Element> elements = parse(text, TEMPLATE_BLOCKS);
+
+        assertEquals(List.of(
+                element(MvelTypes.CODE_BLOCK, text, "@code{ x = foo(a, }"),
+                element(MvelTypes.ORB, text, "@{y}")
+        ), elements);
+    }
+
+    @Test
+    public void recoversFromUnclosedTagBodyAtTheNextTag() {
+        String text = "@if{x.check(\nyes@else{}no@end{}";
+        List<LightPsiBuilder.Element> elements = parse(text, TEMPLATE_BLOCKS);
+
+        assertEquals(List.of(
+                element(MvelTypes.IF_TAG, text, "@if{x.check(\nyes"),
+                element(MvelTypes.TEMPLATE_BLOCK, text, "@else{}"),
+                element(MvelTypes.TEMPLATE_BLOCK, text, "@end{}")
+        ), elements);
+    }
+
+    @Test
+    public void skipsClosersNoGroupIsWaitingFor() {
+        String text = "@code{ a = 1); b = [2]]; }\n)@{c}";
+        List<LightPsiBuilder.Element> elements = parse(text, TEMPLATE_BLOCKS);
+
+        assertEquals(List.of(
+                element(MvelTypes.CODE_BLOCK, text, "@code{ a = 1); b = [2]]; }"),
+                element(MvelTypes.ORB, text, "@{c}")
+        ), elements);
+    }
+
+    @Test
+    public void collapsesSelfContainedTemplateBodiesWithoutParsingThem() {
+        String text = "@code{\n  def f(a) { return a; }\n}\n@if{x > (1)}yes@end{}";
+        List<LightPsiBuilder.Element> elements = parse(text, TokenSet.create(
+                MvelTypes.TEMPLATE_BODY, MvelTypes.FUNCTION_DEFINITION, MvelTypes.RETURN_STATEMENT));
+
+        assertEquals(List.of(
+                element(MvelTypes.TEMPLATE_BODY, text, "{\n  def f(a) { return a; }\n}"),
+                element(MvelTypes.TEMPLATE_BODY, text, "{x > (1)}")
+        ), elements);
+    }
+
+    @Test
+    public void recognizesSelfContainedBodies() {
+        for (String body : List.of("{}", "{ a = [1, (2)]; }", "{ s = \"}\"; /* } */ }", "{\n  // }\n}")) {
+            assertTrue(body, MvelParser.isSelfContainedBody(body));
+        }
+        for (String body : List.of("", "{ a", "{ a ) }", "{ (a }", "{ @{x} }", "{ @if{x} }", "{ } x", "x {}",
+                "{ \"abc }", "{ 'a }", "{ /* }")) {
+            assertFalse(body, MvelParser.isSelfContainedBody(body));
+        }
+    }
+
+    @Test
+    public void parsesTemplateBodiesOnTheirOwnAsInsideTheFile() {
+        String template = MvelCorpusGenerator.template(11, 2_000);
+        List<LightPsiBuilder.Element> bodies = parse(template, TokenSet.create(MvelTypes.TEMPLATE_BODY));
+        assertTrue(bodies.size() > 100);
+
+        for (LightPsiBuilder.Element body : bodies) {
+            String text = template.substring(body.startOffset(), body.endOffset());
+            assertTrue(text, MvelParser.isSelfContainedBody(text));
+
+            LightPsiBuilder alone = LightPsiBuilder.recording(text, STATEMENTS);
+            new MvelParser().parse(MvelTypes.TEMPLATE_BODY, alone.asPsiBuilder());
+            // The same text as a plain block statement gives the tree the body had before it was made lazy.
+            List<LightPsiBuilder.Element> inline = parse(text, STATEMENTS);
+            assertEquals(text, inline, alone.elements());
+        }
+    }
+
+    private static List<LightPsiBuilder.Element> parse(String text, TokenSet recordedTypes) {
+        LightPsiBuilder builder = LightPsiBuilder.recording(text, recordedTypes);
+        new MvelParser().parse(MvelParserDefinition.FILE, builder.asPsiBuilder());
+        return builder.elements();
+    }
+
+    private static LightPsiBuilder parseOnSmallStack(String text, TokenSet recordedTypes) {
+        AtomicReference<LightPsiBuilder> parsed = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                LightPsiBuilder builder = LightPsiBuilder.recording(text, recordedTypes);
+                new MvelParser().parse(MvelParserDefinition.FILE, builder.asPsiBuilder());
+                parsed.set(builder);
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, "small-stack-parser", SMALL_STACK_BYTES);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Parser failed on a small stack", failure.get());
+        }
+        return parsed.get();
+    }
+
+    private static int matchingBraceEnd(MvelTokenStream tokens, int tagIndex) {
+        int depth = 0;
+        for (int index = tagIndex + 1; index < tokens.size(); index++) {
+            IElementType type = tokens.getType(index);
+            if (type == MvelTokenTypes.LBRACE) {
+                depth++;
+            } else if (type == MvelTokenTypes.RBRACE && --depth == 0) {
+                return tokens.getEnd(index);
+            }
+        }
+        throw new AssertionError("Unclosed @code block at " + tokens.getStart(tagIndex));
+    }
+
+    private static boolean isTemplateTag(IElementType type) {
+        return type == MvelTokenTypes.TEMPLATE_CODE
+                || type == MvelTokenTypes.TEMPLATE_IF
+                || type == MvelTokenTypes.TEMPLATE_ELSE
+                || type == MvelTokenTypes.TEMPLATE_FOREACH
+                || type == MvelTokenTypes.TEMPLATE_INCLUDE
+                || type == MvelTokenTypes.TEMPLATE_INCLUDE_NAMED
+                || type == MvelTokenTypes.TEMPLATE_COMMENT
+                || type == MvelTokenTypes.TEMPLATE_DECLARE
+                || type == MvelTokenTypes.TEMPLATE_END;
+    }
+
+    private static LightPsiBuilder.Element element(IElementType type, String text, String elementText) {
+        int start = text.indexOf(elementText);
+        assertTrue(elementText, start >= 0);
+        return new LightPsiBuilder.Element(type, start, start + elementText.length());
+    }
+}
@@ -0,0 +1,251 @@
+package com.mvel.linter.testing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic generator of large, compilable MVEL sources in the style of the report files kept in the project
+ * root: banner comments, imports, cache variables, {@code def} functions and, for templates, {@code @code{}} blocks
+ * followed by nested {@code @foreach{}}/{@code @if{}} sections full of orbs. The same seed and size always produce
+ * the same text, so scaling failures can be reproduced.
+ */
+public final class MvelCorpusGenerator {
+    private static final String BANNER = "/**************************************************************************************/";
+    private static final String[] IMPORTS = {
+            "java.text.DecimalFormat", "java.util.*", "java.math.*", "java.math.BigDecimal", "java.util.LinkedHashMap"
+    };
+    private static final String[] FIELDS = {"id", "code", "label", "status", "effectiveDate", "amount", "hours"};
+    private static final String[] SERVICES = {"getEmployeeManagers", "getContracts", "getAssignments", "getPositions"};
+
+    private final Random random;
+    private final int targetLines;
+    private final StringBuilder out = new StringBuilder();
+    private final List<String> functions = new ArrayList<>();
+    private final List<String> caches = new ArrayList<>();
+    private int lines;
+    private int indent;
+
+    private MvelCorpusGenerator(long seed, int targetLines) {
+        this.random = new Random(seed);
+        this.targetLines = targetLines;
+    }
+
+    /**
+     * Returns a plain MVEL script of roughly {@code lineCount} lines.
+     */
+    public static String script(long seed, int lineCount) {
+        MvelCorpusGenerator generator = new MvelCorpusGenerator(seed, lineCount);
+        generator.emitScript();
+        return generator.out.toString();
+    }
+
+    /**
+     * Returns an MVEL template of roughly {@code lineCount} lines.
+     */
+    public static String template(long seed, int lineCount) {
+        MvelCorpusGenerator generator = new MvelCorpusGenerator(seed, lineCount);
+        generator.emitTemplate();
+        return generator.out.toString();
+    }
+
+    private void emitScript() {
+        emitFileHeader();
+        emitImports();
+        section("PRIVATE VARIABLES");
+        emitCaches();
+        section("FUNCTIONS");
+        while (lines < targetLines) {
+            if (functions.size() > 2 && random.nextInt(4) == 0) {
+                emitTopLevelStatements();
+            } else {
+                emitFunction();
+            }
+        }
+    }
+
+    private void emitTemplate() {
+        line("@comment{");
+        line("");
+        line("    TITLE        : REPORT_" + random.nextInt(1000) + ".CSV");
+        line("    AUTHOR       : Report Generator");
+        line("    FORMAT       : CSV");
+        line("");
+        out.append("}@includeNamed{\"REPORT_LIB\"}");
+        emitCodeBlock(3);
+        while (lines < targetLines) {
+            if (random.nextInt(5) == 0) {
+                emitCodeBlock(1 + random.nextInt(2));
+            } else {
+                emitForeachSection("rows", 0);
+            }
+        }
+    }
+
+    private void emitFileHeader() {
+        line("// REPORT TITLE : Generated_Report_" + random.nextInt(1000));
+        line(BANNER);
+        line("// VERSION     : V1.0");
+        line("// DESCRIPTION : REPORT");
+        line(BANNER);
+        line("");
+    }
+
+    private void emitImports() {
+        section("IMPORTS");
+        for (String importName : IMPORTS) {
+            line("import " + importName + ";");
+        }
+        line("");
+    }
+
+    private void emitCaches() {
+        for (int index = 0; index < 3; index++) {
+            String cache = "_cache" + index;
+            caches.add(cache);
+            line(cache + " = new HashMap();");
+        }
+        line("");
+    }
+
+    private void emitCodeBlock(int functionCount) {
+        out.append("@code{\n");
+        indent++;
+        if (caches.isEmpty()) {
+            emitImports();
+            section("CONSTANTS");
+            emitCaches();
+        }
+        for (int index = 0; index < functionCount; index++) {
+            emitFunction();
+        }
+        indent--;
+        line("}");
+    }
+
+    private void section(String title) {
+        line("");
+        line(BANNER);
+        line("// " + title);
+        line(BANNER);
+        line("");
+    }
+
+    private void emitFunction() {
+        String field = pick(FIELDS);
+        String name = "get" + Character.toUpperCase(field.charAt(0)) + field.substring(1) + functions.size();
+        String cache = pick(caches);
+        line("def " + name + "(employeeId, effectiveDate) {");
+        indent++;
+        line("result = [");
+        indent++;
+        int fieldCount = 2 + random.nextInt(3);
+        for (int index = 0; index < fieldCount; index++) {
+            line("\"" + FIELDS[index] + "\" : \"\"" + (index + 1 < fieldCount ? "," : ""));
+        }
+        indent--;
+        line("];");
+        line("");
+        line("if (employeeId == empty || effectiveDate == empty) {");
+        line("    return result;");
+        line("}");
+        line("");
+        line("data = api.ga." + pick(SERVICES) + "(employeeId, effectiveDate);");
+        if (random.nextBoolean()) {
+            line("// Entries are cached per id, the API call is expensive");
+        }
+        line("for (item : data.items) {");
+        indent++;
+        emitItemBody("item", cache, 0);
+        indent--;
+        line("}");
+        if (!functions.isEmpty() && random.nextBoolean()) {
+            line("result[\"parent\"] = " + pick(functions) + "(employeeId, effectiveDate);");
+        }
+        line("return result;");
+        indent--;
+        line("}");
+        line("");
+        functions.add(name);
+    }
+
+    private void emitItemBody(String item, String cache, int depth) {
+        String field = pick(FIELDS);
+        line("key = " + item + "[\"" + field + "\"];");
+        line("if (key != empty && " + cache + "[key] == null) {");
+        indent++;
+        switch (random.nextInt(4)) {
+            case 0 -> line(cache + "[key] = " + item + ".label + \" (\" + " + item + ".code + \")\";");
+            case 1 -> line(cache + "[key] = \"{\\\"id\\\":\\\"\" + key + \"\\\"}\";");
+            case 2 -> line(cache + "[key] = new BigDecimal(" + item + ".amount).setScale(2, BigDecimal.ROUND_HALF_UP);");
+            default -> {
+                line("/* keep the first value seen for this id */");
+                line(cache + "[key] = " + item + ";");
+            }
+        }
+        indent--;
+        if (depth < 2 && random.nextInt(3) == 0) {
+            line("} else {");
+            indent++;
+            String child = "child" + depth;
+            line("foreach (" + child + " : " + item + ".children) {");
+            indent++;
+            emitItemBody(child, cache, depth + 1);
+            indent--;
+            line("}");
+            indent--;
+        }
+        line("}");
+        line("result[\"" + field + "\"] = " + cache + "[key];");
+    }
+
+    private void emitTopLevelStatements() {
+        line("employee = api.ga.getEmployee(employeeId);");
+        for (int index = 0; index < 3; index++) {
+            line("row" + index + " = " + pick(functions) + "(employee.id, effectiveDate);");
+        }
+        line("rows.add([row0, row1, row2]); // one output line per employee");
+        line("");
+    }
+
+    private void emitForeachSection(String collection, int depth) {
+        String variable = "row" + depth;
+        out.append("@foreach{").append(variable).append(" : ").append(collection).append("}");
+        if (depth == 0 && !functions.isEmpty()) {
+            out.append("@{").append(pick(functions)).append("(").append(variable).append(".id, effectiveDate)").append("}");
+        }
+        out.append("\n");
+        lines++;
+        int cells = 2 + random.nextInt(4);
+        for (int index = 0; index < cells; index++) {
+            out.append("@{").append(variable).append(".").append(pick(FIELDS)).append("};");
+        }
+        out.append("\n");
+        lines++;
+        if (random.nextBoolean()) {
+            out.append("@if{").append(variable).append(".status == \"ACTIVE\"}Active@else{}Inactive@end{}\n");
+            lines++;
+        }
+        if (depth < 2 && random.nextInt(3) == 0) {
+            emitForeachSection(variable + ".children", depth + 1);
+        }
+        out.append("@end{}\n");
+        lines++;
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private String pick(List<String> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private void line(String text) {
+        if (!text.isEmpty()) {
+            out.append("    ".repeat(indent)).append(text);
+        }
+        out.append('\n');
+        lines++;
+    }
+}
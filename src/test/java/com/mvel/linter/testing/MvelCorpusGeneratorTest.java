@@ -0,0 +1,65 @@
+package com.mvel.linter.testing;
+
+import com.intellij.psi.TokenType;
+import com.mvel.linter.compiler.MvelCompileService;
+import com.mvel.linter.lexer.MvelLexer;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class MvelCorpusGeneratorTest {
+    @Test
+    public void sameSeedAndSizeProduceTheSameText() {
+        assertEquals(MvelCorpusGenerator.script(7, 2_000), MvelCorpusGenerator.script(7, 2_000));
+        assertEquals(MvelCorpusGenerator.template(7, 2_000), MvelCorpusGenerator.template(7, 2_000));
+        assertNotEquals(MvelCorpusGenerator.script(7, 2_000), MvelCorpusGenerator.script(8, 2_000));
+    }
+
+    @Test
+    public void outputHasRoughlyTheRequestedNumberOfLines() {
+        for (String text : new String[]{MvelCorpusGenerator.script(1, 10_000), MvelCorpusGenerator.template(1, 10_000)}) {
+            long lines = text.chars().filter(ch -> ch == '\n').count();
+            assertTrue("lines: " + lines, lines >= 10_000 && lines < 10_500);
+        }
+    }
+
+    @Test
+    public void templatesUseCodeBlocksAndNestedSections() {
+        String text = MvelCorpusGenerator.template(3, 5_000);
+
+        assertTrue(text.startsWith("@comment{"));
+        assertTrue(text.contains("@code{"));
+        assertTrue(text.contains("@foreach{row1 : row0.children}"));
+        assertTrue(text.contains("@else{}"));
+        assertTrue(text.contains("@{"));
+    }
+
+    @Test
+    public void generatedTextLexesWithoutBadCharacters() {
+        for (String text : new String[]{MvelCorpusGenerator.script(5, 3_000), MvelCorpusGenerator.template(5, 3_000)}) {
+            MvelLexer lexer = new MvelLexer();
+            lexer.start(text, 0, text.length(), 0);
+            while (lexer.getTokenType() != null) {
+                assertNotSame(TokenType.BAD_CHARACTER, lexer.getTokenType());
+                lexer.advance();
+            }
+        }
+    }
+
+    @Test
+    public void generatedSourcesCompileWithoutDiagnostics() {
+        // A template result holds the template scan's diagnostics as well as the compile's.
+        MvelCompileService compileService = new MvelCompileService();
+        try {
+            assertEquals(List.of(), compileService.compileText(MvelCorpusGenerator.script(11, 2_000)).diagnostics());
+            assertEquals(List.of(), compileService.compileText(MvelCorpusGenerator.template(11, 2_000)).diagnostics());
+        } finally {
+            compileService.dispose();
+        }
+    }
+}
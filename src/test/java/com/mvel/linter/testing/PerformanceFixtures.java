@@ -0,0 +1,95 @@
+package com.mvel.linter.testing;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * Regression fixtures written by {@link PerformanceFuzzer}: one properties file per minimized input under
+ * {@code src/test/resources/fuzz/<target>/}, holding the {@code prefix}, {@code unit} and {@code suffix} of the pump.
+ */
+public final class PerformanceFixtures {
+    private static final Path ROOT = Path.of(System.getProperty("user.dir"), "src", "test", "resources", "fuzz");
+
+    private PerformanceFixtures() {
+    }
+
+    public record Fixture(String name, PerformanceFuzzer.Pump pump) {
+    }
+
+    public static List<Fixture> load(String target) {
+        Path directory = ROOT.resolve(target);
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+
+        List<Fixture> fixtures = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(path -> path.toString().endsWith(".properties")).sorted().toList()) {
+                Properties properties = new Properties();
+                try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    properties.load(reader);
+                }
+                fixtures.add(new Fixture(file.getFileName().toString(), new PerformanceFuzzer.Pump(
+                        properties.getProperty("prefix", ""),
+                        properties.getProperty("unit"),
+                        properties.getProperty("suffix", "")
+                )));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return fixtures;
+    }
+
+    /**
+     * Saves a finding as the next numbered fixture of its target and returns the written file.
+     */
+    public static Path save(PerformanceFuzzer.Finding finding) {
+        Path directory = ROOT.resolve(finding.target());
+        try {
+            Files.createDirectories(directory);
+            Path file = directory.resolve(String.format("%03d.properties", load(finding.target()).size() + 1));
+            String cost = Double.isInfinite(finding.nanosPerChar())
+                    ? "stack overflow"
+                    : Math.round(finding.nanosPerChar()) + " ns/char";
+            Files.writeString(file, "# " + cost + " at " + PerformanceFuzzer.MEASURED_LENGTH + " chars when found\n"
+                    + "prefix=" + escape(finding.pump().prefix()) + "\n"
+                    + "unit=" + escape(finding.pump().unit()) + "\n"
+                    + "suffix=" + escape(finding.pump().suffix()) + "\n", StandardCharsets.UTF_8);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder();
+        for (int index = 0; index < value.length(); index++) {
+            char ch = value.charAt(index);
+            switch (ch) {
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\t' -> escaped.append("\\t");
+                case ' ' -> escaped.append(index == 0 ? "\\ " : " ");
+                case '#', '!', '=', ':' -> escaped.append('\\').append(ch);
+                default -> {
+                    if (ch < 0x20 || ch > 0x7e) {
+                        escaped.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        escaped.append(ch);
+                    }
+                }
+            }
+        }
+        return escaped.toString();
+    }
+}
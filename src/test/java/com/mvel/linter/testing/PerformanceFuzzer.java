@@ -0,0 +1,225 @@
+package com.mvel.linter.testing;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Mutation fuzzer that hunts inputs on which a text scanner spends superlinear time.
+ * <p>
+ * Inputs are kept in pumped form, {@code prefix + unit * k + suffix}, and always measured at the same length, so a
+ * higher cost in nanoseconds per input char means the entry point does more work per char as the input grows.
+ * Mutations edit the three parts with MVEL-flavoured fragments; the most expensive inputs survive. An input above
+ * the threshold is confirmed by timing it at doubling lengths and then minimized part by part, which leaves a
+ * pump short enough to keep as a regression fixture (see {@link PerformanceFixtures}).
+ */
+public final class PerformanceFuzzer {
+    public static final int MEASURED_LENGTH = 8_192;
+
+    private static final int POPULATION_SIZE = 24;
+    private static final int MAX_PART_LENGTH = 48;
+    private static final String[] DICTIONARY = {
+            "@{", "@code{", "@if{", "@foreach{", "@else{}", "@end{}", "@comment{", "{", "}", "(", ")", "[", "]",
+            "\"", "'", "\\", "/*", "*/", "//", "\n", ";", ",", ":", "=", "+", ".", " ", "a", "def f(", "def f() {",
+            "import a.b", "x = y +\n", "x = f(\n", "foo(a, b)\n", "int x = 1\n", "return x\n", "A.B", "<T>"
+    };
+
+    private final String target;
+    private final Consumer<String> entryPoint;
+    private final double thresholdNanosPerChar;
+    private final Random random;
+
+    /**
+     * Replays the recorded fixtures of {@code target} at doubling lengths and fails if any of them still scales
+     * worse than {@code n log n}.
+     */
+    public static void assertRecordedInputsScale(String target, Consumer<String> entryPoint) {
+        for (PerformanceFixtures.Fixture fixture : PerformanceFixtures.load(target)) {
+            ScalingAssert.assertScalesNoWorseThanNLogN(
+                    target + "/" + fixture.name(), MEASURED_LENGTH, 3, fixture.pump()::build, entryPoint);
+        }
+    }
+
+    /**
+     * Runs a short campaign against {@code entryPoint} and fails on a superlinear input. The campaign length and seed
+     * come from the {@code mvel.fuzz.iterations} and {@code mvel.fuzz.seed} system properties; with
+     * {@code -Dmvel.fuzz.record=true} the minimized input is also saved as a fixture.
+     */
+    public static void assertNoSuperlinearInputs(String target, Consumer<String> entryPoint, double thresholdNanosPerChar) {
+        long seed = Long.getLong("mvel.fuzz.seed", 1L);
+        int iterations = Integer.getInteger("mvel.fuzz.iterations", 150);
+        Finding finding = new PerformanceFuzzer(target, entryPoint, thresholdNanosPerChar, seed).run(iterations);
+        if (finding == null) {
+            return;
+        }
+
+        String location = Boolean.getBoolean("mvel.fuzz.record")
+                ? "saved as " + PerformanceFixtures.save(finding)
+                : "rerun with -Dmvel.fuzz.record=true to save it";
+        String cost = Double.isInfinite(finding.nanosPerChar())
+                ? "overflows the stack"
+                : String.format(Locale.ROOT, "spends %.0f ns/char", finding.nanosPerChar());
+        fail(String.format(Locale.ROOT, "%s %s on %s (%s)", target, cost, finding.pump(), location));
+    }
+
+    public PerformanceFuzzer(String target, Consumer<String> entryPoint, double thresholdNanosPerChar, long seed) {
+        this.target = target;
+        this.entryPoint = entryPoint;
+        this.thresholdNanosPerChar = thresholdNanosPerChar;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Input of the form {@code prefix + unit * k + suffix}, with {@code k} chosen to reach a requested length.
+     */
+    public record Pump(String prefix, String unit, String suffix) {
+        public String build(int length) {
+            int repeat = Math.max(1, (length - prefix.length() - suffix.length() + unit.length() - 1) / unit.length());
+            return prefix + unit.repeat(repeat) + suffix;
+        }
+    }
+
+    public record Finding(String target, Pump pump, double nanosPerChar) {
+    }
+
+    /**
+     * Runs {@code iterations} mutations and returns the first confirmed superlinear input, minimized, or
+     * {@code null} if none was found.
+     */
+    public Finding run(int iterations) {
+        List<Scored> population = new ArrayList<>();
+        for (String token : DICTIONARY) {
+            population.add(score(new Pump("", token, "")));
+        }
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            Scored parent = population.get(random.nextInt(Math.min(population.size(), POPULATION_SIZE)));
+            Scored child = score(mutate(parent.pump()));
+            if (child.nanosPerChar() > thresholdNanosPerChar && scalesSuperlinearly(child.pump())) {
+                Pump minimized = minimize(child.pump());
+                return new Finding(target, minimized, nanosPerChar(minimized));
+            }
+            population.add(child);
+            population.sort(Comparator.comparingDouble(Scored::nanosPerChar).reversed());
+            if (population.size() > POPULATION_SIZE * 2) {
+                population.subList(POPULATION_SIZE * 2, population.size()).clear();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Times the pump at four doubling lengths and reports whether the time grew faster than {@code n log n}.
+     */
+    public boolean scalesSuperlinearly(Pump pump) {
+        try {
+            ScalingAssert.assertScalesNoWorseThanNLogN(target, MEASURED_LENGTH / 4, 3, pump::build, entryPoint);
+            return false;
+        } catch (AssertionError | StackOverflowError e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns the best of three timings divided by the input length, or infinity if the entry point overflows the
+     * stack, which recursive scanners and regexes do on the same kind of input that makes loops quadratic.
+     */
+    public double nanosPerChar(Pump pump) {
+        String input = pump.build(MEASURED_LENGTH);
+        try {
+            entryPoint.accept(input);
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < 3; run++) {
+                long start = System.nanoTime();
+                entryPoint.accept(input);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            return (double) best / input.length();
+        } catch (StackOverflowError e) {
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    private Pump minimize(Pump pump) {
+        Pump current = pump;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int part = 0; part < 3; part++) {
+                String text = part(current, part);
+                for (int chunk = Math.max(1, text.length() / 2); chunk >= 1 && !changed; chunk /= 2) {
+                    for (int start = 0; start + chunk <= text.length(); start += chunk) {
+                        String reduced = text.substring(0, start) + text.substring(start + chunk);
+                        if (part == 1 && reduced.isEmpty()) {
+                            continue;
+                        }
+                        Pump candidate = withPart(current, part, reduced);
+                        if (nanosPerChar(candidate) > thresholdNanosPerChar) {
+                            current = candidate;
+                            changed = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    private Pump mutate(Pump pump) {
+        int part = random.nextInt(4) == 0 ? random.nextInt(3) : 1;
+        String text = part(pump, part);
+        String mutated = switch (random.nextInt(4)) {
+            case 0 -> insert(text, DICTIONARY[random.nextInt(DICTIONARY.length)]);
+            case 1 -> insert(text, String.valueOf("{}()[]\"'/\\*@;,=\n a".charAt(random.nextInt(18))));
+            case 2 -> delete(text);
+            default -> text.isEmpty() ? text : insert(text, text.substring(random.nextInt(text.length())));
+        };
+        if (mutated.length() > MAX_PART_LENGTH || (part == 1 && mutated.isEmpty())) {
+            return pump;
+        }
+        return withPart(pump, part, mutated);
+    }
+
+    private String insert(String text, String fragment) {
+        int offset = random.nextInt(text.length() + 1);
+        return text.substring(0, offset) + fragment + text.substring(offset);
+    }
+
+    private String delete(String text) {
+        if (text.isEmpty()) {
+            return text;
+        }
+        int start = random.nextInt(text.length());
+        int end = start + 1 + random.nextInt(Math.min(4, text.length() - start));
+        return text.substring(0, start) + text.substring(end);
+    }
+
+    private Scored score(Pump pump) {
+        return new Scored(pump, nanosPerChar(pump));
+    }
+
+    private static String part(Pump pump, int part) {
+        return switch (part) {
+            case 0 -> pump.prefix();
+            case 1 -> pump.unit();
+            default -> pump.suffix();
+        };
+    }
+
+    private static Pump withPart(Pump pump, int part, String text) {
+        return switch (part) {
+            case 0 -> new Pump(text, pump.unit(), pump.suffix());
+            case 1 -> new Pump(pump.prefix(), text, pump.suffix());
+            default -> new Pump(pump.prefix(), pump.unit(), text);
+        };
+    }
+
+    private record Scored(Pump pump, double nanosPerChar) {
+    }
+}
@@ -0,0 +1,74 @@
+package com.mvel.linter.testing;
+
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Times one analysis stage over generated inputs of doubling size (a line count, a target length, ...) and fails
+ * when the time grows faster than {@code n log n} in the input length. Each size is warmed up and the best of
+ * several runs is kept, and the comparison is made between the smallest and the largest input with a generous
+ * slack, so scheduling noise does not fail the build while a quadratic stage (64x over three doublings instead of
+ * about 10x) still does.
+ */
+public final class ScalingAssert {
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 5;
+    private static final double SLACK = 2.0;
+
+    private ScalingAssert() {
+    }
+
+    public static void assertScalesNoWorseThanNLogN(
+            String stageName,
+            int firstSize,
+            int doublings,
+            IntFunction<String> inputForSize,
+            Consumer<String> stage
+    ) {
+        int[] lengths = new int[doublings + 1];
+        long[] nanos = new long[doublings + 1];
+        for (int step = 0; step <= doublings; step++) {
+            String input = inputForSize.apply(firstSize << step);
+            lengths[step] = input.length();
+            nanos[step] = bestOf(input, stage);
+        }
+
+        double expected = nLogN(lengths[doublings]) / nLogN(lengths[0]);
+        double measured = (double) Math.max(1, nanos[doublings]) / Math.max(1, nanos[0]);
+        if (measured > expected * SLACK) {
+            StringBuilder message = new StringBuilder(String.format(
+                    Locale.ROOT,
+                    "%s scales worse than n log n: time grew %.1fx for %.1fx more input (allowed %.1fx)%n",
+                    stageName,
+                    measured,
+                    (double) lengths[doublings] / lengths[0],
+                    expected * SLACK
+            ));
+            for (int step = 0; step <= doublings; step++) {
+                message.append(String.format(Locale.ROOT, "  size %,d, %,d chars: %.2f ms%n",
+                        firstSize << step, lengths[step], nanos[step] / 1_000_000.0));
+            }
+            fail(message.toString());
+        }
+    }
+
+    private static long bestOf(String input, Consumer<String> stage) {
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+            stage.accept(input);
+        }
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            stage.accept(input);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static double nLogN(int length) {
+        return length * Math.log(Math.max(2, length));
+    }
+}